@@ -0,0 +1,124 @@
+package com.machineghost.examples;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/***
+ * The CharHistogram vector kernel against what it replaces: strings() against the code point count that
+ * stringIsPermutationOfAnotherOptimized falls back to, chars() and bytes() against a single table. Every call
+ * adds the input to the counts and takes it away again, as compareLatin1Counts does with its two strings,
+ * so it counts 2 * length chars or bytes and the counts stay zero between calls. RUNS repeats each char
+ * eight times, the text a single table stalls on. The forked JVM gets the incubator vector module, and
+ * cells that pair a kernel with the wrong benchmark fail in setup.
+ * On a one-core AVX-512 machine, in MB/s of chars or bytes counted, with no allocation per call:
+ *                     random: 1 KB    64 KB    16 MB     runs: 1 KB    64 KB    16 MB
+ *   strings code points      1096     1048      985            867      930      780
+ *   strings vector            383      981      977            383     1208      940
+ *   chars   single table     1096     1013      875            860      932      729
+ *   chars   vector           1327     1262     1063           1624     1176     1213
+ *   bytes   single table     1386     1343     1177           1049      978     1028
+ *   bytes   vector           1221     1361     1463           1301     1246     1243
+ * The kernel itself is faster, but clearing and merging its sixteen sub-histograms only pays off on long runs.
+ *
+ * Usage: mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ *            -Dexec.args="-cp %classpath org.openjdk.jmh.Main CharHistogramJmhBenchmark -prof gc"
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class CharHistogramJmhBenchmark {
+	
+	// strings() weighs the vector kernel against the code point count, chars() and bytes() against a single table
+	@Param({ "CODE_POINTS", "SINGLE_TABLE", "VECTOR" })
+	public String kernel;
+	
+	@Param({ "1024", "65536", "16777216" })
+	public int length;
+	
+	// RANDOM draws every Latin-1 char evenly, RUNS repeats each char eight times, the case a single table stalls on
+	@Param({ "RANDOM", "RUNS" })
+	public String text;
+	
+	private char[] chars;
+	private byte[] bytes;
+	private int[] counts;
+	private String firstString;
+	private String secondString;
+	private final PermutationChecker checker = new PermutationChecker();
+	
+	@Setup
+	public void setUp(BenchmarkParams params) {
+		if (kernel.equals("VECTOR") && !CharHistogram.VECTOR_KERNEL) {
+			throw new IllegalStateException("skipped: this hardware has no native vector kernel");
+		}
+		boolean strings = params.getBenchmark().endsWith("strings");
+		if (kernel.equals("CODE_POINTS") != strings && !kernel.equals("VECTOR")) {
+			throw new IllegalStateException("skipped: strings are compared to the code point path, arrays to the single table");
+		}
+		Random random = new Random(7);
+		chars = new char[length];
+		bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			int value = text.equals("RUNS") ? (i / 8) & 0xFF : random.nextInt(256);
+			chars[i] = (char) value;
+			bytes[i] = (byte) value;
+		}
+		counts = new int[CharHistogram.MAX_HISTOGRAMS * 256];
+		firstString = new String(chars);
+		secondString = new StringBuilder(firstString).reverse().toString();
+	}
+	
+	@Benchmark
+	public boolean strings() {
+		if (kernel.equals("CODE_POINTS")) {
+			// the path stringIsPermutationOfAnotherOptimized takes when CharHistogram doesn't
+			return checker.stringIsPermutationOfAnotherOptimized(firstString, secondString, false, false);
+		}
+		return CharHistogram.compareLatin1Counts(firstString, secondString) == CharHistogram.SAME_COUNTS;
+	}
+	
+	@Benchmark
+	public boolean chars() {
+		if (kernel.equals("VECTOR")) {
+			return VectorHistogram.countChars(chars, length, counts, 1) & VectorHistogram.countChars(chars, length, counts, -1);
+		}
+		return singleTable(chars, length, counts, 1) & singleTable(chars, length, counts, -1);
+	}
+	
+	@Benchmark
+	public int[] bytes() {
+		int histograms = kernel.equals("VECTOR") ? VectorHistogram.LANES : 1;
+		CharHistogram.countBytes(bytes, length, counts, 1, histograms);
+		CharHistogram.countBytes(bytes, length, counts, -1, histograms);
+		return counts;
+	}
+	
+	/***
+	 * The single table baseline for chars, with the same Latin-1 check and delta as VectorHistogram.countChars
+	 */
+	private static boolean singleTable(char[] chars, int length, int[] counts, int delta) {
+		int bits = 0;
+		for (int i = 0; i < length; i++) {
+			bits |= chars[i];
+			counts[chars[i] & 0xFF] += delta;
+		}
+		return bits <= 0xFF;
+	}
+}
@@ -0,0 +1,121 @@
+package com.machineghost.examples;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * The CheckerBenchmark grid as a JMH benchmark: every string checker and matricesAreEqual, by input length,
+ * alphabet and hit/miss ratio, with the same inputs as CheckerBenchmark. Throughput and sampled latency
+ * percentiles come from JMH, and allocation per call from its GC profiler. The matrix transforms change
+ * their input, so they are in MatrixTransformJmhBenchmark.
+ * Cells an algorithm can't run (an alphabet it rejects, a quadratic algorithm on a long input, a unique
+ * hit longer than its alphabet, or a matrix under any alphabet but ASCII) fail in setup, and JMH goes on to the next cell.
+ *
+ * Usage: mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ *            -Dexec.args="-cp %classpath org.openjdk.jmh.Main CheckerJmhBenchmark -prof gc -p length=1024"
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckerJmhBenchmark {
+	
+	@Param({ "OneAwayChecker.isOneAway", "StringRotationChecker.isRotation", "StringRotationChecker.isRotationNaiveApproach",
+			"StringRotationChecker.canonicalRotation", "PermutationChecker.stringIsPermutationOfAnotherOptimized",
+			"PermutationChecker.stringIsPermutationOfAnother", "UniqueCharsChecker.charsAreAllUniqueNaiveApproach",
+			"UniqueCharsChecker.charsAreAllUniqueSortedApproach", "UniqueCharsChecker.charsAreAllUniqueBitsetApproach",
+			"ZeroMatrixChecker.matricesAreEqual" })
+	public String algorithm;
+	
+	@Param({ "8", "64", "1024", "65536", "1048576", "16777216" })
+	public int length;
+	
+	@Param({ "ASCII", "LATIN1", "BMP", "ASTRAL" })
+	public String alphabet;
+	
+	@Param({ "0.5" })
+	public double hitRatio;
+	
+	private CheckerBenchmark.Case benchmarkCase;
+	private Object[] inputs;
+	private int next;
+	
+	@Setup
+	public void setUp() {
+		benchmarkCase = JmhCells.findCase(algorithm);
+		inputs = JmhCells.inputs(benchmarkCase, CheckerBenchmark.Alphabet.valueOf(alphabet), length, hitRatio);
+	}
+	
+	@Benchmark
+	public boolean check() {
+		Object input = inputs[next];
+		next = (next + 1) & (inputs.length - 1);
+		return benchmarkCase.run(input);
+	}
+	
+	/***
+	 * Cell setup shared by the JMH benchmarks
+	 *
+	 */
+	static final class JmhCells {
+		
+		// the hit/miss sequence repeats after this many calls, a power of two
+		static final int SEQUENCE_LENGTH = 1024;
+		
+		private JmhCells() { }
+		
+		static CheckerBenchmark.Case findCase(String algorithm) {
+			for (CheckerBenchmark.Case candidate : CheckerBenchmark.allCases()) {
+				if (candidate.name.equals(algorithm)) {
+					return candidate;
+				}
+			}
+			throw new IllegalArgumentException("no such algorithm: " + algorithm);
+		}
+		
+		/***
+		 * Lay out a cell's inputs in call order, hits and misses mixed at the ratio by a fixed seed
+		 * @return SEQUENCE_LENGTH inputs, drawn from the same pools CheckerBenchmark uses
+		 */
+		static Object[] inputs(CheckerBenchmark.Case benchmarkCase, CheckerBenchmark.Alphabet alphabet, int length, double hitRatio) {
+			if (!benchmarkCase.supports(alphabet)) {
+				throw new IllegalStateException("skipped: " + benchmarkCase.name + " doesn't support " + alphabet);
+			}
+			boolean matrix = benchmarkCase.family == CheckerBenchmark.Family.MATRIX_TRANSFORM || benchmarkCase.family == CheckerBenchmark.Family.MATRIX_EQUALS;
+			if (matrix && alphabet != CheckerBenchmark.Alphabet.ASCII) {
+				throw new IllegalStateException("skipped: matrices have no alphabet, they only run as ASCII");
+			}
+			if (benchmarkCase.quadratic && length > CheckerBenchmark.QUADRATIC_MAX_LENGTH) {
+				throw new IllegalStateException("skipped: " + benchmarkCase.name + " is quadratic, too slow at " + length);
+			}
+			CheckerBenchmark.InputFactory factory = new CheckerBenchmark.InputFactory(1);
+			Object[] hits = CheckerBenchmark.pool(factory, benchmarkCase.family, alphabet, length, true);
+			Object[] misses = CheckerBenchmark.pool(factory, benchmarkCase.family, alphabet, length, false);
+			if (hits == null && hitRatio > 0) {
+				throw new IllegalStateException("skipped: no hit input of length " + length + " exists in " + alphabet);
+			}
+			
+			Random random = new Random(42);
+			Object[] inputs = new Object[SEQUENCE_LENGTH];
+			for (int i = 0; i < inputs.length; i++) {
+				inputs[i] = random.nextDouble() < hitRatio ? hits[i % hits.length] : misses[i % misses.length];
+			}
+			return inputs;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.machineghost.examples;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/***
+ * The matrix transforms from the CheckerBenchmark grid as a JMH benchmark. A transform zeroes its input, so
+ * before every call the next input's template is copied into its scratch matrix in an invocation-level setup,
+ * which JMH leaves out of the timing. That setup costs a few tens of nanoseconds of timer noise per call,
+ * so the smallest matrices read a little slow.
+ *
+ * Usage: mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ *            -Dexec.args="-cp %classpath org.openjdk.jmh.Main MatrixTransformJmhBenchmark -prof gc"
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixTransformJmhBenchmark {
+	
+	@Param({ "ZeroMatrixChecker.transformMatrix", "ZeroMatrixChecker.transformMatrixParallel", "ZeroMatrixChecker.transformMatrixInPlace" })
+	public String algorithm;
+	
+	// in bytes of ints, as in CheckerBenchmark, so 1024 is a 16 by 16 matrix
+	@Param({ "64", "1024", "65536", "1048576", "16777216" })
+	public int length;
+	
+	@Param({ "0.5" })
+	public double hitRatio;
+	
+	private CheckerBenchmark.Case benchmarkCase;
+	private Object[] inputs;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		benchmarkCase = CheckerJmhBenchmark.JmhCells.findCase(algorithm);
+		inputs = CheckerJmhBenchmark.JmhCells.inputs(benchmarkCase, CheckerBenchmark.Alphabet.ASCII, length, hitRatio);
+	}
+	
+	@Setup(Level.Invocation)
+	public void refill() {
+		benchmarkCase.prepare(inputs[next]);
+	}
+	
+	@Benchmark
+	public boolean transform() {
+		Object input = inputs[next];
+		next = (next + 1) & (inputs.length - 1);
+		return benchmarkCase.run(input);
+	}
+}
@@ -0,0 +1,377 @@
+package com.machineghost.examples;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/***
+ * Generalize OneAwayChecker to k edits: given two strings and a bound k, find their
+ * Levenshtein distance if it is at most k, or report that it is greater than k.
+ * The checker holds no state, scratch buffers are kept per thread so steady-state calls don't allocate.
+ *
+ */
+public class BoundedEditDistanceChecker {
+	
+	/***
+	 * Returned when the distance is greater than the bound
+	 */
+	public static final int EXCEEDS_BOUND = -1;
+	
+	// the bit-parallel approach keeps one bit per pattern char in a long
+	private static final int BIT_PARALLEL_MAX_LENGTH = 64;
+	
+	private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+	
+	private final OneAwayChecker oneAwayChecker = new OneAwayChecker();
+	
+	public BoundedEditDistanceChecker() { }
+	
+	/***
+	 * Determine if two strings are at most a number of edits apart
+	 * @param firstString: the first string
+	 * @param secondString: the string to compare to
+	 * @param maxDistance: the most insertions, deletions and replacements allowed
+	 * @return true if the strings are within maxDistance edits
+	 */
+	public boolean isWithinEdits(String firstString, String secondString, int maxDistance) {
+		return editDistance(firstString, secondString, maxDistance) != EXCEEDS_BOUND;
+	}
+	
+	/***
+	 * Find the edit distance between two strings if it is at most a bound.
+	 * Length differences over the bound are rejected up front, one edit is handed to OneAwayChecker,
+	 * strings with a side of 64 chars or fewer use the bit-parallel approach and longer ones use the banded approach.
+	 * @param firstString: the first string
+	 * @param secondString: the string to compare to
+	 * @param maxDistance: the most insertions, deletions and replacements allowed
+	 * @return the edit distance, or EXCEEDS_BOUND if it is greater than maxDistance
+	 */
+	public int editDistance(String firstString, String secondString, int maxDistance) {
+		if (maxDistance < 0) {
+			throw new IllegalArgumentException("maxDistance must not be negative: " + maxDistance);
+		}
+		
+		// if both are null they are the same, if only one is there is nothing to compare
+		if (firstString == null && secondString == null) {
+			return 0;
+		}
+		else if (firstString == null || secondString == null) {
+			return EXCEEDS_BOUND;
+		}
+		
+		// every char of length difference needs its own insertion or deletion
+		if (Math.abs(firstString.length() - secondString.length()) > maxDistance) {
+			return EXCEEDS_BOUND;
+		}
+		
+		if (firstString.equals(secondString)) {
+			return 0;
+		}
+		else if (maxDistance == 0) {
+			return EXCEEDS_BOUND;
+		}
+		else if (maxDistance == 1) {
+			return oneAwayChecker.isOneAway(firstString, secondString) ? 1 : EXCEEDS_BOUND;
+		}
+		
+		if (Math.min(firstString.length(), secondString.length()) <= BIT_PARALLEL_MAX_LENGTH) {
+			return editDistanceBitParallelApproach(firstString, secondString, maxDistance);
+		}
+		return editDistanceBandedApproach(firstString, secondString, maxDistance);
+	}
+	
+	/***
+	 * Find the edit distance between two strings if it is at most a bound.
+	 * This approach is Ukkonen's: only the diagonal band of the DP table within maxDistance
+	 * of the main diagonal can hold a small enough distance, so only that band is filled.
+	 * It stops as soon as a whole band row is over the bound: O(k * n)
+	 * @param firstString: the first string
+	 * @param secondString: the string to compare to
+	 * @param maxDistance: the most insertions, deletions and replacements allowed
+	 * @return the edit distance, or EXCEEDS_BOUND if it is greater than maxDistance
+	 */
+	public int editDistanceBandedApproach(String firstString, String secondString, int maxDistance) {
+		int rows = firstString.length();
+		int columns = secondString.length();
+		if (Math.abs(rows - columns) > maxDistance) {
+			return EXCEEDS_BOUND;
+		}
+		
+		// anything over the bound is as good as infinite
+		int infinity = maxDistance + 1;
+		Scratch buffers = scratch.get();
+		int[] previous = buffers.row(0, columns + 1);
+		int[] current = buffers.row(1, columns + 1);
+		
+		// the first row is the cost of inserting each char of the second string
+		int lastColumn = Math.min(columns, maxDistance);
+		for (int j = 0; j <= lastColumn; j++) {
+			previous[j] = j;
+		}
+		if (lastColumn < columns) {
+			previous[lastColumn + 1] = infinity;
+		}
+		
+		for (int i = 1; i <= rows; i++) {
+			int low = Math.max(1, i - maxDistance);
+			int high = Math.min(columns, i + maxDistance);
+			char c = firstString.charAt(i - 1);
+			
+			// the cell left of the band is the first column inside it, and out of reach outside it
+			current[low - 1] = low == 1 ? Math.min(i, infinity) : infinity;
+			int rowMinimum = current[low - 1];
+			for (int j = low; j <= high; j++) {
+				int replacement = previous[j - 1] + (c == secondString.charAt(j - 1) ? 0 : 1);
+				int deletion = previous[j] + 1;
+				int insertion = current[j - 1] + 1;
+				int distance = Math.min(replacement, Math.min(deletion, insertion));
+				current[j] = Math.min(distance, infinity);
+				rowMinimum = Math.min(rowMinimum, current[j]);
+			}
+			if (high < columns) {
+				current[high + 1] = infinity;
+			}
+			
+			// distances never shrink going down the table
+			if (rowMinimum > maxDistance) {
+				return EXCEEDS_BOUND;
+			}
+			
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		
+		int distance = previous[columns];
+		return distance <= maxDistance ? distance : EXCEEDS_BOUND;
+	}
+	
+	/***
+	 * Find the edit distance between two strings if it is at most a bound.
+	 * This approach is Myers' bit-vector algorithm in Hyyro's form for edit distance: the shorter string
+	 * is the pattern, one DP column is packed into a pair of longs, and each char of the longer string
+	 * updates the whole column with a few word operations: O(n) for patterns of 64 chars or fewer.
+	 * It stops once the remaining chars can't bring the distance back within the bound.
+	 * @param firstString: the first string
+	 * @param secondString: the string to compare to, either string must be 64 chars or fewer
+	 * @param maxDistance: the most insertions, deletions and replacements allowed
+	 * @return the edit distance, or EXCEEDS_BOUND if it is greater than maxDistance
+	 */
+	public int editDistanceBitParallelApproach(String firstString, String secondString, int maxDistance) {
+		String pattern = firstString.length() <= secondString.length() ? firstString : secondString;
+		String text = pattern == firstString ? secondString : firstString;
+		if (pattern.length() > BIT_PARALLEL_MAX_LENGTH) {
+			throw new IllegalArgumentException("one string must be at most " + BIT_PARALLEL_MAX_LENGTH + " chars");
+		}
+		if (text.length() - pattern.length() > maxDistance) {
+			return EXCEEDS_BOUND;
+		}
+		if (pattern.isEmpty()) {
+			return text.length();
+		}
+		
+		Scratch buffers = scratch.get();
+		buffers.setPattern(pattern);
+		try {
+			int length = pattern.length();
+			long highBit = 1L << (length - 1);
+			long positiveVertical = -1L;
+			long negativeVertical = 0;
+			int score = length;
+			
+			for (int j = 0; j < text.length(); j++) {
+				long equal = buffers.patternMask(text.charAt(j));
+				long xVertical = equal | negativeVertical;
+				long xHorizontal = (((equal & positiveVertical) + positiveVertical) ^ positiveVertical) | equal;
+				long positiveHorizontal = negativeVertical | ~(xHorizontal | positiveVertical);
+				long negativeHorizontal = positiveVertical & xHorizontal;
+				
+				if ((positiveHorizontal & highBit) != 0) {
+					score++;
+				}
+				else if ((negativeHorizontal & highBit) != 0) {
+					score--;
+				}
+				
+				// each remaining char can lower the score by at most one
+				if (score - (text.length() - j - 1) > maxDistance) {
+					return EXCEEDS_BOUND;
+				}
+				
+				// the top row of the table grows by one per column, so shift a one in
+				positiveHorizontal = (positiveHorizontal << 1) | 1;
+				negativeHorizontal <<= 1;
+				positiveVertical = negativeHorizontal | ~(xVertical | positiveHorizontal);
+				negativeVertical = positiveHorizontal & xVertical;
+			}
+			return score <= maxDistance ? score : EXCEEDS_BOUND;
+		}
+		finally {
+			buffers.clearPattern(pattern);
+		}
+	}
+	
+	/***
+	 * Per-thread buffers: two DP rows for the banded approach, and the char to bitmask
+	 * table for the bit-parallel approach (dense for Latin-1, a small open-addressed table otherwise).
+	 *
+	 */
+	private static final class Scratch {
+		
+		private static final int EMPTY = -1;
+		
+		// a pattern has at most 64 distinct chars, so 128 slots keep the table at most half full
+		private static final int TABLE_SIZE = 128;
+		
+		private final int[][] rows = { new int[16], new int[16] };
+		private final long[] latin1Masks = new long[256];
+		private final int[] tableKeys = new int[TABLE_SIZE];
+		private final long[] tableMasks = new long[TABLE_SIZE];
+		
+		Scratch() {
+			Arrays.fill(tableKeys, EMPTY);
+		}
+		
+		int[] row(int index, int length) {
+			if (rows[index].length < length) {
+				rows[index] = new int[Math.max(length, rows[index].length * 2)];
+			}
+			return rows[index];
+		}
+		
+		void setPattern(String pattern) {
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = pattern.charAt(i);
+				if (c < 256) {
+					latin1Masks[c] |= 1L << i;
+				}
+				else {
+					tableMasks[slot(c)] |= 1L << i;
+				}
+			}
+		}
+		
+		long patternMask(char c) {
+			if (c < 256) {
+				return latin1Masks[c];
+			}
+			int slot = (c * 0x9E3779B9) >>> 25;
+			while (tableKeys[slot] != EMPTY) {
+				if (tableKeys[slot] == c) {
+					return tableMasks[slot];
+				}
+				slot = (slot + 1) & (TABLE_SIZE - 1);
+			}
+			return 0;
+		}
+		
+		void clearPattern(String pattern) {
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = pattern.charAt(i);
+				if (c < 256) {
+					latin1Masks[c] = 0;
+				}
+			}
+			Arrays.fill(tableKeys, EMPTY);
+			Arrays.fill(tableMasks, 0);
+		}
+		
+		/***
+		 * Find or claim the table slot for a char
+		 */
+		private int slot(char c) {
+			int slot = (c * 0x9E3779B9) >>> 25;
+			while (tableKeys[slot] != EMPTY && tableKeys[slot] != c) {
+				slot = (slot + 1) & (TABLE_SIZE - 1);
+			}
+			tableKeys[slot] = c;
+			return slot;
+		}
+	}
+	
+	public static void main(String[] args) {
+		int distance = 0;
+		
+		// test 1: null and empty inputs
+		BoundedEditDistanceChecker checker1 = new BoundedEditDistanceChecker();
+		distance = checker1.editDistance(null, null, 2);
+		System.out.println("Test 1.1: null strings should be 0 apart. Result: " + (distance == 0 ? "test passed" : "test failed"));
+		
+		distance = checker1.editDistance("abc", null, 2);
+		System.out.println("Test 1.2: one null string should exceed the bound. Result: " + (distance == EXCEEDS_BOUND ? "test passed" : "test failed"));
+		
+		distance = checker1.editDistance("", "ab", 2);
+		System.out.println("Test 1.3: empty string should be its length away. Result: " + (distance == 2 ? "test passed" : "test failed"));
+		
+		// test 2: within and over the bound
+		BoundedEditDistanceChecker checker2 = new BoundedEditDistanceChecker();
+		distance = checker2.editDistance("kitten", "sitting", 3);
+		System.out.println("Test 2.1: kitten and sitting should be 3 apart. Result: " + (distance == 3 ? "test passed" : "test failed"));
+		
+		distance = checker2.editDistance("kitten", "sitting", 2);
+		System.out.println("Test 2.2: kitten and sitting should exceed a bound of 2. Result: " + (distance == EXCEEDS_BOUND ? "test passed" : "test failed"));
+		
+		distance = checker2.editDistance("ab", "abcde", 2);
+		System.out.println("Test 2.3: length difference over the bound should exceed it. Result: " + (distance == EXCEEDS_BOUND ? "test passed" : "test failed"));
+		
+		boolean isWithin = checker2.isWithinEdits("PRD-10442", "PRD-10424", 2);
+		System.out.println("Test 2.4: transposed product code should be within 2 edits. Result: " + (isWithin ? "test passed" : "test failed"));
+		
+		// test 3: both approaches agree with the reference Levenshtein distance
+		BoundedEditDistanceChecker checker3 = new BoundedEditDistanceChecker();
+		Random random = new Random(8);
+		int bandedDisagreements = 0;
+		int bitParallelDisagreements = 0;
+		int dispatchDisagreements = 0;
+		for (int trial = 0; trial < 50000; trial++) {
+			String first = randomString(random, random.nextInt(12));
+			String second = randomString(random, random.nextInt(12));
+			int maxDistance = random.nextInt(5);
+			int reference = OneAwayChecker.levenshteinDistance(first, second);
+			int expected = reference <= maxDistance ? reference : EXCEEDS_BOUND;
+			if (checker3.editDistanceBandedApproach(first, second, maxDistance) != expected) {
+				bandedDisagreements++;
+			}
+			if (checker3.editDistanceBitParallelApproach(first, second, maxDistance) != expected) {
+				bitParallelDisagreements++;
+			}
+			if (checker3.editDistance(first, second, maxDistance) != expected) {
+				dispatchDisagreements++;
+			}
+		}
+		System.out.println("Test 3.1: banded approach should agree with the Levenshtein distance. Result: " + (bandedDisagreements == 0 ? "test passed" : "test failed"));
+		System.out.println("Test 3.2: bit-parallel approach should agree with the Levenshtein distance. Result: " + (bitParallelDisagreements == 0 ? "test passed" : "test failed"));
+		System.out.println("Test 3.3: editDistance should agree with the Levenshtein distance. Result: " + (dispatchDisagreements == 0 ? "test passed" : "test failed"));
+		
+		// test 4: long strings and a full 64-char pattern
+		BoundedEditDistanceChecker checker4 = new BoundedEditDistanceChecker();
+		int longDisagreements = 0;
+		for (int trial = 0; trial < 500; trial++) {
+			String first = randomString(random, 60 + random.nextInt(80));
+			StringBuilder second = new StringBuilder(first);
+			for (int edit = random.nextInt(5); edit > 0; edit--) {
+				second.setCharAt(random.nextInt(second.length()), '\u4e2d');
+			}
+			if (random.nextBoolean()) {
+				second.deleteCharAt(random.nextInt(second.length()));
+			}
+			int maxDistance = 1 + random.nextInt(4);
+			int reference = OneAwayChecker.levenshteinDistance(first, second.toString());
+			int expected = reference <= maxDistance ? reference : EXCEEDS_BOUND;
+			if (checker4.editDistance(first, second.toString(), maxDistance) != expected) {
+				longDisagreements++;
+			}
+		}
+		System.out.println("Test 4.1: long and non-Latin-1 strings should agree with the Levenshtein distance. Result: " + (longDisagreements == 0 ? "test passed" : "test failed"));
+	}
+	
+	/***
+	 * Build a random string over a small alphabet, so random pairs are often close
+	 */
+	private static String randomString(Random random, int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			builder.append(random.nextInt(8) == 0 ? '\u00e9' : (char) ('a' + random.nextInt(3)));
+		}
+		return builder.toString();
+	}
+}
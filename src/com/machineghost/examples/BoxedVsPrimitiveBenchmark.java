@@ -0,0 +1,136 @@
+package com.machineghost.examples;
+
+import java.lang.management.ManagementFactory;
+
+/***
+ * Compare the primitive boolean checker methods against boxed Boolean wrappers of the same calls,
+ * reporting throughput and bytes allocated per call for each.
+ * Usage: BoxedVsPrimitiveBenchmark [iterations]
+ *
+ */
+public class BoxedVsPrimitiveBenchmark {
+	
+	private static final OneAwayChecker ONE_AWAY_CHECKER = new OneAwayChecker();
+	private static final StringRotationChecker ROTATION_CHECKER = new StringRotationChecker();
+	private static final PermutationChecker PERMUTATION_CHECKER = new PermutationChecker();
+	private static final UniqueCharsChecker UNIQUE_CHARS_CHECKER = new UniqueCharsChecker();
+	
+	private static final String[][] PAIRS = { { "teacup", "cuptea" }, { "abcr", "abc9" }, { "dog12", "g1o2d" }, { "taco", "ocat" } };
+	
+	/***
+	 * The old API shape: every answer is returned and held as a Boolean
+	 */
+	private static Boolean isOneAwayBoxed(String firstString, String secondString) {
+		Boolean isOneAway = ONE_AWAY_CHECKER.isOneAway(firstString, secondString);
+		return isOneAway;
+	}
+	
+	private static Boolean isRotationBoxed(String firstString, String secondString) {
+		Boolean isRotation = ROTATION_CHECKER.isRotation(firstString, secondString);
+		return isRotation;
+	}
+	
+	private static Boolean isPermutationBoxed(String firstString, String secondString) {
+		Boolean isPermutation = PERMUTATION_CHECKER.stringIsPermutationOfAnotherOptimized(firstString, secondString);
+		return isPermutation;
+	}
+	
+	private static Boolean isUniqueBoxed(String stringToCheck) {
+		Boolean isUnique = UNIQUE_CHARS_CHECKER.charsAreAllUniqueBitsetApproach(stringToCheck);
+		return isUnique;
+	}
+	
+	/***
+	 * Run every checker through the boxed wrappers
+	 * @param iterations: the number of rounds over the input pairs
+	 * @return the number of true answers, so the calls can't be optimized away
+	 */
+	static long runBoxed(long iterations) {
+		long trueCount = 0;
+		for (long i = 0; i < iterations; i++) {
+			String[] pair = PAIRS[(int) (i & 3)];
+			Boolean isOneAway = isOneAwayBoxed(pair[0], pair[1]);
+			Boolean isRotation = isRotationBoxed(pair[0], pair[1]);
+			Boolean isPermutation = isPermutationBoxed(pair[0], pair[1]);
+			Boolean isUnique = isUniqueBoxed(pair[0]);
+			if (isOneAway) {
+				trueCount++;
+			}
+			if (isRotation) {
+				trueCount++;
+			}
+			if (isPermutation) {
+				trueCount++;
+			}
+			if (isUnique) {
+				trueCount++;
+			}
+		}
+		return trueCount;
+	}
+	
+	/***
+	 * Run every checker through the primitive methods
+	 * @param iterations: the number of rounds over the input pairs
+	 * @return the number of true answers, so the calls can't be optimized away
+	 */
+	static long runPrimitive(long iterations) {
+		long trueCount = 0;
+		for (long i = 0; i < iterations; i++) {
+			String[] pair = PAIRS[(int) (i & 3)];
+			if (ONE_AWAY_CHECKER.isOneAway(pair[0], pair[1])) {
+				trueCount++;
+			}
+			if (ROTATION_CHECKER.isRotation(pair[0], pair[1])) {
+				trueCount++;
+			}
+			if (PERMUTATION_CHECKER.stringIsPermutationOfAnotherOptimized(pair[0], pair[1])) {
+				trueCount++;
+			}
+			if (UNIQUE_CHARS_CHECKER.charsAreAllUniqueBitsetApproach(pair[0])) {
+				trueCount++;
+			}
+		}
+		return trueCount;
+	}
+	
+	/***
+	 * Get the bytes allocated so far by the current thread
+	 * @return the allocated bytes
+	 */
+	static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/***
+	 * Time one path and print its throughput and allocation rate
+	 * @param name: the name of the path
+	 * @param boxed: true to run the boxed path
+	 * @param iterations: the number of rounds over the input pairs
+	 */
+	private static void measure(String name, boolean boxed, long iterations) {
+		long startBytes = allocatedBytes();
+		long startNanos = System.nanoTime();
+		long trueCount = boxed ? runBoxed(iterations) : runPrimitive(iterations);
+		long elapsedNanos = System.nanoTime() - startNanos;
+		long bytes = allocatedBytes() - startBytes;
+		
+		long calls = iterations * 4;
+		System.out.println(String.format("%s\t%.0f calls/s\t%.3f bytes/call\t(%d true)",
+				name, calls * 1e9 / elapsedNanos, (double) bytes / calls, trueCount));
+	}
+	
+	public static void main(String[] args) {
+		long iterations = args.length > 0 ? Long.parseLong(args[0]) : 5000000;
+		
+		// warm up both paths so they are compiled before measuring
+		runBoxed(iterations / 10);
+		runPrimitive(iterations / 10);
+		
+		for (int round = 1; round <= 3; round++) {
+			measure("boxed", true, iterations);
+			measure("primitive", false, iterations);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package com.machineghost.examples;
+
+import java.util.Arrays;
+
+/***
+ * The vector char frequency kernel for long repetitive Latin-1 strings and byte views, used by the counting
+ * permutation check. When the JVM runs with --add-modules jdk.incubator.vector on hardware with 512-bit
+ * vectors, chars are copied out of a String in bulk chunks and counted by VectorHistogram, one sub-histogram
+ * per vector lane, so runs like "aaaa" or "abab" don't stall on a counter still being stored. Clearing and
+ * merging sixteen sub-histograms costs as much as counting a few thousand chars, and the single table in
+ * PermutationChecker is faster on varied text, so only inputs of VECTOR_MIN_LENGTH and up whose start is
+ * repetitive are sent here; callers sample them with favorsVector first. Without the vector kernel everything
+ * stays on the scalar code point count. CharHistogramJmhBenchmark has the numbers behind these limits.
+ *
+ */
+final class CharHistogram {
+	
+	// from this many chars or bytes the vector kernel earns back its clearing and merging
+	static final int VECTOR_MIN_LENGTH = 65536;
+	
+	// chosen once, the scalar count is the fallback when the vector kernel is missing or emulated
+	static final boolean VECTOR_KERNEL = vectorKernelAvailable();
+	
+	// chars looked at by favorsVector, and how many of them must repeat a recent char
+	private static final int SAMPLE_SIZE = 64;
+	private static final int SAMPLE_REPEATS = SAMPLE_SIZE / 4;
+	
+	// results of compareLatin1Counts
+	static final int SAME_COUNTS = 1;
+	static final int DIFFERENT_COUNTS = 0;
+	static final int NOT_LATIN1 = -1;
+	
+	private static final int CHUNK_SIZE = 8192;
+	
+	// the most sub-histograms a count is spread over, a single table without the vector kernel
+	static final int MAX_HISTOGRAMS = VECTOR_KERNEL ? VectorHistogram.LANES : 1;
+	
+	/***
+	 * Per-thread buffers, so a call allocates nothing
+	 *
+	 */
+	private static final class Scratch {
+		final char[] chunk = new char[CHUNK_SIZE];
+		final int[] counts = new int[MAX_HISTOGRAMS * 256];
+	}
+	
+	private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+	
+	private CharHistogram() { }
+	
+	/***
+	 * @return true if the incubator vector module is in the boot layer and the hardware runs its kernel natively
+	 */
+	private static boolean vectorKernelAvailable() {
+		// VectorHistogram can't even be loaded without the module, so look for the module first
+		if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			return false;
+		}
+		return VectorHistogram.worthwhile();
+	}
+	
+	/***
+	 * Decide if a text is long and repetitive enough for the vector kernel to pay off, from a sample of its start
+	 * @param text: the string or byte view to sample
+	 * @return true if the vector kernel should count it
+	 */
+	static boolean favorsVector(CharSequence text) {
+		if (!VECTOR_KERNEL || text.length() < VECTOR_MIN_LENGTH) {
+			return false;
+		}
+		
+		// a char equal to one of the two before it would hit a counter that is still being updated
+		int repeats = 0;
+		for (int i = 2; i < SAMPLE_SIZE; i++) {
+			char c = text.charAt(i);
+			if (c == text.charAt(i - 1) || c == text.charAt(i - 2)) {
+				repeats++;
+			}
+		}
+		return repeats >= SAMPLE_REPEATS;
+	}
+	
+	/***
+	 * Compare the char counts of two strings of the same length with the vector kernel, as long as the first
+	 * is all Latin-1. Only call this when VECTOR_KERNEL is set.
+	 * @param firstString: the first string to compare
+	 * @param secondString: the second string to compare, the same length as the first
+	 * @return SAME_COUNTS or DIFFERENT_COUNTS, or NOT_LATIN1 if the first string has a char above 0xFF
+	 */
+	static int compareLatin1Counts(String firstString, String secondString) {
+		Scratch buffers = scratch.get();
+		int[] counts = buffers.counts;
+		Arrays.fill(counts, 0);
+		
+		if (!count(firstString, buffers, 1)) {
+			return NOT_LATIN1;
+		}
+		if (!count(secondString, buffers, -1)) {
+			// the first string is all Latin-1, so a char above 0xFF can't be matched
+			return DIFFERENT_COUNTS;
+		}
+		return allCancelled(counts, VectorHistogram.LANES) ? SAME_COUNTS : DIFFERENT_COUNTS;
+	}
+	
+	/***
+	 * Pick the sub-histograms for counting a byte view
+	 * @param view: the bytes to count, one char per byte
+	 * @return the number of sub-histograms countBytes will use, 1 for the plain single table
+	 */
+	static int byteHistogramsFor(CharSequence view) {
+		return favorsVector(view) ? VectorHistogram.LANES : 1;
+	}
+	
+	/***
+	 * Add bytes to the counts, with the vector kernel when byteHistogramsFor chose it
+	 * @param bytes: the bytes to count
+	 * @param length: the number of bytes to count, from the start of the array
+	 * @param counts: the sub-histograms, 256 counts each
+	 * @param delta: 1 to add the bytes, -1 to take them away
+	 * @param histograms: what byteHistogramsFor returned
+	 */
+	static void countBytes(byte[] bytes, int length, int[] counts, int delta, int histograms) {
+		if (histograms > 1) {
+			VectorHistogram.countBytes(bytes, length, counts, delta);
+			return;
+		}
+		for (int i = 0; i < length; i++) {
+			counts[bytes[i] & 0xFF] += delta;
+		}
+	}
+	
+	/***
+	 * Merge sub-histograms that were added to and taken from
+	 * @param counts: the sub-histograms, 256 counts each
+	 * @param histograms: the number of sub-histograms in use
+	 * @return true if every char or byte cancelled out
+	 */
+	static boolean allCancelled(int[] counts, int histograms) {
+		for (int c = 0; c < 256; c++) {
+			int sum = 0;
+			for (int slot = c; slot < histograms * 256; slot += 256) {
+				sum += counts[slot];
+			}
+			if (sum != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/***
+	 * Add every char of a string to the sub-histograms
+	 * @param string: the string to count
+	 * @param buffers: the calling thread's buffers
+	 * @param delta: 1 to add the chars, -1 to take them away
+	 * @return false if the string has a char above 0xFF, the counts are then incomplete
+	 */
+	private static boolean count(String string, Scratch buffers, int delta) {
+		char[] chunk = buffers.chunk;
+		for (int start = 0; start < string.length(); start += CHUNK_SIZE) {
+			int length = Math.min(CHUNK_SIZE, string.length() - start);
+			string.getChars(start, start + length, chunk, 0);
+			if (!VectorHistogram.countChars(chunk, length, buffers.counts, delta)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,558 @@
+package com.machineghost.examples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/***
+ * Benchmark every checker algorithm across input lengths, alphabets and hit/miss ratios.
+ * Each cell reports throughput, latency percentiles and bytes allocated per call, so the naive,
+ * sorted and counting variants can be compared on real numbers.
+ * Latency is timed per call with System.nanoTime, so it includes ~20ns of timer overhead. Throughput is
+ * counted over the timed calls only, so preparing an input (copying a matrix back) isn't charged to it.
+ * The same grid runs under JMH, with its GC profiler for allocation, as CheckerJmhBenchmark and
+ * MatrixTransformJmhBenchmark under jmh.
+ *
+ * Usage: CheckerBenchmark [option=value ...]
+ *   algorithms=regex     only run algorithms whose name matches (default: all)
+ *   sizes=8,1024,...     input lengths in chars (default: 8,64,1024,65536,1048576,16777216)
+ *   alphabets=ASCII,...  any of BINARY, ASCII, LATIN1, BMP, ASTRAL (default: all)
+ *   hits=0,0.5,1         fraction of calls whose answer is true (default: 0.5)
+ *   seconds=1            measured time per cell, after the same time again of warm-up
+ *
+ */
+public class CheckerBenchmark {
+	
+	// O(n2) algorithms are skipped above this length, they would take minutes per call
+	static final int QUADRATIC_MAX_LENGTH = 16384;
+	
+	// keep each cell's input pool around this size, and never hold more than this many inputs of a kind
+	private static final long POOL_MAX_BYTES = 64L * 1024 * 1024;
+	private static final int POOL_MAX_INPUTS = 8;
+	
+	private static final int MAX_SAMPLES = 1 << 20;
+	
+	/***
+	 * The code point ranges inputs are drawn from
+	 *
+	 */
+	enum Alphabet {
+		// two symbols, for repetitive input full of runs
+		BINARY(0x30, 0x31),
+		ASCII(0x20, 0x7E),
+		LATIN1(0x20, 0xFF),
+		BMP(0x100, 0xD7FF),
+		ASTRAL(0x10000, 0x10FFFF);
+		
+		final int first;
+		final int last;
+		
+		Alphabet(int first, int last) {
+			this.first = first;
+			this.last = last;
+		}
+		
+		int size() {
+			return last - first + 1;
+		}
+		
+		int charsPerCodePoint() {
+			return Character.charCount(first);
+		}
+	}
+	
+	/***
+	 * The kind of input an algorithm takes, which decides how hit and miss inputs are built
+	 *
+	 */
+	enum Family {
+		ONE_AWAY, ROTATION, PERMUTATION, UNIQUE, MATRIX_TRANSFORM, MATRIX_EQUALS
+	}
+	
+	/***
+	 * One algorithm under test
+	 *
+	 */
+	abstract static class Case {
+		final String name;
+		final Family family;
+		final boolean quadratic;
+		
+		Case(String name, Family family, boolean quadratic) {
+			this.name = name;
+			this.family = family;
+			this.quadratic = quadratic;
+		}
+		
+		/***
+		 * @param alphabet: the alphabet inputs are drawn from
+		 * @return true if the algorithm accepts input from the alphabet
+		 */
+		boolean supports(Alphabet alphabet) {
+			return true;
+		}
+		
+		/***
+		 * Get an input ready for a call, outside the timed region
+		 * @param input: an input from the pool
+		 */
+		void prepare(Object input) {
+		}
+		
+		/***
+		 * Run the algorithm once
+		 * @param input: a String, a String[2] pair or an int[][][2] pair of matrices, depending on the family
+		 * @return the algorithm's answer
+		 */
+		abstract boolean run(Object input);
+	}
+	
+	/***
+	 * A matrix transform, which zeroes its input in place. Its input is a template and a scratch matrix of
+	 * the same shape, and the template is copied into the scratch matrix before every call, so no call
+	 * sees a matrix an earlier call already zeroed.
+	 *
+	 */
+	abstract static class TransformCase extends Case {
+		
+		TransformCase(String name) {
+			super(name, Family.MATRIX_TRANSFORM, false);
+		}
+		
+		@Override
+		void prepare(Object input) {
+			int[][][] templateAndScratch = (int[][][]) input;
+			for (int i = 0; i < templateAndScratch[0].length; i++) {
+				System.arraycopy(templateAndScratch[0][i], 0, templateAndScratch[1][i], 0, templateAndScratch[0][i].length);
+			}
+		}
+		
+		@Override
+		boolean run(Object input) {
+			// a hit has a zero in its last row, so the transform leaves a zero in the last element
+			int[][] matrix = ((int[][][]) input)[1];
+			transform(matrix);
+			return matrix[matrix.length - 1][matrix[0].length - 1] == 0;
+		}
+		
+		abstract void transform(int[][] matrix);
+	}
+	
+	private static final OneAwayChecker ONE_AWAY_CHECKER = new OneAwayChecker();
+	private static final StringRotationChecker ROTATION_CHECKER = new StringRotationChecker();
+	private static final PermutationChecker PERMUTATION_CHECKER = new PermutationChecker();
+	private static final UniqueCharsChecker UNIQUE_CHARS_CHECKER = new UniqueCharsChecker();
+	private static final ZeroMatrixChecker ZERO_MATRIX_CHECKER = new ZeroMatrixChecker();
+	
+	/***
+	 * Build the list of every algorithm in the package
+	 * @return the benchmark cases
+	 */
+	static List<Case> allCases() {
+		List<Case> cases = new ArrayList<Case>();
+		cases.add(new Case("OneAwayChecker.isOneAway", Family.ONE_AWAY, false) {
+			@Override
+			boolean supports(Alphabet alphabet) {
+				// edits are counted in chars, so replacing one astral code point is two edits
+				return alphabet != Alphabet.ASTRAL;
+			}
+			
+			@Override
+			boolean run(Object input) {
+				String[] pair = (String[]) input;
+				return ONE_AWAY_CHECKER.isOneAway(pair[0], pair[1]);
+			}
+		});
+		cases.add(new Case("StringRotationChecker.isRotation", Family.ROTATION, false) {
+			@Override
+			boolean run(Object input) {
+				String[] pair = (String[]) input;
+				return ROTATION_CHECKER.isRotation(pair[0], pair[1]);
+			}
+		});
+		cases.add(new Case("StringRotationChecker.isRotationNaiveApproach", Family.ROTATION, true) {
+			@Override
+			boolean run(Object input) {
+				String[] pair = (String[]) input;
+				return ROTATION_CHECKER.isRotationNaiveApproach(pair[0], pair[1]);
+			}
+		});
+		cases.add(new Case("StringRotationChecker.canonicalRotation", Family.ROTATION, false) {
+			@Override
+			boolean run(Object input) {
+				String[] pair = (String[]) input;
+				return ROTATION_CHECKER.canonicalRotation(pair[0]).equals(ROTATION_CHECKER.canonicalRotation(pair[1]));
+			}
+		});
+		cases.add(new Case("PermutationChecker.stringIsPermutationOfAnotherOptimized", Family.PERMUTATION, false) {
+			@Override
+			boolean run(Object input) {
+				String[] pair = (String[]) input;
+				return PERMUTATION_CHECKER.stringIsPermutationOfAnotherOptimized(pair[0], pair[1]);
+			}
+		});
+		cases.add(new Case("PermutationChecker.stringIsPermutationOfAnother", Family.PERMUTATION, false) {
+			@Override
+			boolean run(Object input) {
+				String[] pair = (String[]) input;
+				return PERMUTATION_CHECKER.stringIsPermutationOfAnother(pair[0], pair[1]);
+			}
+		});
+		cases.add(new Case("UniqueCharsChecker.charsAreAllUniqueNaiveApproach", Family.UNIQUE, true) {
+			@Override
+			boolean supports(Alphabet alphabet) {
+				// surrogate halves repeat, so the char-based approaches can't see unique astral strings
+				return alphabet != Alphabet.ASTRAL;
+			}
+			
+			@Override
+			boolean run(Object input) {
+				return UNIQUE_CHARS_CHECKER.charsAreAllUniqueNaiveApproach((String) input);
+			}
+		});
+		cases.add(new Case("UniqueCharsChecker.charsAreAllUniqueSortedApproach", Family.UNIQUE, false) {
+			@Override
+			boolean supports(Alphabet alphabet) {
+				return alphabet != Alphabet.ASTRAL;
+			}
+			
+			@Override
+			boolean run(Object input) {
+				return UNIQUE_CHARS_CHECKER.charsAreAllUniqueSortedApproach((String) input);
+			}
+		});
+		cases.add(new Case("UniqueCharsChecker.charsAreAllUniqueBitsetApproach", Family.UNIQUE, false) {
+			@Override
+			boolean run(Object input) {
+				return UNIQUE_CHARS_CHECKER.charsAreAllUniqueBitsetApproach((String) input);
+			}
+		});
+		cases.add(new TransformCase("ZeroMatrixChecker.transformMatrix") {
+			@Override
+			void transform(int[][] matrix) {
+				ZERO_MATRIX_CHECKER.transformMatrix(matrix);
+			}
+		});
+		cases.add(new TransformCase("ZeroMatrixChecker.transformMatrixParallel") {
+			@Override
+			void transform(int[][] matrix) {
+				ZERO_MATRIX_CHECKER.transformMatrixParallel(matrix);
+			}
+		});
+		cases.add(new TransformCase("ZeroMatrixChecker.transformMatrixInPlace") {
+			@Override
+			void transform(int[][] matrix) {
+				ZERO_MATRIX_CHECKER.transformMatrixInPlace(matrix);
+			}
+		});
+		cases.add(new Case("ZeroMatrixChecker.matricesAreEqual", Family.MATRIX_EQUALS, false) {
+			@Override
+			boolean run(Object input) {
+				int[][][] pair = (int[][][]) input;
+				return ZERO_MATRIX_CHECKER.matricesAreEqual(pair[0], pair[1]);
+			}
+		});
+		return cases;
+	}
+	
+	/***
+	 * Builds hit and miss inputs for each family
+	 *
+	 */
+	static class InputFactory {
+		private final Random random;
+		
+		InputFactory(long seed) {
+			random = new Random(seed);
+		}
+		
+		/***
+		 * Build one input
+		 * @param family: the kind of input to build
+		 * @param alphabet: the alphabet to draw from
+		 * @param length: the input length in chars, or matrix elements
+		 * @param hit: true to build an input whose answer is true
+		 * @return the input, or null if no such input exists (a long string can't be all unique)
+		 */
+		Object build(Family family, Alphabet alphabet, int length, boolean hit) {
+			int codePoints = Math.max(2, length / alphabet.charsPerCodePoint());
+			switch (family) {
+				case ONE_AWAY: {
+					int[] first = randomCodePoints(alphabet, codePoints);
+					int[] second = first.clone();
+					int firstIndex = random.nextInt(codePoints);
+					replace(alphabet, second, firstIndex);
+					if (!hit) {
+						replace(alphabet, second, (firstIndex + 1 + random.nextInt(codePoints - 1)) % codePoints);
+					}
+					return new String[] { toString(first), toString(second) };
+				}
+				case ROTATION: {
+					int[] first = randomCodePoints(alphabet, codePoints);
+					int[] second = new int[codePoints];
+					int offset = 1 + random.nextInt(codePoints - 1);
+					for (int i = 0; i < codePoints; i++) {
+						second[i] = first[(i + offset) % codePoints];
+					}
+					if (!hit) {
+						replace(alphabet, second, random.nextInt(codePoints));
+					}
+					return new String[] { toString(first), toString(second) };
+				}
+				case PERMUTATION: {
+					int[] first = randomCodePoints(alphabet, codePoints);
+					int[] second = first.clone();
+					do {
+						shuffle(second, codePoints);
+					} while (Arrays.equals(first, second));
+					if (!hit) {
+						replace(alphabet, second, random.nextInt(codePoints));
+					}
+					return new String[] { toString(first), toString(second) };
+				}
+				case UNIQUE: {
+					if (hit) {
+						if (codePoints > alphabet.size()) {
+							return null;
+						}
+						return toString(distinctCodePoints(alphabet, codePoints));
+					}
+					int[] codePointArray = randomCodePoints(alphabet, codePoints);
+					codePointArray[random.nextInt(codePoints)] = codePointArray[random.nextInt(codePoints)];
+					codePointArray[codePoints - 1] = codePointArray[0];
+					return toString(codePointArray);
+				}
+				case MATRIX_TRANSFORM: {
+					int side = matrixSide(length);
+					int[][] matrix = randomMatrix(side);
+					if (hit) {
+						matrix[side - 1][random.nextInt(side)] = 0;
+					}
+					// the transform works on a scratch copy, filled from the template before each call
+					return new int[][][] { matrix, new int[side][side] };
+				}
+				default: {
+					int side = matrixSide(length);
+					int[][] first = randomMatrix(side);
+					int[][] second = new int[side][];
+					for (int i = 0; i < side; i++) {
+						second[i] = first[i].clone();
+					}
+					if (!hit) {
+						second[side - 1][side - 1]++;
+					}
+					return new int[][][] { first, second };
+				}
+			}
+		}
+		
+		private int randomCodePoint(Alphabet alphabet) {
+			return alphabet.first + random.nextInt(alphabet.size());
+		}
+		
+		private int[] randomCodePoints(Alphabet alphabet, int count) {
+			int[] codePoints = new int[count];
+			for (int i = 0; i < count; i++) {
+				codePoints[i] = randomCodePoint(alphabet);
+			}
+			return codePoints;
+		}
+		
+		private int[] distinctCodePoints(Alphabet alphabet, int count) {
+			// partial Fisher-Yates over the whole alphabet
+			int[] all = new int[alphabet.size()];
+			for (int i = 0; i < all.length; i++) {
+				all[i] = alphabet.first + i;
+			}
+			for (int i = 0; i < count; i++) {
+				int j = i + random.nextInt(all.length - i);
+				int swap = all[i];
+				all[i] = all[j];
+				all[j] = swap;
+			}
+			return Arrays.copyOf(all, count);
+		}
+		
+		private void shuffle(int[] codePoints, int count) {
+			for (int i = count - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int swap = codePoints[i];
+				codePoints[i] = codePoints[j];
+				codePoints[j] = swap;
+			}
+		}
+		
+		/***
+		 * Replace a code point with a different one that isn't equal to it ignoring case
+		 */
+		private void replace(Alphabet alphabet, int[] codePoints, int index) {
+			int original = codePoints[index];
+			int replacement;
+			do {
+				replacement = randomCodePoint(alphabet);
+			} while (Character.toLowerCase(Character.toUpperCase(replacement)) == Character.toLowerCase(Character.toUpperCase(original)));
+			codePoints[index] = replacement;
+		}
+		
+		private int[][] randomMatrix(int side) {
+			int[][] matrix = new int[side][side];
+			for (int i = 0; i < side; i++) {
+				for (int j = 0; j < side; j++) {
+					matrix[i][j] = 1 + random.nextInt(1000);
+				}
+			}
+			return matrix;
+		}
+		
+		private static int matrixSide(int length) {
+			// treat the length as bytes of ints
+			return Math.max(2, (int) Math.sqrt(length / 4));
+		}
+		
+		private static String toString(int[] codePoints) {
+			return new String(codePoints, 0, codePoints.length);
+		}
+	}
+	
+	/***
+	 * The measurements for one cell
+	 *
+	 */
+	static class Result {
+		long operations;
+		long mismatches;
+		double operationsPerSecond;
+		double bytesPerOperation;
+		long p50;
+		long p99;
+		long p999;
+	}
+	
+	/***
+	 * Run one algorithm on a mix of hit and miss inputs for a fixed time
+	 * @param benchmarkCase: the algorithm to run
+	 * @param hits: inputs whose answer is true
+	 * @param misses: inputs whose answer is false
+	 * @param hitRatio: the fraction of calls that use a hit input
+	 * @param nanos: how long to run for
+	 * @return the measurements
+	 */
+	static Result measure(Case benchmarkCase, Object[] hits, Object[] misses, double hitRatio, long nanos) {
+		// fix the hit/miss sequence up front so choosing it isn't timed
+		boolean[] pattern = new boolean[1024];
+		Random random = new Random(42);
+		for (int i = 0; i < pattern.length; i++) {
+			pattern[i] = random.nextDouble() < hitRatio;
+		}
+		long[] samples = new long[MAX_SAMPLES];
+		
+		Result result = new Result();
+		long startBytes = BoxedVsPrimitiveBenchmark.allocatedBytes();
+		long start = System.nanoTime();
+		long deadline = start + nanos;
+		long now = start;
+		// only the calls are counted, not preparing their inputs
+		long timedNanos = 0;
+		int i = 0;
+		while (now < deadline) {
+			boolean hit = pattern[i & 1023];
+			Object input = hit ? hits[i % hits.length] : misses[i % misses.length];
+			benchmarkCase.prepare(input);
+			long before = System.nanoTime();
+			boolean answer = benchmarkCase.run(input);
+			now = System.nanoTime();
+			if (answer != hit) {
+				result.mismatches++;
+			}
+			samples[i & (MAX_SAMPLES - 1)] = now - before;
+			timedNanos += now - before;
+			i++;
+		}
+		long bytes = BoxedVsPrimitiveBenchmark.allocatedBytes() - startBytes;
+		
+		result.operations = i;
+		result.operationsPerSecond = i * 1e9 / timedNanos;
+		result.bytesPerOperation = (double) bytes / i;
+		
+		int sampleCount = Math.min(i, MAX_SAMPLES);
+		Arrays.sort(samples, 0, sampleCount);
+		result.p50 = samples[(int) (sampleCount * 0.5)];
+		result.p99 = samples[(int) (sampleCount * 0.99)];
+		result.p999 = samples[(int) (sampleCount * 0.999)];
+		return result;
+	}
+	
+	/***
+	 * Build a pool of inputs for one cell
+	 * @return the inputs, or null if the family can't produce an input of this kind
+	 */
+	static Object[] pool(InputFactory factory, Family family, Alphabet alphabet, int length, boolean hit) {
+		long inputBytes = Math.max(1, 2L * 2 * length);
+		int count = (int) Math.max(1, Math.min(POOL_MAX_INPUTS, POOL_MAX_BYTES / inputBytes));
+		Object[] inputs = new Object[count];
+		for (int i = 0; i < count; i++) {
+			inputs[i] = factory.build(family, alphabet, length, hit);
+			if (inputs[i] == null) {
+				return null;
+			}
+		}
+		return inputs;
+	}
+	
+	private static String option(String[] args, String name, String defaultValue) {
+		for (String arg : args) {
+			if (arg.startsWith(name + "=")) {
+				return arg.substring(name.length() + 1);
+			}
+		}
+		return defaultValue;
+	}
+	
+	public static void main(String[] args) {
+		String algorithms = option(args, "algorithms", ".*");
+		String[] sizes = option(args, "sizes", "8,64,1024,65536,1048576,16777216").split(",");
+		String[] alphabets = option(args, "alphabets", "BINARY,ASCII,LATIN1,BMP,ASTRAL").split(",");
+		String[] hitRatios = option(args, "hits", "0.5").split(",");
+		long nanos = (long) (Double.parseDouble(option(args, "seconds", "1")) * 1e9);
+		
+		InputFactory factory = new InputFactory(1);
+		System.out.println(String.format("%-60s %-7s %10s %5s %14s %10s %10s %10s %12s %s",
+				"algorithm", "alpha", "length", "hits", "ops/s", "p50 ns", "p99 ns", "p99.9 ns", "B/op", "mismatches"));
+		for (Case benchmarkCase : allCases()) {
+			if (!benchmarkCase.name.matches(algorithms)) {
+				continue;
+			}
+			boolean matrix = benchmarkCase.family == Family.MATRIX_TRANSFORM || benchmarkCase.family == Family.MATRIX_EQUALS;
+			for (String alphabetName : alphabets) {
+				Alphabet alphabet = Alphabet.valueOf(alphabetName.trim());
+				// matrices have no alphabet, run them once
+				if (!benchmarkCase.supports(alphabet) || (matrix && alphabet != Alphabet.valueOf(alphabets[0].trim()))) {
+					continue;
+				}
+				for (String size : sizes) {
+					int length = Integer.parseInt(size.trim());
+					if (benchmarkCase.quadratic && length > QUADRATIC_MAX_LENGTH) {
+						continue;
+					}
+					Object[] hits = pool(factory, benchmarkCase.family, alphabet, length, true);
+					Object[] misses = pool(factory, benchmarkCase.family, alphabet, length, false);
+					for (String hitRatio : hitRatios) {
+						double ratio = Double.parseDouble(hitRatio.trim());
+						if (hits == null && ratio > 0) {
+							System.out.println(String.format("%-60s %-7s %10d %5s skipped: no hit input exists",
+									benchmarkCase.name, matrix ? "-" : alphabet.name(), length, hitRatio));
+							continue;
+						}
+						
+						measure(benchmarkCase, hits != null ? hits : misses, misses, ratio, nanos);
+						Result result = measure(benchmarkCase, hits != null ? hits : misses, misses, ratio, nanos);
+						System.out.println(String.format("%-60s %-7s %10d %5s %14.0f %10d %10d %10d %12.1f %d",
+								benchmarkCase.name, matrix ? "-" : alphabet.name(), length, hitRatio, result.operationsPerSecond,
+								result.p50, result.p99, result.p999, result.bytesPerOperation, result.mismatches));
+					}
+				}
+			}
+		}
+	}
+}
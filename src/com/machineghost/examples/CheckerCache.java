@@ -0,0 +1,608 @@
+package com.machineghost.examples;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/***
+ * A memoising cache in front of a pair checker, for traffic where a few pairs make up most of the calls.
+ * Admission and eviction follow W-TinyLFU: new pairs enter a small LRU window, and a pair leaving the window
+ * only displaces the main area's next victim if a frequency sketch says it has been asked for more often.
+ * One-off pairs, like a scan, pass through the window without flushing the pairs that keep coming back.
+ * The main area is a segmented LRU, where pairs hit a second time are protected from the next evictions.
+ *
+ * The cache is split into lock-striped segments by key hash, each with its own share of the byte budget,
+ * its own sketch and its own lock, so threads asking for different pairs rarely wait on each other.
+ * A miss is computed outside the lock, so two threads missing on the same pair may both compute it.
+ * Cached answers are the checker's own answers, so a cached result is always the uncached result.
+ * For symmetric relations the key ignores the order of the pair, so (a, b) and (b, a) share an entry.
+ *
+ */
+public final class CheckerCache implements CheckerCacheMXBean {
+	
+	// the share of each segment's bytes held by the window, and of the main area held by protected pairs
+	static final int WINDOW_PERCENT = 1;
+	static final int PROTECTED_PERCENT = 80;
+	
+	// an entry's weight is this plus two bytes per char of its pair, about the memory it keeps alive
+	static final int ENTRY_OVERHEAD_BYTES = 128;
+	
+	// segments are never given less than this many bytes, so small caches aren't split into uselessly small ones
+	private static final long MIN_SEGMENT_BYTES = 64 * 1024;
+	
+	private final PairBatch.PairCheck check;
+	private final boolean symmetric;
+	private final long maxBytes;
+	private final Segment[] segments;
+	private final int segmentMask;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	
+	CheckerCache(PairBatch.PairCheck check, boolean symmetric, long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+		}
+		this.check = check;
+		this.symmetric = symmetric;
+		this.maxBytes = maxBytes;
+		
+		// about four segments per core, fewer when the budget is small
+		int wanted = Runtime.getRuntime().availableProcessors() * 4;
+		long affordable = Math.max(1, maxBytes / MIN_SEGMENT_BYTES);
+		int segmentCount = Integer.highestOneBit((int) Math.min(wanted, affordable));
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(maxBytes / segmentCount);
+		}
+		segmentMask = segmentCount - 1;
+	}
+	
+	/***
+	 * Cache the answers of OneAwayChecker.isOneAway, in either order
+	 * @param checker: the checker to ask on a miss
+	 * @param maxBytes: the most memory the cached pairs may keep alive
+	 * @return the cache
+	 */
+	public static CheckerCache oneAway(OneAwayChecker checker, long maxBytes) {
+		return new CheckerCache(checker::isOneAway, true, maxBytes);
+	}
+	
+	/***
+	 * Cache the answers of StringRotationChecker.isRotation, in either order.
+	 * Rotation is symmetric: if b is a by k chars, a is b by n - k chars, and both are proper rotations.
+	 * @param checker: the checker to ask on a miss
+	 * @param maxBytes: the most memory the cached pairs may keep alive
+	 * @return the cache
+	 */
+	public static CheckerCache rotation(StringRotationChecker checker, long maxBytes) {
+		return new CheckerCache(checker::isRotation, true, maxBytes);
+	}
+	
+	/***
+	 * Cache the answers of PermutationChecker.stringIsPermutationOfAnotherOptimized, in either order
+	 * @param checker: the checker to ask on a miss
+	 * @param maxBytes: the most memory the cached pairs may keep alive
+	 * @return the cache
+	 */
+	public static CheckerCache permutation(PermutationChecker checker, long maxBytes) {
+		return new CheckerCache(checker::stringIsPermutationOfAnotherOptimized, true, maxBytes);
+	}
+	
+	/***
+	 * Answer the check for a pair, from the cache if it has been asked before and is still cached
+	 * @param firstString: the first string of the pair
+	 * @param secondString: the second string of the pair
+	 * @return the checker's answer
+	 */
+	public boolean check(String firstString, String secondString) {
+		if (firstString == null || secondString == null) {
+			// not worth a slot, the checkers answer these at once
+			return check.check(firstString, secondString);
+		}
+		
+		// order a symmetric pair so either order finds the same entry
+		if (symmetric && comesAfter(firstString, secondString)) {
+			String swap = firstString;
+			firstString = secondString;
+			secondString = swap;
+		}
+		int hash = spread(31 * firstString.hashCode() + secondString.hashCode());
+		Segment segment = segments[hash & segmentMask];
+		
+		Boolean cached = segment.get(firstString, secondString, hash);
+		if (cached != null) {
+			hits.increment();
+			return cached;
+		}
+		misses.increment();
+		boolean result = check.check(firstString, secondString);
+		evictions.add(segment.put(new Node(firstString, secondString, hash, result)));
+		return result;
+	}
+	
+	/***
+	 * Register the cache's statistics with the platform MBean server
+	 * @param name: the name to register under, like "isOneAway"
+	 * @throws JMException: if the name is taken or not a valid ObjectName value
+	 */
+	public void register(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName("com.machineghost.examples:type=CheckerCache,name=" + name));
+	}
+	
+	@Override
+	public long getHitCount() {
+		return hits.sum();
+	}
+	
+	@Override
+	public long getMissCount() {
+		return misses.sum();
+	}
+	
+	/***
+	 * @return the share of checks answered from the cache, 0 before any check
+	 */
+	@Override
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+	
+	@Override
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+	
+	/***
+	 * @return the weight of every cached entry, in bytes
+	 */
+	@Override
+	public long getWeightedSize() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.weightedSize();
+		}
+		return size;
+	}
+	
+	@Override
+	public long getMaximumWeight() {
+		return maxBytes;
+	}
+	
+	private static boolean comesAfter(String firstString, String secondString) {
+		int firstHash = firstString.hashCode();
+		int secondHash = secondString.hashCode();
+		if (firstHash != secondHash) {
+			return firstHash > secondHash;
+		}
+		return firstString.compareTo(secondString) > 0;
+	}
+	
+	private static int spread(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+	
+	/***
+	 * A cached pair and its answer, linked into one of its segment's three LRU queues.
+	 * A node with no answer is only used to look a pair up.
+	 *
+	 */
+	private static final class Node {
+		static final int WINDOW = 0;
+		static final int PROBATION = 1;
+		static final int PROTECTED = 2;
+		
+		final String first;
+		final String second;
+		final int hash;
+		final boolean result;
+		final long weight;
+		
+		int queue;
+		Node previous;
+		Node next;
+		
+		Node(String first, String second, int hash, boolean result) {
+			this.first = first;
+			this.second = second;
+			this.hash = hash;
+			this.result = result;
+			this.weight = ENTRY_OVERHEAD_BYTES + 2L * (first.length() + second.length());
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Node)) {
+				return false;
+			}
+			Node node = (Node) other;
+			return hash == node.hash && first.equals(node.first) && second.equals(node.second);
+		}
+	}
+	
+	/***
+	 * A doubly linked LRU queue of nodes, least recent at the head
+	 *
+	 */
+	private static final class Queue {
+		Node head;
+		Node tail;
+		long bytes;
+		
+		void addLast(Node node) {
+			node.previous = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			}
+			else {
+				tail.next = node;
+			}
+			tail = node;
+			bytes += node.weight;
+		}
+		
+		void remove(Node node) {
+			if (node.previous == null) {
+				head = node.next;
+			}
+			else {
+				node.previous.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.previous;
+			}
+			else {
+				node.next.previous = node.previous;
+			}
+			node.previous = null;
+			node.next = null;
+			bytes -= node.weight;
+		}
+	}
+	
+	/***
+	 * One lock stripe: a window LRU, a segmented LRU main area, and a frequency sketch, under one lock
+	 *
+	 */
+	private static final class Segment {
+		private final HashMap<Node, Node> nodes = new HashMap<Node, Node>();
+		private final Queue window = new Queue();
+		private final Queue probation = new Queue();
+		private final Queue protectedQueue = new Queue();
+		private final FrequencySketch sketch;
+		private final long maxBytes;
+		private final long maxWindowBytes;
+		private final long maxProtectedBytes;
+		
+		Segment(long maxBytes) {
+			this.maxBytes = maxBytes;
+			this.maxWindowBytes = maxBytes * WINDOW_PERCENT / 100;
+			this.maxProtectedBytes = (maxBytes - maxWindowBytes) * PROTECTED_PERCENT / 100;
+			this.sketch = new FrequencySketch(maxBytes / ENTRY_OVERHEAD_BYTES);
+		}
+		
+		/***
+		 * Look a pair up, counting the request in the sketch either way
+		 * @return the cached answer, or null on a miss
+		 */
+		synchronized Boolean get(String first, String second, int hash) {
+			sketch.increment(hash);
+			Node node = nodes.get(new Node(first, second, hash, false));
+			if (node == null) {
+				return null;
+			}
+			onHit(node);
+			return node.result;
+		}
+		
+		/***
+		 * Add a computed answer, then evict down to the budget
+		 * @return the number of entries evicted
+		 */
+		synchronized int put(Node node) {
+			if (node.weight > maxBytes || nodes.containsKey(node)) {
+				// too big to ever fit, or another thread cached it while we computed
+				return 0;
+			}
+			nodes.put(node, node);
+			node.queue = Node.WINDOW;
+			window.addLast(node);
+			
+			// pairs leaving the window become candidates for the main area's probation queue
+			int evicted = 0;
+			while (window.bytes > maxWindowBytes) {
+				Node candidate = window.head;
+				window.remove(candidate);
+				candidate.queue = Node.PROBATION;
+				probation.addLast(candidate);
+				evicted += evictFromMain(candidate);
+			}
+			return evicted;
+		}
+		
+		synchronized long weightedSize() {
+			return window.bytes + probation.bytes + protectedQueue.bytes;
+		}
+		
+		private void onHit(Node node) {
+			if (node.queue == Node.WINDOW) {
+				window.remove(node);
+				window.addLast(node);
+			}
+			else if (node.queue == Node.PROBATION) {
+				// a second hit in the main area protects the pair
+				probation.remove(node);
+				node.queue = Node.PROTECTED;
+				protectedQueue.addLast(node);
+				while (protectedQueue.bytes > maxProtectedBytes) {
+					Node demoted = protectedQueue.head;
+					protectedQueue.remove(demoted);
+					demoted.queue = Node.PROBATION;
+					probation.addLast(demoted);
+				}
+			}
+			else {
+				protectedQueue.remove(node);
+				protectedQueue.addLast(node);
+			}
+		}
+		
+		/***
+		 * While the main area is over budget, the candidate from the window and the least recent probation
+		 * pair compete on frequency, and the loser is evicted. A tie goes to the pair already cached.
+		 * @return the number of entries evicted
+		 */
+		private int evictFromMain(Node candidate) {
+			int evicted = 0;
+			while (probation.bytes + protectedQueue.bytes > maxBytes - maxWindowBytes) {
+				Node victim = probation.head != null ? probation.head : protectedQueue.head;
+				if (candidate != null && (victim == candidate || sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash))) {
+					// the candidate lost, anything still over budget goes in LRU order
+					victim = candidate;
+					candidate = null;
+				}
+				evict(victim);
+				evicted++;
+			}
+			return evicted;
+		}
+		
+		private void evict(Node node) {
+			if (node.queue == Node.PROTECTED) {
+				protectedQueue.remove(node);
+			}
+			else if (node.queue == Node.PROBATION) {
+				probation.remove(node);
+			}
+			else {
+				window.remove(node);
+			}
+			nodes.remove(node);
+		}
+	}
+	
+	/***
+	 * A count-min sketch of how often each key hash has been asked for, with four-bit counters.
+	 * Each long holds sixteen counters, and a key's four counters sit at different places in the table.
+	 * When enough requests have been counted every counter is halved, so old popularity fades.
+	 *
+	 */
+	static final class FrequencySketch {
+		private static final long[] SEEDS = { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+		private static final long RESET_MASK = 0x7777777777777777L;
+		
+		private final long[] table;
+		private final int tableMask;
+		private final int sampleSize;
+		private int size;
+		
+		/***
+		 * @param expectedKeys: about how many distinct keys the cache can hold
+		 */
+		FrequencySketch(long expectedKeys) {
+			int length = Integer.highestOneBit((int) Math.max(16, Math.min(expectedKeys, 1 << 24)) * 2 - 1);
+			table = new long[length];
+			tableMask = length - 1;
+			sampleSize = 10 * length;
+		}
+		
+		/***
+		 * @return the estimated number of requests for the key, at most 15
+		 */
+		int frequency(int hash) {
+			int frequency = 15;
+			for (int i = 0; i < SEEDS.length; i++) {
+				long spread = spread(hash, i);
+				int shift = counterShift(spread);
+				frequency = Math.min(frequency, (int) ((table[index(spread)] >>> shift) & 15));
+			}
+			return frequency;
+		}
+		
+		/***
+		 * Count a request for the key, halving every counter once a sample's worth have been counted
+		 */
+		void increment(int hash) {
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				long spread = spread(hash, i);
+				int index = index(spread);
+				int shift = counterShift(spread);
+				if (((table[index] >>> shift) & 15) != 15) {
+					table[index] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++size == sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & RESET_MASK;
+				}
+				size /= 2;
+			}
+		}
+		
+		private static long spread(int hash, int row) {
+			long spread = (hash + SEEDS[row]) * SEEDS[row];
+			return spread ^ (spread >>> 29);
+		}
+		
+		private int index(long spread) {
+			return (int) spread & tableMask;
+		}
+		
+		/***
+		 * @return the bit offset of a counter within its long
+		 */
+		private static int counterShift(long spread) {
+			return (int) (spread >>> 60) << 2;
+		}
+	}
+	
+	public static void main(String[] args) throws InterruptedException, JMException {
+		OneAwayChecker oneAwayChecker = new OneAwayChecker();
+		StringRotationChecker rotationChecker = new StringRotationChecker();
+		PermutationChecker permutationChecker = new PermutationChecker();
+		
+		// test 1: cached answers match the checkers, in either order, over a skewed workload
+		Random random = new Random(23);
+		String[] words = new String[2000];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = randomWord(random);
+		}
+		CheckerCache oneAwayCache = oneAway(oneAwayChecker, 1 << 20);
+		CheckerCache rotationCache = rotation(rotationChecker, 1 << 20);
+		CheckerCache permutationCache = permutation(permutationChecker, 1 << 20);
+		int disagreements = 0;
+		for (int i = 0; i < 200000; i++) {
+			// a few pairs are asked for most of the time
+			int pair = random.nextInt(100) < 60 ? random.nextInt(50) : random.nextInt(words.length);
+			String first = words[pair];
+			String second = related(random, words[(pair * 7 + 1) % words.length], first);
+			if (random.nextBoolean()) {
+				String swap = first;
+				first = second;
+				second = swap;
+			}
+			disagreements += oneAwayCache.check(first, second) != oneAwayChecker.isOneAway(first, second) ? 1 : 0;
+			disagreements += rotationCache.check(first, second) != rotationChecker.isRotation(first, second) ? 1 : 0;
+			disagreements += permutationCache.check(first, second) != permutationChecker.stringIsPermutationOfAnotherOptimized(first, second) ? 1 : 0;
+		}
+		System.out.println("Test 1: cached answers should match the checkers. Result: " + (disagreements == 0 ? "test passed" : "test failed"));
+		
+		// test 2: either order of a symmetric pair shares an entry
+		CheckerCache symmetricCache = oneAway(oneAwayChecker, 1 << 20);
+		symmetricCache.check("pale", "bale");
+		boolean sharedPassed = symmetricCache.check("bale", "pale") && symmetricCache.getHitCount() == 1 && symmetricCache.getMissCount() == 1;
+		System.out.println("Test 2: a swapped pair should hit the same entry. Result: " + (sharedPassed ? "test passed" : "test failed"));
+		
+		// test 3: the budget holds
+		boolean boundedPassed = oneAwayCache.getWeightedSize() <= oneAwayCache.getMaximumWeight() && oneAwayCache.getEvictionCount() > 0
+				&& oneAwayCache.getHitRate() > 0.5;
+		System.out.println("Test 3: the cache should stay within its budget and serve the hot pairs. Result: " + (boundedPassed ? "test passed" : "test failed"));
+		
+		// test 4: a scan of one-off pairs doesn't flush frequently asked pairs
+		CheckerCache scanCache = oneAway(oneAwayChecker, 64 * 1024);
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < 50; i++) {
+				scanCache.check(words[i], words[i + 1]);
+			}
+		}
+		for (int i = 0; i < 20000; i++) {
+			scanCache.check(randomWord(random), randomWord(random));
+		}
+		long hitsBefore = scanCache.getHitCount();
+		for (int i = 0; i < 50; i++) {
+			scanCache.check(words[i], words[i + 1]);
+		}
+		boolean scanPassed = scanCache.getHitCount() - hitsBefore >= 45;
+		System.out.println("Test 4: hot pairs should survive a scan of one-off pairs. Result: " + (scanPassed ? "test passed" : "test failed"));
+		
+		// test 5: null and oversized pairs are answered but not cached
+		CheckerCache smallCache = oneAway(oneAwayChecker, 1024);
+		char[] longChars = new char[4096];
+		Arrays.fill(longChars, 'a');
+		String longString = new String(longChars);
+		boolean uncachedPassed = smallCache.check(null, null) && smallCache.check(longString, longString + "b")
+				&& smallCache.getWeightedSize() == 0 && smallCache.getMissCount() == 1;
+		System.out.println("Test 5: null and oversized pairs should be answered without caching. Result: " + (uncachedPassed ? "test passed" : "test failed"));
+		
+		// test 6: threads sharing a cache all get the checker's answers
+		CheckerCache sharedCache = permutation(permutationChecker, 256 * 1024);
+		int[] threadDisagreements = new int[4];
+		Thread[] threads = new Thread[threadDisagreements.length];
+		for (int t = 0; t < threads.length; t++) {
+			int index = t;
+			threads[t] = new Thread(() -> {
+				Random threadRandom = new Random(index);
+				for (int i = 0; i < 50000; i++) {
+					String first = words[threadRandom.nextInt(200)];
+					String second = related(threadRandom, words[threadRandom.nextInt(200)], first);
+					if (sharedCache.check(first, second) != permutationChecker.stringIsPermutationOfAnotherOptimized(first, second)) {
+						threadDisagreements[index]++;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		int totalDisagreements = 0;
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			totalDisagreements += threadDisagreements[t];
+		}
+		System.out.println("Test 6: concurrent checks should match the checker. Result: " + (totalDisagreements == 0 ? "test passed" : "test failed"));
+		
+		// test 7: the hit rate is visible through JMX
+		symmetricCache.register("test");
+		Object hitRate = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName("com.machineghost.examples:type=CheckerCache,name=test"), "HitRate");
+		System.out.println("Test 7: the hit rate should be exported through JMX. Result: " + (Double.valueOf(0.5).equals(hitRate) ? "test passed" : "test failed"));
+	}
+	
+	private static String randomWord(Random random) {
+		char[] chars = new char[4 + random.nextInt(12)];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) ('a' + random.nextInt(4));
+		}
+		return new String(chars);
+	}
+	
+	/***
+	 * Pick a second string for a pair: a rotation, a shuffle, a one-char edit or an unrelated word
+	 */
+	private static String related(Random random, String unrelated, String string) {
+		int offset = random.nextInt(string.length());
+		switch (random.nextInt(4)) {
+			case 0:
+				return string.substring(offset) + string.substring(0, offset);
+			case 1:
+				char[] chars = string.toCharArray();
+				for (int i = chars.length - 1; i > 0; i--) {
+					int j = random.nextInt(i + 1);
+					char swap = chars[i];
+					chars[i] = chars[j];
+					chars[j] = swap;
+				}
+				return new String(chars);
+			case 2:
+				return string.substring(0, offset) + 'z' + string.substring(offset + 1);
+			default:
+				return unrelated;
+		}
+	}
+}
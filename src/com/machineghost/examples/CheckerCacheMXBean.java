@@ -0,0 +1,19 @@
+package com.machineghost.examples;
+
+/***
+ * A CheckerCache's statistics as seen through JMX, under com.machineghost.examples:type=CheckerCache,name=[name]
+ *
+ */
+public interface CheckerCacheMXBean {
+	long getHitCount();
+	
+	long getMissCount();
+	
+	double getHitRate();
+	
+	long getEvictionCount();
+	
+	long getWeightedSize();
+	
+	long getMaximumWeight();
+}
@@ -0,0 +1,109 @@
+package com.machineghost.examples;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/***
+ * Measure how throughput scales when one shared checker instance serves many threads.
+ * Every thread also verifies each answer, so a data race on shared state would show up as mismatches.
+ * Usage: CheckerContentionBenchmark [seconds per thread count]
+ *
+ */
+public class CheckerContentionBenchmark {
+	
+	private static final UniqueCharsChecker UNIQUE_CHARS_CHECKER = new UniqueCharsChecker();
+	private static final PermutationChecker PERMUTATION_CHECKER = new PermutationChecker();
+	
+	// inputs with a mix of true and false answers, so a racing result field would be caught
+	private static final String[] UNIQUE_INPUTS = { "abc123def456.!p", "abc123abc", "qwertyuiop", "abc123dd" };
+	private static final boolean[] UNIQUE_EXPECTED = { true, false, true, false };
+	private static final String[][] PERMUTATION_INPUTS = { { "dog12", "g1o2d" }, { "dog", "cat" }, { "listen", "silent" }, { "dog", "d og" } };
+	private static final boolean[] PERMUTATION_EXPECTED = { true, false, true, false };
+	
+	/***
+	 * Run the checkers on a number of threads that share the checker instances
+	 * @param threadCount: the number of threads to run
+	 * @param durationMillis: how long to run for
+	 * @return the total number of checks and the number of wrong answers
+	 */
+	static long[] run(int threadCount, long durationMillis) throws InterruptedException {
+		final long[][] results = new long[threadCount][2];
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final long[] result = results[t];
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				
+				long operations = 0;
+				long mismatches = 0;
+				int i = 0;
+				while (running.get()) {
+					int input = i++ & 3;
+					if (UNIQUE_CHARS_CHECKER.charsAreAllUniqueBitsetApproach(UNIQUE_INPUTS[input]) != UNIQUE_EXPECTED[input]) {
+						mismatches++;
+					}
+					if (PERMUTATION_CHECKER.stringIsPermutationOfAnotherOptimized(PERMUTATION_INPUTS[input][0],
+							PERMUTATION_INPUTS[input][1]) != PERMUTATION_EXPECTED[input]) {
+						mismatches++;
+					}
+					operations += 2;
+				}
+				result[0] = operations;
+				result[1] = mismatches;
+			});
+			threads[t].start();
+		}
+		
+		start.countDown();
+		Thread.sleep(durationMillis);
+		running.set(false);
+		
+		long operations = 0;
+		long mismatches = 0;
+		for (int t = 0; t < threadCount; t++) {
+			threads[t].join();
+			operations += results[t][0];
+			mismatches += results[t][1];
+		}
+		return new long[] { operations, mismatches };
+	}
+	
+	/***
+	 * Double the thread count, but still measure the core count when it isn't a power of two
+	 * @param threadCount: the current thread count
+	 * @param cores: the number of available cores
+	 * @return the next thread count to measure
+	 */
+	static int nextThreadCount(int threadCount, int cores) {
+		if (threadCount < cores && threadCount * 2 > cores) {
+			return cores;
+		}
+		return threadCount * 2;
+	}
+	
+	public static void main(String[] args) throws InterruptedException {
+		long durationMillis = (args.length > 0 ? Long.parseLong(args[0]) : 2) * 1000;
+		int cores = Runtime.getRuntime().availableProcessors();
+		
+		// warm up so the first thread count isn't measured in the interpreter
+		run(1, durationMillis);
+		
+		double baseline = 0;
+		System.out.println("threads\tops/s\t\tscaling\tmismatches");
+		for (int threadCount = 1; threadCount <= cores; threadCount = nextThreadCount(threadCount, cores)) {
+			long[] result = run(threadCount, durationMillis);
+			double opsPerSecond = result[0] * 1000.0 / durationMillis;
+			if (threadCount == 1) {
+				baseline = opsPerSecond;
+			}
+			System.out.println(String.format("%d\t%.0f\t%.2fx\t%d", threadCount, opsPerSecond, opsPerSecond / baseline, result[1]));
+		}
+	}
+}
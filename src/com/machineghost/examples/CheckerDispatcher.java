@@ -0,0 +1,630 @@
+package com.machineghost.examples;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * Pick the fastest variant of a check for each call, from the input's length and alphabet.
+ * Each operation keeps a cost estimate per alphabet, length bucket and variant. The estimates start from a
+ * micro-benchmark run when the dispatcher is built, and one call in SAMPLE_RATE also times a second variant
+ * on the same input, so the estimates follow the real traffic and the crossover lengths move with them.
+ * Every routed call is counted by its traffic class, the alphabet and length bucket, and routingReport
+ * shows where the crossovers are and which variant each class has been taking.
+ * The startup benchmark warms every variant up and lets the JIT finish before it times anything, and takes
+ * well under a second, so build one dispatcher and share it; routing reads never lock.
+ *
+ * Variants are only swapped where they give the same answer. The naive and sorted variants compare chars,
+ * while the bitset and counting ones compare code points, so input holding surrogates always goes to the
+ * code point variant. The dispatcher's answers are always those of charsAreAllUniqueBitsetApproach and
+ * stringIsPermutationOfAnotherOptimized.
+ *
+ */
+public final class CheckerDispatcher {
+	
+	// one call in this many also times an alternative variant, a power of two
+	static final int SAMPLE_RATE = 1024;
+	
+	// lengths are bucketed by bit length: bucket b holds lengths from 2^(b-1) to 2^b - 1
+	static final int BUCKETS = 32;
+	
+	// buckets above this are never calibrated and go to the code point variant, which is O(n)
+	static final int MAX_CALIBRATED_BUCKET = 12;
+	
+	// how long the startup benchmark times each variant in each cell
+	private static final long CALIBRATION_CELL_NANOS = 200000;
+	
+	// chars each variant checks per cell before any timing, enough for the JIT to compile it with a profile of
+	// every length, so neither cold code nor a deoptimization is what gets timed
+	private static final int WARM_UP_CHARS = 16384;
+	
+	// how long to wait for the JIT to finish compiling before timing
+	private static final long MAX_COMPILE_WAIT_MILLIS = 250;
+	
+	// an alternative is only sampled if it isn't estimated to be much slower than the chosen variant
+	private static final double MAX_SAMPLED_SLOWDOWN = 4;
+	
+	// a route only moves to a variant estimated at least this much faster, so close variants don't flap
+	private static final double SWITCH_MARGIN = 1.1;
+	
+	/***
+	 * The alphabet classes input is routed by
+	 *
+	 */
+	enum Alphabet {
+		// every char is at most 0xFF
+		LATIN1,
+		// no surrogates
+		BMP,
+		// surrogates, routed to the code point variant without looking at the estimates
+		SUPPLEMENTARY,
+		// not looked at, because every alphabet takes the same variant at this length
+		UNCLASSIFIED
+	}
+	
+	/***
+	 * The variants of one check, ordered as in the routing tables
+	 *
+	 */
+	enum Variant {
+		NAIVE, SORTED, BITSET, COUNTING
+	}
+	
+	private final Operation unique;
+	private final Operation permutation;
+	
+	/***
+	 * Build a dispatcher, timing every variant on generated input to set the starting crossovers
+	 */
+	public CheckerDispatcher() {
+		this(CALIBRATION_CELL_NANOS, SAMPLE_RATE);
+	}
+	
+	/***
+	 * @param calibrationCellNanos: how long to time each variant per alphabet and length, 0 for no calibration
+	 * @param sampleRate: one call in this many is sampled, a power of two
+	 */
+	CheckerDispatcher(long calibrationCellNanos, int sampleRate) {
+		UniqueCharsChecker uniqueChecker = new UniqueCharsChecker();
+		PermutationChecker permutationChecker = new PermutationChecker();
+		unique = new Operation("charsAreAllUnique", sampleRate,
+				new Variant[] { Variant.NAIVE, Variant.SORTED, Variant.BITSET },
+				new PairBatch.PairCheck[] {
+						(string, unused) -> uniqueChecker.charsAreAllUniqueNaiveApproach(string),
+						(string, unused) -> uniqueChecker.charsAreAllUniqueSortedApproach(string),
+						(string, unused) -> uniqueChecker.charsAreAllUniqueBitsetApproach(string) },
+				// naive is O(n2), so it isn't timed on long input
+				new int[] { 9, MAX_CALIBRATED_BUCKET, MAX_CALIBRATED_BUCKET });
+		permutation = new Operation("isPermutation", sampleRate,
+				new Variant[] { Variant.SORTED, Variant.COUNTING },
+				new PairBatch.PairCheck[] {
+						permutationChecker::stringIsPermutationOfAnother,
+						permutationChecker::stringIsPermutationOfAnotherOptimized },
+				new int[] { MAX_CALIBRATED_BUCKET, MAX_CALIBRATED_BUCKET });
+		if (calibrationCellNanos > 0) {
+			calibrate(calibrationCellNanos);
+		}
+	}
+	
+	/***
+	 * Check if a string is composed of all unique characters, with the variant fastest for it
+	 * @param stringToCheck: the string to check for uniqueness
+	 * @return true if all code points are unique, as charsAreAllUniqueBitsetApproach decides
+	 */
+	public boolean charsAreAllUnique(String stringToCheck) {
+		if (stringToCheck == null) {
+			return unique.run(unique.codePointVariant(), stringToCheck, null);
+		}
+		return unique.dispatch(stringToCheck, null, stringToCheck.length());
+	}
+	
+	/***
+	 * Decide if one string is a permutation of the other, with the variant fastest for them
+	 * @param firstString: the first string to compare
+	 * @param secondString: the second string to compare
+	 * @return true if the strings are permutations of each other, as stringIsPermutationOfAnotherOptimized decides
+	 */
+	public boolean isPermutation(String firstString, String secondString) {
+		if (firstString == null || secondString == null || firstString.length() != secondString.length()) {
+			// every variant answers these at once
+			return permutation.run(permutation.codePointVariant(), firstString, secondString);
+		}
+		return permutation.dispatch(firstString, secondString, firstString.length());
+	}
+	
+	/***
+	 * Describe the current crossovers and the calls each traffic class has made to each variant
+	 * @return one line per crossover table and per traffic class with calls
+	 */
+	public String routingReport() {
+		StringBuilder report = new StringBuilder();
+		unique.report(report);
+		permutation.report(report);
+		return report.toString();
+	}
+	
+	/***
+	 * @return the number of calls routed to a variant for a traffic class
+	 */
+	long routedCalls(boolean permutationCheck, Alphabet alphabet, int bucket, Variant variant) {
+		Operation operation = permutationCheck ? permutation : unique;
+		return operation.counts[alphabet.ordinal()][bucket][operation.indexOf(variant)].sum();
+	}
+	
+	/***
+	 * Replace a cost estimate, so tests can start from a wrong crossover
+	 */
+	void setEstimate(boolean permutationCheck, Alphabet alphabet, int bucket, Variant variant, double nanos) {
+		Operation operation = permutationCheck ? permutation : unique;
+		operation.update(alphabet.ordinal(), bucket, operation.indexOf(variant), nanos, true);
+	}
+	
+	/***
+	 * @return the variant a traffic class is routed to
+	 */
+	Variant route(boolean permutationCheck, Alphabet alphabet, int bucket) {
+		Operation operation = permutationCheck ? permutation : unique;
+		return operation.variants[operation.routes[alphabet.ordinal()][bucket]];
+	}
+	
+	/***
+	 * @return the length bucket of a length
+	 */
+	static int bucket(int length) {
+		return 32 - Integer.numberOfLeadingZeros(length);
+	}
+	
+	/***
+	 * Classify a string by the chars in it, stopping at the first surrogate
+	 * @param string: the string to classify
+	 * @return LATIN1, BMP or SUPPLEMENTARY
+	 */
+	static Alphabet alphabet(String string) {
+		int bits = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (Character.isSurrogate(c)) {
+				return Alphabet.SUPPLEMENTARY;
+			}
+			bits |= c;
+		}
+		return bits <= 0xFF ? Alphabet.LATIN1 : Alphabet.BMP;
+	}
+	
+	private static Alphabet widest(Alphabet first, Alphabet second) {
+		return first.ordinal() >= second.ordinal() ? first : second;
+	}
+	
+	/***
+	 * Time every variant on generated input of each alphabet and calibrated length, to set the starting estimates
+	 * @param cellNanos: how long to time each variant per alphabet and length
+	 */
+	private void calibrate(long cellNanos) {
+		Random random = new Random(24);
+		Alphabet[] alphabets = { Alphabet.LATIN1, Alphabet.BMP };
+		String[][][] uniqueInputs = new String[alphabets.length][MAX_CALIBRATED_BUCKET + 1][];
+		String[][][] firstInputs = new String[alphabets.length][MAX_CALIBRATED_BUCKET + 1][];
+		String[][][] secondInputs = new String[alphabets.length][MAX_CALIBRATED_BUCKET + 1][];
+		for (int alphabet = 0; alphabet < alphabets.length; alphabet++) {
+			for (int bucket = 1; bucket <= MAX_CALIBRATED_BUCKET; bucket++) {
+				int length = calibrationLength(bucket);
+				uniqueInputs[alphabet][bucket] = new String[calibrationInputs(bucket)];
+				firstInputs[alphabet][bucket] = new String[calibrationInputs(bucket)];
+				secondInputs[alphabet][bucket] = new String[calibrationInputs(bucket)];
+				for (int i = 0; i < calibrationInputs(bucket); i++) {
+					// half of the strings are unique where the alphabet allows it, the rest are drawn at random
+					uniqueInputs[alphabet][bucket][i] = calibrationString(random, alphabets[alphabet], length, i % 2 == 0);
+					
+					// half of the pairs are shuffles, the rest differ in one char
+					char[] chars = calibrationString(random, alphabets[alphabet], length, false).toCharArray();
+					firstInputs[alphabet][bucket][i] = new String(chars);
+					for (int j = chars.length - 1; j > 0; j--) {
+						int k = random.nextInt(j + 1);
+						char swap = chars[j];
+						chars[j] = chars[k];
+						chars[k] = swap;
+					}
+					if (i % 2 == 1) {
+						chars[random.nextInt(chars.length)] ^= 1;
+					}
+					secondInputs[alphabet][bucket][i] = new String(chars);
+				}
+			}
+		}
+		
+		// every variant sees every length and both answers before anything is timed
+		for (int alphabet = 0; alphabet < alphabets.length; alphabet++) {
+			for (int bucket = 1; bucket <= MAX_CALIBRATED_BUCKET; bucket++) {
+				unique.warmUp(bucket, uniqueInputs[alphabet][bucket], null);
+				permutation.warmUp(bucket, firstInputs[alphabet][bucket], secondInputs[alphabet][bucket]);
+			}
+		}
+		awaitCompilation();
+		
+		for (int alphabet = 0; alphabet < alphabets.length; alphabet++) {
+			for (int bucket = 1; bucket <= MAX_CALIBRATED_BUCKET; bucket++) {
+				unique.calibrate(alphabets[alphabet], bucket, uniqueInputs[alphabet][bucket], null, cellNanos);
+				permutation.calibrate(alphabets[alphabet], bucket, firstInputs[alphabet][bucket], secondInputs[alphabet][bucket], cellNanos);
+			}
+		}
+	}
+	
+	/***
+	 * @return the milliseconds the JIT has spent compiling, or 0 if the JVM doesn't say
+	 */
+	private static long compilationMillis() {
+		CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+		if (compiler == null || !compiler.isCompilationTimeMonitoringSupported()) {
+			return 0;
+		}
+		return compiler.getTotalCompilationTime();
+	}
+	
+	/***
+	 * Wait until the JIT stops compiling, since on a machine with few cores it takes time from whatever is timed
+	 */
+	private static void awaitCompilation() {
+		long deadline = System.nanoTime() + MAX_COMPILE_WAIT_MILLIS * 1000000;
+		long compiled = compilationMillis();
+		while (System.nanoTime() < deadline) {
+			try {
+				Thread.sleep(10);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			long nowCompiled = compilationMillis();
+			if (nowCompiled == compiled) {
+				return;
+			}
+			compiled = nowCompiled;
+		}
+	}
+	
+	/***
+	 * @return a length in the middle of a bucket
+	 */
+	private static int calibrationLength(int bucket) {
+		return bucket < 2 ? bucket : 3 << (bucket - 2);
+	}
+	
+	/***
+	 * @return how many inputs to time a bucket on, fewer for long ones so a cell stays short
+	 */
+	private static int calibrationInputs(int bucket) {
+		return bucket < 8 ? 8 : 2;
+	}
+	
+	private static String calibrationString(Random random, Alphabet alphabet, int length, boolean distinct) {
+		int first = alphabet == Alphabet.LATIN1 ? 0x20 : 0x100;
+		int size = alphabet == Alphabet.LATIN1 ? 0xE0 : 0xD700;
+		char[] chars = new char[length];
+		int start = random.nextInt(size);
+		for (int i = 0; i < length; i++) {
+			// consecutive chars are distinct until the alphabet wraps around
+			chars[i] = (char) (first + (distinct ? (start + i) % size : random.nextInt(size)));
+		}
+		return new String(chars);
+	}
+	
+	/***
+	 * The variants, cost estimates, routing table and traffic counts of one check
+	 *
+	 */
+	private static final class Operation {
+		final String name;
+		final int sampleMask;
+		final Variant[] variants;
+		final PairBatch.PairCheck[] checks;
+		final int[] maxBuckets;
+		
+		// estimated nanoseconds per call, NaN where a variant hasn't been timed, guarded by this
+		final double[][][] estimates = new double[2][BUCKETS][];
+		
+		// the variant index for each alphabet and bucket, replaced whole when a route changes
+		volatile byte[][] routes;
+		
+		// calls per alphabet class, bucket and variant
+		final LongAdder[][][] counts = new LongAdder[Alphabet.values().length][BUCKETS][];
+		
+		Operation(String name, int sampleRate, Variant[] variants, PairBatch.PairCheck[] checks, int[] maxBuckets) {
+			this.name = name;
+			this.sampleMask = sampleRate - 1;
+			this.variants = variants;
+			this.checks = checks;
+			this.maxBuckets = maxBuckets;
+			byte[][] initialRoutes = new byte[Alphabet.values().length][BUCKETS];
+			for (int alphabet = 0; alphabet < initialRoutes.length; alphabet++) {
+				Arrays.fill(initialRoutes[alphabet], (byte) codePointVariant());
+			}
+			routes = initialRoutes;
+			for (int alphabet = 0; alphabet < 2; alphabet++) {
+				for (int bucket = 0; bucket < BUCKETS; bucket++) {
+					estimates[alphabet][bucket] = new double[variants.length];
+					Arrays.fill(estimates[alphabet][bucket], Double.NaN);
+				}
+			}
+			for (int alphabet = 0; alphabet < counts.length; alphabet++) {
+				for (int bucket = 0; bucket < BUCKETS; bucket++) {
+					counts[alphabet][bucket] = new LongAdder[variants.length];
+					for (int variant = 0; variant < variants.length; variant++) {
+						counts[alphabet][bucket][variant] = new LongAdder();
+					}
+				}
+			}
+		}
+		
+		/***
+		 * @return the index of the variant that counts code points, the last one
+		 */
+		int codePointVariant() {
+			return variants.length - 1;
+		}
+		
+		int indexOf(Variant variant) {
+			for (int i = 0; i < variants.length; i++) {
+				if (variants[i] == variant) {
+					return i;
+				}
+			}
+			throw new IllegalArgumentException(name + " has no " + variant + " variant");
+		}
+		
+		boolean run(int variant, String first, String second) {
+			return checks[variant].check(first, second);
+		}
+		
+		/***
+		 * Route a call, count it, and sometimes time it against an alternative
+		 */
+		boolean dispatch(String first, String second, int length) {
+			int bucket = Math.min(bucket(length), BUCKETS - 1);
+			byte[][] currentRoutes = routes;
+			
+			// only look at the alphabet if it could change the route
+			Alphabet alphabet = Alphabet.UNCLASSIFIED;
+			int variant = codePointVariant();
+			if (currentRoutes[Alphabet.LATIN1.ordinal()][bucket] != variant || currentRoutes[Alphabet.BMP.ordinal()][bucket] != variant) {
+				alphabet = second == null ? alphabet(first) : widest(alphabet(first), alphabet(second));
+				variant = currentRoutes[alphabet.ordinal()][bucket];
+			}
+			
+			if ((ThreadLocalRandom.current().nextInt() & sampleMask) == 0) {
+				return sample(first, second, bucket, alphabet, variant);
+			}
+			counts[alphabet.ordinal()][bucket][variant].increment();
+			return run(variant, first, second);
+		}
+		
+		/***
+		 * Time the routed variant and one alternative on the same input, and fold both into the estimates
+		 */
+		private boolean sample(String first, String second, int bucket, Alphabet alphabet, int variant) {
+			if (alphabet == Alphabet.UNCLASSIFIED) {
+				alphabet = second == null ? alphabet(first) : widest(alphabet(first), alphabet(second));
+			}
+			counts[alphabet.ordinal()][bucket][variant].increment();
+			if (alphabet == Alphabet.SUPPLEMENTARY || bucket > MAX_CALIBRATED_BUCKET) {
+				return run(variant, first, second);
+			}
+			
+			long start = System.nanoTime();
+			boolean result = run(variant, first, second);
+			long routedNanos = System.nanoTime() - start;
+			
+			int alternative = (variant + 1 + ThreadLocalRandom.current().nextInt(variants.length - 1)) % variants.length;
+			double alternativeEstimate;
+			synchronized (this) {
+				alternativeEstimate = estimates[alphabet.ordinal()][bucket][alternative];
+			}
+			long alternativeNanos = -1;
+			if (bucket <= maxBuckets[alternative] && !(alternativeEstimate > MAX_SAMPLED_SLOWDOWN * Math.max(routedNanos, 1))) {
+				start = System.nanoTime();
+				run(alternative, first, second);
+				alternativeNanos = System.nanoTime() - start;
+			}
+			
+			update(alphabet.ordinal(), bucket, variant, routedNanos, false);
+			if (alternativeNanos >= 0) {
+				update(alphabet.ordinal(), bucket, alternative, alternativeNanos, false);
+			}
+			return result;
+		}
+		
+		/***
+		 * Run every variant that is calibrated for a bucket on its calibration input, untimed
+		 */
+		void warmUp(int bucket, String[] firstInputs, String[] secondInputs) {
+			int calls = Math.max(firstInputs.length, WARM_UP_CHARS / firstInputs[0].length());
+			for (int variant = 0; variant < variants.length; variant++) {
+				if (bucket > maxBuckets[variant]) {
+					continue;
+				}
+				for (int call = 0; call < calls; call++) {
+					int i = call % firstInputs.length;
+					run(variant, firstInputs[i], secondInputs == null ? null : secondInputs[i]);
+				}
+			}
+		}
+		
+		/***
+		 * Time every variant on calibration input, replacing the estimates
+		 */
+		void calibrate(Alphabet alphabet, int bucket, String[] firstInputs, String[] secondInputs, long cellNanos) {
+			for (int variant = 0; variant < variants.length; variant++) {
+				if (bucket > maxBuckets[variant]) {
+					continue;
+				}
+				// the fastest of three rounds, so a round that was interrupted doesn't count, and rounds the JIT
+				// compiled during are run again, a few times at most
+				double nanosPerCall = Double.MAX_VALUE;
+				double compilingNanosPerCall = Double.MAX_VALUE;
+				for (int round = 0, cleanRounds = 0; cleanRounds < 3 && round < 12; round++) {
+					long compiled = compilationMillis();
+					long calls = 0;
+					long start = System.nanoTime();
+					long elapsed;
+					do {
+						for (int i = 0; i < firstInputs.length; i++) {
+							run(variant, firstInputs[i], secondInputs == null ? null : secondInputs[i]);
+						}
+						calls += firstInputs.length;
+						elapsed = System.nanoTime() - start;
+					} while (elapsed < cellNanos / 3);
+					if (compilationMillis() == compiled) {
+						nanosPerCall = Math.min(nanosPerCall, (double) elapsed / calls);
+						cleanRounds++;
+					}
+					else {
+						compilingNanosPerCall = Math.min(compilingNanosPerCall, (double) elapsed / calls);
+					}
+				}
+				update(alphabet.ordinal(), bucket, variant, nanosPerCall == Double.MAX_VALUE ? compilingNanosPerCall : nanosPerCall, true);
+			}
+		}
+		
+		/***
+		 * Fold a timing into an estimate, or replace it, and re-route the bucket if its fastest variant changed
+		 */
+		synchronized void update(int alphabet, int bucket, int variant, double nanos, boolean replace) {
+			double[] bucketEstimates = estimates[alphabet][bucket];
+			if (replace || Double.isNaN(bucketEstimates[variant])) {
+				bucketEstimates[variant] = nanos;
+			}
+			else {
+				bucketEstimates[variant] += (nanos - bucketEstimates[variant]) / 8;
+			}
+			
+			int fastest = codePointVariant();
+			for (int i = 0; i < bucketEstimates.length; i++) {
+				if (bucketEstimates[i] < bucketEstimates[fastest] || Double.isNaN(bucketEstimates[fastest])) {
+					fastest = Double.isNaN(bucketEstimates[i]) ? fastest : i;
+				}
+			}
+			int routed = routes[alphabet][bucket];
+			if (routed != fastest && !(bucketEstimates[fastest] * SWITCH_MARGIN >= bucketEstimates[routed])) {
+				byte[][] newRoutes = routes.clone();
+				newRoutes[alphabet] = newRoutes[alphabet].clone();
+				newRoutes[alphabet][bucket] = (byte) fastest;
+				routes = newRoutes;
+			}
+		}
+		
+		/***
+		 * Append the crossovers for each alphabet, then the calls of each traffic class
+		 */
+		void report(StringBuilder report) {
+			byte[][] currentRoutes = routes;
+			for (Alphabet alphabet : new Alphabet[] { Alphabet.LATIN1, Alphabet.BMP }) {
+				report.append(name).append(' ').append(alphabet).append(':');
+				int runStart = 0;
+				for (int bucket = 1; bucket <= BUCKETS; bucket++) {
+					if (bucket == BUCKETS || currentRoutes[alphabet.ordinal()][bucket] != currentRoutes[alphabet.ordinal()][runStart]) {
+						report.append(' ').append(variants[currentRoutes[alphabet.ordinal()][runStart]])
+								.append(runStart == 0 ? " from 0" : " from " + (1L << (runStart - 1)));
+						runStart = bucket;
+					}
+				}
+				report.append('\n');
+			}
+			
+			for (Alphabet alphabet : Alphabet.values()) {
+				for (int bucket = 0; bucket < BUCKETS; bucket++) {
+					StringBuilder line = new StringBuilder();
+					for (int variant = 0; variant < variants.length; variant++) {
+						long calls = counts[alphabet.ordinal()][bucket][variant].sum();
+						if (calls > 0) {
+							line.append(' ').append(variants[variant]).append('=').append(calls);
+						}
+					}
+					if (line.length() > 0) {
+						long low = bucket == 0 ? 0 : 1L << (bucket - 1);
+						long high = bucket == 0 ? 0 : (1L << bucket) - 1;
+						report.append(name).append(' ').append(alphabet).append(" length ").append(low).append('-').append(high)
+								.append(':').append(line).append('\n');
+					}
+				}
+			}
+		}
+	}
+	
+	public static void main(String[] args) {
+		long start = System.nanoTime();
+		CheckerDispatcher dispatcher = new CheckerDispatcher();
+		long calibrationMillis = (System.nanoTime() - start) / 1000000;
+		UniqueCharsChecker uniqueChecker = new UniqueCharsChecker();
+		PermutationChecker permutationChecker = new PermutationChecker();
+		
+		// test 1: answers match the code point variants over every alphabet and a spread of lengths
+		Random random = new Random(24);
+		int disagreements = 0;
+		for (int i = 0; i < 20000; i++) {
+			int length = 1 << random.nextInt(10);
+			length += random.nextInt(length);
+			char[] chars = new char[random.nextInt(4) == 0 ? Math.min(length, 40) : length];
+			int alphabet = random.nextInt(4);
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = (char) (alphabet == 0 ? 'a' + random.nextInt(26)
+						: alphabet == 1 ? 0x20 + random.nextInt(0xE0)
+						: alphabet == 2 ? 0x100 + random.nextInt(0xD700)
+						: 0xD800 + random.nextInt(0x800));
+			}
+			String first = new String(chars);
+			for (int j = chars.length - 1; j > 0; j--) {
+				int k = random.nextInt(j + 1);
+				char swap = chars[j];
+				chars[j] = chars[k];
+				chars[k] = swap;
+			}
+			if (chars.length > 0 && random.nextBoolean()) {
+				chars[0] ^= 1;
+			}
+			String second = new String(chars);
+			disagreements += dispatcher.charsAreAllUnique(first) != uniqueChecker.charsAreAllUniqueBitsetApproach(first) ? 1 : 0;
+			disagreements += dispatcher.isPermutation(first, second) != permutationChecker.stringIsPermutationOfAnotherOptimized(first, second) ? 1 : 0;
+		}
+		System.out.println("Test 1: dispatched answers should match the code point variants. Result: " + (disagreements == 0 ? "test passed" : "test failed"));
+		
+		// test 2: surrogates go to the code point variant even where the chars would be compared by another
+		CheckerDispatcher forced = new CheckerDispatcher(0, SAMPLE_RATE);
+		forced.setEstimate(false, Alphabet.BMP, bucket(4), Variant.NAIVE, 1);
+		forced.setEstimate(false, Alphabet.BMP, bucket(4), Variant.BITSET, 1000);
+		// two different astral code points, whose chars repeat a high surrogate
+		boolean astralUnique = forced.charsAreAllUnique("\uD83D\uDE00\uD83D\uDE01");
+		boolean surrogatesPassed = astralUnique && forced.routedCalls(false, Alphabet.SUPPLEMENTARY, bucket(4), Variant.BITSET) == 1
+				&& forced.charsAreAllUnique("\u4E2D\u6587ab") && forced.routedCalls(false, Alphabet.BMP, bucket(4), Variant.NAIVE) == 1;
+		System.out.println("Test 2: surrogates should be routed to the code point variant. Result: " + (surrogatesPassed ? "test passed" : "test failed"));
+		
+		// test 3: without a reason to look, the alphabet isn't classified
+		CheckerDispatcher uncalibrated = new CheckerDispatcher(0, SAMPLE_RATE);
+		uncalibrated.isPermutation("abcd", "dcba");
+		boolean unclassifiedPassed = uncalibrated.routedCalls(true, Alphabet.UNCLASSIFIED, bucket(4), Variant.COUNTING) == 1;
+		System.out.println("Test 3: input is only classified when the route depends on it. Result: " + (unclassifiedPassed ? "test passed" : "test failed"));
+		
+		// test 4: sampling moves a wrong crossover, here the O(n2) variant routed long distinct input
+		CheckerDispatcher refined = new CheckerDispatcher(0, 1);
+		int longBucket = bucket(384);
+		refined.setEstimate(false, Alphabet.BMP, longBucket, Variant.NAIVE, 1);
+		refined.setEstimate(false, Alphabet.BMP, longBucket, Variant.BITSET, 1000);
+		String longString = calibrationString(random, Alphabet.BMP, 384, true);
+		boolean routedNaive = refined.route(false, Alphabet.BMP, longBucket) == Variant.NAIVE;
+		for (int i = 0; i < 200; i++) {
+			refined.charsAreAllUnique(longString);
+		}
+		boolean refinedPassed = routedNaive && refined.route(false, Alphabet.BMP, longBucket) != Variant.NAIVE;
+		System.out.println("Test 4: sampled timings should move the route to the faster variant. Result: " + (refinedPassed ? "test passed" : "test failed"));
+		
+		// test 5: the report shows crossovers and traffic classes
+		String report = dispatcher.routingReport();
+		boolean reportPassed = report.contains("charsAreAllUnique LATIN1:") && report.contains("isPermutation BMP length");
+		System.out.println("Test 5: the routing report should list crossovers and traffic classes. Result: " + (reportPassed ? "test passed" : "test failed"));
+		if (args.length > 0) {
+			System.out.print(report);
+			System.out.println("calibrated in " + calibrationMillis + " ms");
+		}
+	}
+}
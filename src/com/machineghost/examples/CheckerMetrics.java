@@ -0,0 +1,345 @@
+package com.machineghost.examples;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/***
+ * Opt-in metrics for the checkers: call counts, early exits, and latency and input size histograms,
+ * exported as JFR events and, once register is called, through JMX. Turn them on with
+ * -Dcom.machineghost.examples.metrics=true.
+ * ENABLED is a static final constant, so when metrics are off the JIT folds every check of it away
+ * and the checkers run exactly as before. When on, counters are LongAdders, striped per thread under
+ * contention, and the histograms have fixed power-of-two buckets, so recording never allocates or locks.
+ * Every call is counted, but only one in SAMPLE_RATE is timed: a nanoTime call costs as much as checking
+ * a short string, so timing them all would double the cost of the cheapest checks.
+ *
+ */
+public final class CheckerMetrics {
+	
+	public static final boolean ENABLED = Boolean.getBoolean("com.machineghost.examples.metrics");
+	
+	// bucket i of a histogram counts values below 2^i (and at least 2^(i-1)), the last bucket takes the rest
+	static final int BUCKETS = 48;
+	
+	// one call in this many is timed, a power of two
+	static final int SAMPLE_RATE = 64;
+	
+	private static final List<Operation> operations = new ArrayList<Operation>();
+	
+	static final Operation IS_ONE_AWAY = operation("OneAwayChecker.isOneAway");
+	static final Operation REPLACEMENTS = operation("OneAwayChecker.replacements");
+	static final Operation IS_PERMUTATION = operation("PermutationChecker.stringIsPermutationOfAnother");
+	static final Operation IS_PERMUTATION_OPTIMIZED = operation("PermutationChecker.stringIsPermutationOfAnotherOptimized");
+	static final Operation ELIGIBLE_FOR_PERMUTATIONS = operation("PermutationChecker.eligibleForPermutations");
+	static final Operation IS_ROTATION = operation("StringRotationChecker.isRotation");
+	static final Operation CHARS_ARE_ALL_UNIQUE = operation("UniqueCharsChecker.charsAreAllUniqueBitsetApproach");
+	static final Operation TRANSFORM_MATRIX = operation("ZeroMatrixChecker.transformMatrix");
+	
+	private CheckerMetrics() { }
+	
+	/***
+	 * The metrics of one operation as seen through JMX, under
+	 * com.machineghost.examples:type=CheckerMetrics,name=[operation]
+	 *
+	 */
+	public interface OperationMXBean {
+		long getCalls();
+		
+		long getEarlyExits();
+		
+		long getLatencyP50Nanos();
+		
+		long getLatencyP99Nanos();
+		
+		long[] getLatencyHistogram();
+		
+		long[] getInputSizeHistogram();
+	}
+	
+	/***
+	 * The counters and histograms of one operation
+	 *
+	 */
+	static final class Operation implements OperationMXBean {
+		final String name;
+		// untimed operations count calls here, timed ones count them in the input size histogram
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder earlyExits = new LongAdder();
+		private final LongAdder[] latencyBuckets = newBuckets();
+		private final LongAdder[] inputSizeBuckets = newBuckets();
+		
+		Operation(String name) {
+			this.name = name;
+		}
+		
+		/***
+		 * Start timing a call, if it is one of the sampled ones
+		 * @return the start time to pass to record, or 0 if the call isn't timed
+		 */
+		long start() {
+			if ((ThreadLocalRandom.current().nextInt() & (SAMPLE_RATE - 1)) != 0) {
+				return 0;
+			}
+			long startNanos = System.nanoTime();
+			// 0 means untimed
+			return startNanos == 0 ? 1 : startNanos;
+		}
+		
+		/***
+		 * Record a call, and its latency and a JFR event if it was timed
+		 * @param startNanos: the time from start()
+		 * @param inputSize: the size of the input, in chars or elements
+		 * @param result: the call's answer
+		 */
+		void record(long startNanos, long inputSize, boolean result) {
+			inputSizeBuckets[bucket(inputSize)].increment();
+			if (startNanos == 0) {
+				return;
+			}
+			long elapsedNanos = System.nanoTime() - startNanos;
+			latencyBuckets[bucket(elapsedNanos)].increment();
+			
+			CheckEvent event = new CheckEvent();
+			if (event.shouldCommit()) {
+				event.operation = name;
+				event.inputSize = inputSize;
+				event.result = result;
+				event.elapsedNanos = elapsedNanos;
+				event.commit();
+			}
+		}
+		
+		/***
+		 * Count an untimed call
+		 * @param earlyExit: true if the call stopped before looking at its whole input
+		 */
+		void count(boolean earlyExit) {
+			calls.increment();
+			if (earlyExit) {
+				earlyExits.increment();
+			}
+		}
+		
+		@Override
+		public long getCalls() {
+			long sum = calls.sum();
+			for (LongAdder bucket : inputSizeBuckets) {
+				sum += bucket.sum();
+			}
+			return sum;
+		}
+		
+		@Override
+		public long getEarlyExits() {
+			return earlyExits.sum();
+		}
+		
+		@Override
+		public long getLatencyP50Nanos() {
+			return percentile(latencyBuckets, 0.5);
+		}
+		
+		@Override
+		public long getLatencyP99Nanos() {
+			return percentile(latencyBuckets, 0.99);
+		}
+		
+		@Override
+		public long[] getLatencyHistogram() {
+			return sums(latencyBuckets);
+		}
+		
+		@Override
+		public long[] getInputSizeHistogram() {
+			return sums(inputSizeBuckets);
+		}
+	}
+	
+	/***
+	 * A JFR event for one timed checker call, recorded when metrics are enabled and a recording asks for it
+	 *
+	 */
+	@Name("com.machineghost.examples.Check")
+	@Label("Checker Call")
+	@Description("One call to a string or matrix checker")
+	@Category({ "Machine Ghost", "Checkers" })
+	@StackTrace(false)
+	static final class CheckEvent extends Event {
+		@Label("Operation")
+		String operation;
+		
+		@Label("Input Size")
+		long inputSize;
+		
+		@Label("Result")
+		boolean result;
+		
+		@Label("Elapsed Nanoseconds")
+		long elapsedNanos;
+	}
+	
+	/***
+	 * Register every operation with the platform MBean server, under
+	 * com.machineghost.examples:type=CheckerMetrics,name=[operation]. The counters only move when ENABLED is set.
+	 * @throws JMException: if an operation is already registered, the operations before it stay registered
+	 */
+	public static void register() throws JMException {
+		for (Operation operation : operations) {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(operation,
+					new ObjectName("com.machineghost.examples:type=CheckerMetrics,name=" + operation.name));
+		}
+	}
+	
+	/***
+	 * @return every operation, for reporting
+	 */
+	static List<Operation> operations() {
+		return Collections.unmodifiableList(operations);
+	}
+	
+	/***
+	 * @return the length of a string, counting null as empty
+	 */
+	static long length(CharSequence string) {
+		return string == null ? 0 : string.length();
+	}
+	
+	/***
+	 * @return the histogram bucket of a value
+	 */
+	static int bucket(long value) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, value)));
+	}
+	
+	private static Operation operation(String name) {
+		Operation operation = new Operation(name);
+		operations.add(operation);
+		return operation;
+	}
+	
+	private static LongAdder[] newBuckets() {
+		LongAdder[] buckets = new LongAdder[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+		return buckets;
+	}
+	
+	private static long[] sums(LongAdder[] buckets) {
+		long[] sums = new long[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			sums[i] = buckets[i].sum();
+		}
+		return sums;
+	}
+	
+	/***
+	 * @return the upper bound of the bucket holding the percentile, or 0 if nothing was recorded
+	 */
+	private static long percentile(LongAdder[] buckets, double percentile) {
+		long[] counts = sums(buckets);
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return i == counts.length - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	public static void main(String[] args) {
+		// test 1: buckets are powers of two
+		boolean bucketsPassed = bucket(0) == 0 && bucket(1) == 1 && bucket(2) == 2 && bucket(3) == 2 && bucket(4) == 3
+				&& bucket(1023) == 10 && bucket(1024) == 11 && bucket(Long.MAX_VALUE) == BUCKETS - 1 && bucket(-5) == 0;
+		System.out.println("Test 1: values should fall in power of two buckets. Result: " + (bucketsPassed ? "test passed" : "test failed"));
+		
+		// test 2: counts and early exits
+		Operation counted = new Operation("test");
+		counted.count(false);
+		counted.count(true);
+		counted.count(true);
+		boolean countsPassed = counted.getCalls() == 3 && counted.getEarlyExits() == 2;
+		System.out.println("Test 2: calls and early exits should be counted. Result: " + (countsPassed ? "test passed" : "test failed"));
+		
+		// test 3: recorded calls fill both histograms
+		Operation timed = new Operation("test");
+		for (int i = 0; i < 100; i++) {
+			timed.record(i < 50 ? System.nanoTime() : 0, i < 99 ? 10 : 5000, true);
+		}
+		long[] inputSizes = timed.getInputSizeHistogram();
+		long latencies = 0;
+		for (long count : timed.getLatencyHistogram()) {
+			latencies += count;
+		}
+		boolean histogramsPassed = timed.getCalls() == 100 && latencies == 50
+				&& inputSizes[bucket(10)] == 99 && inputSizes[bucket(5000)] == 1;
+		System.out.println("Test 3: every call should fill the input size histogram, timed ones the latency histogram. Result: " + (histogramsPassed ? "test passed" : "test failed"));
+		
+		// test 3.1: about one call in SAMPLE_RATE is timed
+		Operation sampled = new Operation("test");
+		int timedCalls = 0;
+		for (int i = 0; i < 64000; i++) {
+			if (sampled.start() != 0) {
+				timedCalls++;
+			}
+		}
+		boolean samplingPassed = timedCalls > 500 && timedCalls < 1500;
+		System.out.println("Test 3.1: about one call in " + SAMPLE_RATE + " should be timed. Result: " + (samplingPassed ? "test passed" : "test failed"));
+		
+		// test 4: percentiles read out as bucket bounds
+		Operation skewed = new Operation("test");
+		boolean emptyPassed = skewed.getLatencyP99Nanos() == 0;
+		LongAdder[] buckets = skewed.latencyBuckets;
+		buckets[bucket(100)].add(98);
+		buckets[bucket(100000)].add(2);
+		boolean percentilesPassed = emptyPassed && skewed.getLatencyP50Nanos() == 127 && skewed.getLatencyP99Nanos() == 131071;
+		System.out.println("Test 4: p50 and p99 should be the bounds of the buckets holding them. Result: " + (percentilesPassed ? "test passed" : "test failed"));
+		
+		// test 5: every checker operation is registered with JMX, and counts calls through it when enabled
+		boolean registeredPassed = operations().size() == 8;
+		try {
+			register();
+			Object calls = ManagementFactory.getPlatformMBeanServer().getAttribute(
+					new ObjectName("com.machineghost.examples:type=CheckerMetrics,name=" + IS_ONE_AWAY.name), "Calls");
+			new OneAwayChecker().isOneAway("pale", "bale");
+			registeredPassed &= calls instanceof Long && IS_ONE_AWAY.getCalls() == (Long) calls + (ENABLED ? 1 : 0);
+		}
+		catch (JMException e) {
+			registeredPassed = false;
+		}
+		System.out.println("Test 5: checker operations should be registered with JMX. Result: " + (registeredPassed ? "test passed" : "test failed"));
+		
+		// test 5.1: registering twice is reported to the caller
+		boolean rejected = false;
+		try {
+			register();
+		}
+		catch (JMException e) {
+			rejected = true;
+		}
+		System.out.println("Test 5.1: registering the operations twice should throw. Result: " + (rejected ? "test passed" : "test failed"));
+	}
+}
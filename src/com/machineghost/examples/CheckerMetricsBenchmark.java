@@ -0,0 +1,160 @@
+package com.machineghost.examples;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/***
+ * Measure what the opt-in checker metrics cost. CheckerMetrics.ENABLED is fixed when the class loads,
+ * so each side runs in its own JVM: the same workload with metrics off and on, alternating runs so
+ * drift in the machine hits both sides alike. The workload calls every instrumented checker on
+ * short strings, where the counter updates and the sampled timing weigh the most.
+ * Usage: CheckerMetricsBenchmark [runs per side] [seconds per run] [string length]
+ *
+ */
+public class CheckerMetricsBenchmark {
+	
+	private static final String METRICS_PROPERTY = "com.machineghost.examples.metrics";
+	
+	/***
+	 * Run the workload for a while in this JVM
+	 * @param durationMillis: how long to measure, after a warm-up of the same length
+	 * @param length: the length of each string
+	 * @return checker calls per second
+	 */
+	static double workload(long durationMillis, int length) {
+		Random random = new Random(29);
+		int pairCount = 1024;
+		String[] firstStrings = new String[pairCount];
+		String[] secondStrings = new String[pairCount];
+		for (int i = 0; i < pairCount; i++) {
+			char[] chars = new char[length];
+			for (int j = 0; j < length; j++) {
+				chars[j] = (char) ('a' + random.nextInt(26));
+			}
+			firstStrings[i] = new String(chars);
+			// a mix of rotations, one-char edits and permutations, so every checker sees both answers
+			int split = random.nextInt(length);
+			if (i % 3 == 0) {
+				secondStrings[i] = firstStrings[i].substring(split) + firstStrings[i].substring(0, split);
+			}
+			else {
+				chars[split] = (char) ('a' + random.nextInt(26));
+				if (i % 3 == 1) {
+					int swap = random.nextInt(length);
+					char held = chars[swap];
+					chars[swap] = chars[split];
+					chars[split] = held;
+				}
+				secondStrings[i] = new String(chars);
+			}
+		}
+		int[][] matrix = new int[32][32];
+		
+		OneAwayChecker oneAway = new OneAwayChecker();
+		PermutationChecker permutation = new PermutationChecker();
+		StringRotationChecker rotation = new StringRotationChecker();
+		UniqueCharsChecker unique = new UniqueCharsChecker();
+		ZeroMatrixChecker zeroMatrix = new ZeroMatrixChecker();
+		
+		long calls = 0;
+		int sink = 0;
+		long start = 0;
+		long warmUpEnd = System.nanoTime() + durationMillis * 1000000;
+		long end = warmUpEnd + durationMillis * 1000000;
+		while (true) {
+			long now = System.nanoTime();
+			if (start == 0 && now >= warmUpEnd) {
+				start = now;
+				calls = 0;
+			}
+			if (now >= end) {
+				break;
+			}
+			for (int i = 0; i < pairCount; i++) {
+				String first = firstStrings[i];
+				String second = secondStrings[i];
+				sink += oneAway.isOneAway(first, second) ? 1 : 0;
+				sink += permutation.stringIsPermutationOfAnotherOptimized(first, second) ? 1 : 0;
+				sink += rotation.isRotation(first, second) ? 1 : 0;
+				sink += unique.charsAreAllUniqueBitsetApproach(first) ? 1 : 0;
+				if ((i & 63) == 0) {
+					for (int[] row : matrix) {
+						Arrays.fill(row, 1);
+					}
+					matrix[i & 31][(i >>> 6) & 31] = 0;
+					zeroMatrix.transformMatrix(matrix);
+					sink += matrix[0][0];
+					calls++;
+				}
+			}
+			calls += 4 * pairCount;
+		}
+		if (sink == 42) {
+			// keep the results alive
+			System.err.println();
+		}
+		return calls * 1e9 / (System.nanoTime() - start);
+	}
+	
+	/***
+	 * Run the workload in a child JVM
+	 * @return the child's calls per second
+	 */
+	private static double runChild(boolean metrics, long seconds, int length) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-D" + METRICS_PROPERTY + "=" + metrics);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(CheckerMetricsBenchmark.class.getName());
+		command.add("child");
+		command.add(Long.toString(seconds));
+		command.add(Integer.toString(length));
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		String result = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				result = line;
+			}
+		}
+		if (process.waitFor() != 0 || result == null) {
+			throw new IllegalStateException("benchmark child failed: " + result);
+		}
+		return Double.parseDouble(result);
+	}
+	
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+	
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0 && args[0].equals("child")) {
+			System.out.println(workload(Long.parseLong(args[1]) * 1000, Integer.parseInt(args[2])));
+			return;
+		}
+		
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 2;
+		int length = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+		
+		double[] disabled = new double[runs];
+		double[] enabled = new double[runs];
+		for (int run = 0; run < runs; run++) {
+			disabled[run] = runChild(false, seconds, length);
+			enabled[run] = runChild(true, seconds, length);
+			System.out.printf("run %d: metrics off %,.0f calls/s, on %,.0f calls/s%n", run + 1, disabled[run], enabled[run]);
+		}
+		
+		double overhead = 100 * (1 - median(enabled) / median(disabled));
+		System.out.printf("median: metrics off %,.0f calls/s, on %,.0f calls/s, overhead %.1f%%%n", median(disabled), median(enabled), overhead);
+	}
+}
@@ -0,0 +1,499 @@
+package com.machineghost.examples;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Run checker requests for a request/response workload, each request being a batch of strings or string pairs.
+ * Requests wait in a bounded queue. When the queue is full a request is rejected right away (its future fails
+ * with RejectedExecutionException) instead of being queued without limit, so an overloaded caller finds out.
+ * At most maxConcurrency workers drain the queue, and a worker takes small requests together as one
+ * micro-batch until it has MICRO_BATCH_PAIRS pairs. Queued requests for the same check are joined into one
+ * PairBatch call and the results split back out, so a burst of tiny requests costs one call, not one each.
+ * Workers run on virtual threads when the JVM has them (Java 21 and later), otherwise on platform threads.
+ *
+ */
+public class CheckerService implements AutoCloseable {
+	
+	// a worker keeps taking queued requests until it has this many pairs to check
+	static final int MICRO_BATCH_PAIRS = 1024;
+	
+	// latency percentiles are taken over this many of the most recent requests
+	private static final int LATENCY_SAMPLES = 4096;
+	
+	private final OneAwayChecker oneAwayChecker = new OneAwayChecker();
+	private final PermutationChecker permutationChecker = new PermutationChecker();
+	private final StringRotationChecker rotationChecker = new StringRotationChecker();
+	private final UniqueCharsChecker uniqueCharsChecker = new UniqueCharsChecker();
+	
+	// one instance of each check, so requests for the same check can be told apart from others and joined
+	private final PairBatch.PairCheck oneAwayCheck = oneAwayChecker::isOneAway;
+	private final PairBatch.PairCheck permutationCheck = permutationChecker::stringIsPermutationOfAnotherOptimized;
+	private final PairBatch.PairCheck rotationCheck = rotationChecker::isRotation;
+	private final PairBatch.PairCheck uniqueCheck = (string, same) -> uniqueCharsChecker.charsAreAllUniqueBitsetApproach(string);
+	
+	private final int maxConcurrency;
+	private final int queueCapacity;
+	private final ExecutorService executor;
+	private final boolean virtualThreads;
+	
+	private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<Request>();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicInteger activeWorkers = new AtomicInteger();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private volatile boolean closed;
+	
+	// a ring of the latest request latencies, guarded by itself
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private long latencyCount;
+	
+	/***
+	 * One caller's batch, and the future its results go to
+	 *
+	 */
+	private static final class Request {
+		final String[] firstStrings;
+		final String[] secondStrings;
+		final PairBatch.PairCheck check;
+		final CompletableFuture<boolean[]> future = new CompletableFuture<boolean[]>();
+		final long submittedAt = System.nanoTime();
+		
+		Request(String[] firstStrings, String[] secondStrings, PairBatch.PairCheck check) {
+			this.firstStrings = firstStrings;
+			this.secondStrings = secondStrings;
+			this.check = check;
+		}
+	}
+	
+	/***
+	 * @param maxConcurrency: the most requests checked at once
+	 * @param queueCapacity: the most requests waiting to be checked before new ones are rejected
+	 */
+	public CheckerService(int maxConcurrency, int queueCapacity) {
+		this(maxConcurrency, queueCapacity, null);
+	}
+	
+	/***
+	 * @param executor: runs the workers, or null to use virtual threads or a fixed pool
+	 */
+	CheckerService(int maxConcurrency, int queueCapacity, ExecutorService executor) {
+		if (maxConcurrency < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("maxConcurrency and queueCapacity must be positive: " + maxConcurrency + ", " + queueCapacity);
+		}
+		this.maxConcurrency = maxConcurrency;
+		this.queueCapacity = queueCapacity;
+		ExecutorService virtualThreadExecutor = executor == null ? newVirtualThreadExecutor() : null;
+		this.virtualThreads = virtualThreadExecutor != null;
+		if (executor != null) {
+			this.executor = executor;
+		}
+		else if (virtualThreadExecutor != null) {
+			this.executor = virtualThreadExecutor;
+		}
+		else {
+			this.executor = newPlatformThreadExecutor(maxConcurrency);
+		}
+	}
+	
+	/***
+	 * Check, for each pair of strings at the same index, if they are one char away
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @return a future for the result of each pair, failed with RejectedExecutionException if the service is overloaded
+	 */
+	public CompletableFuture<boolean[]> isOneAway(String[] firstStrings, String[] secondStrings) {
+		return submit(firstStrings, secondStrings, oneAwayCheck);
+	}
+	
+	/***
+	 * Check, for each pair of strings at the same index, if one is a permutation of the other
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @return a future for the result of each pair, failed with RejectedExecutionException if the service is overloaded
+	 */
+	public CompletableFuture<boolean[]> isPermutation(String[] firstStrings, String[] secondStrings) {
+		return submit(firstStrings, secondStrings, permutationCheck);
+	}
+	
+	/***
+	 * Check, for each pair of strings at the same index, if the second is a rotation of the first
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @return a future for the result of each pair, failed with RejectedExecutionException if the service is overloaded
+	 */
+	public CompletableFuture<boolean[]> isRotation(String[] firstStrings, String[] secondStrings) {
+		return submit(firstStrings, secondStrings, rotationCheck);
+	}
+	
+	/***
+	 * Check, for each string, if its chars are all unique
+	 * @param strings: the strings to check
+	 * @return a future for the result of each string, failed with RejectedExecutionException if the service is overloaded
+	 */
+	public CompletableFuture<boolean[]> charsAreAllUnique(String[] strings) {
+		return submit(strings, strings, uniqueCheck);
+	}
+	
+	/***
+	 * @return the number of requests waiting to be checked
+	 */
+	public int queueDepth() {
+		return queueDepth.get();
+	}
+	
+	/***
+	 * @return the number of requests rejected because the queue was full or the service was closed
+	 */
+	public long rejectedCount() {
+		return rejectedCount.get();
+	}
+	
+	/***
+	 * @return the 99th percentile time from submitting a recent request to its result, in nanoseconds
+	 */
+	public long p99LatencyNanos() {
+		return latencyPercentileNanos(0.99);
+	}
+	
+	/***
+	 * Get a percentile of the time from submitting a request to its result, over the most recent requests
+	 * @param percentile: between 0 and 1, 0.5 for the median
+	 * @return the latency in nanoseconds, or 0 if no request has finished
+	 */
+	public long latencyPercentileNanos(double percentile) {
+		long[] samples;
+		synchronized (latencies) {
+			samples = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+		}
+		if (samples.length == 0) {
+			return 0;
+		}
+		Arrays.sort(samples);
+		return samples[(int) Math.min(samples.length - 1, (long) (samples.length * percentile))];
+	}
+	
+	/***
+	 * @return true if requests are checked on virtual threads
+	 */
+	public boolean usesVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/***
+	 * Stop taking requests, and wait for the queued ones to be checked
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		executor.shutdown();
+		try {
+			// the queue is bounded, so this ends
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private CompletableFuture<boolean[]> submit(String[] firstStrings, String[] secondStrings, PairBatch.PairCheck check) {
+		if (firstStrings.length != secondStrings.length) {
+			throw new IllegalArgumentException("batches must be the same size: " + firstStrings.length + " and " + secondStrings.length);
+		}
+		
+		Request request = new Request(firstStrings, secondStrings, check);
+		if (closed) {
+			reject(request, "the service is closed");
+			return request.future;
+		}
+		
+		// reserve a place in the queue, or reject if there isn't one
+		int depth;
+		do {
+			depth = queueDepth.get();
+			if (depth >= queueCapacity) {
+				reject(request, "the queue is full: " + queueCapacity + " requests");
+				return request.future;
+			}
+		} while (!queueDepth.compareAndSet(depth, depth + 1));
+		
+		queue.add(request);
+		startWorkerIfNeeded();
+		return request.future;
+	}
+	
+	/***
+	 * Start a worker if there are queued requests and fewer than maxConcurrency workers
+	 */
+	private void startWorkerIfNeeded() {
+		while (!queue.isEmpty()) {
+			int active = activeWorkers.get();
+			if (active >= maxConcurrency) {
+				return;
+			}
+			if (activeWorkers.compareAndSet(active, active + 1)) {
+				try {
+					executor.execute(this::drain);
+				}
+				catch (RejectedExecutionException e) {
+					// the executor is shut down, nothing will check what is left
+					activeWorkers.decrementAndGet();
+					Request request;
+					while ((request = queue.poll()) != null) {
+						queueDepth.decrementAndGet();
+						reject(request, "the service is closed");
+					}
+				}
+				return;
+			}
+		}
+	}
+	
+	/***
+	 * Check queued requests until the queue is empty, a micro-batch at a time
+	 */
+	private void drain() {
+		List<Request> batch = new ArrayList<Request>();
+		try {
+			while (true) {
+				int pairs = 0;
+				Request request;
+				while (pairs < MICRO_BATCH_PAIRS && (request = queue.poll()) != null) {
+					queueDepth.decrementAndGet();
+					batch.add(request);
+					pairs += request.firstStrings.length;
+				}
+				if (batch.isEmpty()) {
+					break;
+				}
+				
+				// each run of requests for the same check goes to the checker as one batch
+				int from = 0;
+				while (from < batch.size()) {
+					int to = from + 1;
+					while (to < batch.size() && batch.get(to).check == batch.get(from).check) {
+						to++;
+					}
+					checkTogether(batch.subList(from, to));
+					from = to;
+				}
+				batch.clear();
+			}
+		}
+		finally {
+			// a request polled by a worker that is going away would otherwise never be answered
+			for (Request batched : batch) {
+				batched.future.completeExceptionally(new IllegalStateException("the worker stopped before checking this request"));
+			}
+			activeWorkers.decrementAndGet();
+		}
+		// a request queued between the last poll and the decrement saw this worker as still running
+		startWorkerIfNeeded();
+	}
+	
+	/***
+	 * Check requests for the same check with one call, splitting the results back out per request
+	 */
+	private void checkTogether(List<Request> requests) {
+		if (requests.size() == 1) {
+			check(requests.get(0));
+			return;
+		}
+		
+		int pairs = 0;
+		for (Request request : requests) {
+			pairs += request.firstStrings.length;
+		}
+		String[] firstStrings = new String[pairs];
+		String[] secondStrings = new String[pairs];
+		int offset = 0;
+		for (Request request : requests) {
+			System.arraycopy(request.firstStrings, 0, firstStrings, offset, request.firstStrings.length);
+			System.arraycopy(request.secondStrings, 0, secondStrings, offset, request.secondStrings.length);
+			offset += request.firstStrings.length;
+		}
+		
+		boolean[] results;
+		try {
+			// the service already runs requests side by side, so each batch stays on its worker
+			results = PairBatch.checkAll(firstStrings, secondStrings, requests.get(0).check, false);
+		}
+		catch (Throwable e) {
+			// some pair failed, check each request on its own so only the one holding that pair fails
+			for (Request request : requests) {
+				check(request);
+			}
+			return;
+		}
+		
+		offset = 0;
+		for (Request request : requests) {
+			request.future.complete(Arrays.copyOfRange(results, offset, offset + request.firstStrings.length));
+			offset += request.firstStrings.length;
+			recordLatency(request);
+		}
+	}
+	
+	private void check(Request request) {
+		try {
+			request.future.complete(PairBatch.checkAll(request.firstStrings, request.secondStrings, request.check, false));
+		}
+		catch (Throwable e) {
+			// errors too, a StackOverflowError on one huge input must not leave the caller waiting forever
+			request.future.completeExceptionally(e);
+		}
+		recordLatency(request);
+	}
+	
+	private void recordLatency(Request request) {
+		long latency = System.nanoTime() - request.submittedAt;
+		synchronized (latencies) {
+			latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = latency;
+		}
+	}
+	
+	private void reject(Request request, String reason) {
+		rejectedCount.incrementAndGet();
+		request.future.completeExceptionally(new RejectedExecutionException(reason));
+	}
+	
+	/***
+	 * Make an executor with a new virtual thread per task, if this JVM has them
+	 * @return the executor, or null before Java 21 (or on 19 and 20 without preview features)
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			// looked up by name, this tree compiles against Java 17 where the method doesn't exist
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return null;
+		}
+	}
+	
+	private static ExecutorService newPlatformThreadExecutor(int threads) {
+		AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "checker-service-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	public static void main(String[] args) throws Exception {
+		// test 1: results match the checkers
+		try (CheckerService service1 = new CheckerService(4, 64)) {
+			boolean[] oneAway = service1.isOneAway(new String[] { "pale", "pale", null }, new String[] { "ple", "bake", null }).get();
+			System.out.println("Test 1.1: one-away results should match the checker. Result: "
+					+ (Arrays.equals(oneAway, new boolean[] { true, false, true }) ? "test passed" : "test failed"));
+			
+			boolean[] permutation = service1.isPermutation(new String[] { "dog", "dog" }, new String[] { "god", "cat" }).get();
+			System.out.println("Test 1.2: permutation results should match the checker. Result: "
+					+ (Arrays.equals(permutation, new boolean[] { true, false }) ? "test passed" : "test failed"));
+			
+			boolean[] rotation = service1.isRotation(new String[] { "waterbottle", "abc" }, new String[] { "erbottlewat", "acb" }).get();
+			System.out.println("Test 1.3: rotation results should match the checker. Result: "
+					+ (Arrays.equals(rotation, new boolean[] { true, false }) ? "test passed" : "test failed"));
+			
+			boolean[] unique = service1.charsAreAllUnique(new String[] { "abc", "abca" }).get();
+			System.out.println("Test 1.4: unique results should match the checker. Result: "
+					+ (Arrays.equals(unique, new boolean[] { true, false }) ? "test passed" : "test failed"));
+			
+			// many small requests at once, so workers coalesce them
+			List<CompletableFuture<boolean[]>> futures = new ArrayList<CompletableFuture<boolean[]>>();
+			for (int i = 0; i < 50; i++) {
+				futures.add(service1.isOneAway(new String[] { "abc" + i, "abc" }, new String[] { "abd" + i, "xyz" }));
+			}
+			boolean allMatch = true;
+			for (CompletableFuture<boolean[]> future : futures) {
+				allMatch &= Arrays.equals(future.get(), new boolean[] { true, false });
+			}
+			System.out.println("Test 1.5: concurrent small requests should all be answered. Result: " + (allMatch ? "test passed" : "test failed"));
+			
+			System.out.println("Test 1.6: latency should be reported. Result: "
+					+ (service1.p99LatencyNanos() > 0 && service1.latencyPercentileNanos(0.5) <= service1.p99LatencyNanos() ? "test passed" : "test failed"));
+		}
+		
+		// test 2: backpressure, with the only worker thread held up so requests stay queued
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService heldExecutor = Executors.newSingleThreadExecutor();
+		heldExecutor.execute(() -> {
+			try {
+				release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		CheckerService service2 = new CheckerService(1, 2, heldExecutor);
+		CompletableFuture<boolean[]> first = service2.isOneAway(new String[] { "a" }, new String[] { "b" });
+		CompletableFuture<boolean[]> second = service2.isOneAway(new String[] { "a" }, new String[] { "ab" });
+		CompletableFuture<boolean[]> third = service2.isOneAway(new String[] { "a" }, new String[] { "a" });
+		System.out.println("Test 2.1: queue depth should be reported. Result: " + (service2.queueDepth() == 2 ? "test passed" : "test failed"));
+		
+		System.out.println("Test 2.2: a request past the queue capacity should be rejected. Result: "
+				+ (third.isCompletedExceptionally() && service2.rejectedCount() == 1 ? "test passed" : "test failed"));
+		
+		release.countDown();
+		boolean queuedAnswered = Arrays.equals(first.get(), new boolean[] { true }) && Arrays.equals(second.get(), new boolean[] { true });
+		System.out.println("Test 2.3: queued requests should be answered once a worker is free. Result: " + (queuedAnswered ? "test passed" : "test failed"));
+		
+		service2.close();
+		CompletableFuture<boolean[]> afterClose = service2.isOneAway(new String[] { "a" }, new String[] { "b" });
+		System.out.println("Test 2.4: requests after close should be rejected. Result: " + (afterClose.isCompletedExceptionally() ? "test passed" : "test failed"));
+		
+		// test 3: requests queued together are joined, and a failing pair only fails its own request
+		CountDownLatch release3 = new CountDownLatch(1);
+		ExecutorService heldExecutor3 = Executors.newSingleThreadExecutor();
+		heldExecutor3.execute(() -> {
+			try {
+				release3.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		CheckerService service3 = new CheckerService(1, 8, heldExecutor3);
+		AtomicInteger calls = new AtomicInteger();
+		PairBatch.PairCheck counted = (firstString, secondString) -> {
+			calls.incrementAndGet();
+			if ("overflow".equals(firstString)) {
+				throw new StackOverflowError();
+			}
+			return firstString.equals(secondString);
+		};
+		CompletableFuture<boolean[]> joined1 = service3.submit(new String[] { "a", "b" }, new String[] { "a", "c" }, counted);
+		CompletableFuture<boolean[]> joined2 = service3.submit(new String[] { "d" }, new String[] { "d" }, counted);
+		CompletableFuture<boolean[]> otherCheck = service3.isOneAway(new String[] { "pale" }, new String[] { "ple" });
+		release3.countDown();
+		boolean joinedPassed = Arrays.equals(joined1.get(), new boolean[] { true, false }) && Arrays.equals(joined2.get(), new boolean[] { true })
+				&& Arrays.equals(otherCheck.get(), new boolean[] { true }) && calls.get() == 3;
+		System.out.println("Test 3.1: requests for the same check should be joined and split back out. Result: " + (joinedPassed ? "test passed" : "test failed"));
+		
+		CompletableFuture<boolean[]> overflowed = service3.submit(new String[] { "overflow" }, new String[] { "x" }, counted);
+		CompletableFuture<boolean[]> afterOverflow = service3.submit(new String[] { "e" }, new String[] { "e" }, counted);
+		boolean errorPassed;
+		try {
+			overflowed.get();
+			errorPassed = false;
+		}
+		catch (ExecutionException e) {
+			errorPassed = e.getCause() instanceof StackOverflowError;
+		}
+		errorPassed &= Arrays.equals(afterOverflow.get(), new boolean[] { true });
+		service3.close();
+		System.out.println("Test 3.2: an error in a checker should fail only its own request. Result: " + (errorPassed ? "test passed" : "test failed"));
+	}
+}
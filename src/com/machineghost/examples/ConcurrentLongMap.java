@@ -0,0 +1,147 @@
+package com.machineghost.examples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/***
+ * A lock-striped hash map keyed by primitive longs, so lookups never box a key.
+ * Each stripe is an open-addressed table guarded by its own lock; keys are spread
+ * across stripes by their high hash bits, so threads working on different keys rarely contend.
+ *
+ */
+final class ConcurrentLongMap<V> {
+	
+	private final Stripe<V>[] stripes;
+	private final int stripeShift;
+	
+	/***
+	 * A single open-addressed table with linear probing
+	 *
+	 */
+	private static final class Stripe<V> {
+		long[] keys = new long[16];
+		Object[] values = new Object[16];
+		int size;
+		
+		@SuppressWarnings("unchecked")
+		V get(long key, int hash) {
+			int mask = keys.length - 1;
+			for (int slot = hash & mask; values[slot] != null; slot = (slot + 1) & mask) {
+				if (keys[slot] == key) {
+					return (V) values[slot];
+				}
+			}
+			return null;
+		}
+		
+		void put(long key, int hash, V value) {
+			// keep the table at most half full
+			if ((size + 1) * 2 > keys.length) {
+				resize();
+			}
+			int mask = keys.length - 1;
+			int slot = hash & mask;
+			while (values[slot] != null && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			if (values[slot] == null) {
+				size++;
+			}
+			keys[slot] = key;
+			values[slot] = value;
+		}
+		
+		private void resize() {
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new Object[oldValues.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] != null) {
+					int slot = hash(oldKeys[i]) & mask;
+					while (values[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
+				}
+			}
+		}
+	}
+	
+	/***
+	 * @param concurrency: the expected number of writing threads, four stripes are made per thread (at least two)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	ConcurrentLongMap(int concurrency) {
+		int stripeCount = Integer.highestOneBit(Math.max(1, concurrency * 4 - 1)) << 1;
+		stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe<V>();
+		}
+		stripeShift = 32 - Integer.numberOfTrailingZeros(stripeCount);
+	}
+	
+	/***
+	 * Get the value for a key
+	 * @param key: the key to look up
+	 * @return the value, or null if the key isn't in the map
+	 */
+	V get(long key) {
+		int hash = hash(key);
+		Stripe<V> stripe = stripeFor(hash);
+		synchronized (stripe) {
+			return stripe.get(key, hash);
+		}
+	}
+	
+	/***
+	 * Get the value for a key, creating it if the key isn't in the map
+	 * @param key: the key to look up
+	 * @param factory: creates the value, called at most once per key and while the key's stripe is locked
+	 * @return the existing or new value
+	 */
+	V getOrCreate(long key, Supplier<V> factory) {
+		int hash = hash(key);
+		Stripe<V> stripe = stripeFor(hash);
+		synchronized (stripe) {
+			V value = stripe.get(key, hash);
+			if (value == null) {
+				value = factory.get();
+				stripe.put(key, hash, value);
+			}
+			return value;
+		}
+	}
+	
+	/***
+	 * Copy every value in the map
+	 * @return the values, in no particular order
+	 */
+	@SuppressWarnings("unchecked")
+	List<V> values() {
+		List<V> values = new ArrayList<V>();
+		for (Stripe<V> stripe : stripes) {
+			synchronized (stripe) {
+				for (Object value : stripe.values) {
+					if (value != null) {
+						values.add((V) value);
+					}
+				}
+			}
+		}
+		return values;
+	}
+	
+	private Stripe<V> stripeFor(int hash) {
+		// the high bits pick the stripe, the low bits pick the slot within it
+		return stripes[hash >>> stripeShift];
+	}
+	
+	private static int hash(long key) {
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+}
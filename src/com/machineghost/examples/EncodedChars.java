@@ -0,0 +1,238 @@
+package com.machineghost.examples;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/***
+ * Turn encoded bytes into a CharSequence the checkers can run on, copying as little as possible.
+ * Latin-1 bytes, and ASCII or UTF-8 bytes that are all below 0x80, are one char per byte, so they are
+ * read in place through a view. Anything else is decoded once, the way new String(bytes, charset) would.
+ * The checkers take CharSequence inputs, so a view goes through the same code as a String, and where two
+ * views meet the checkers switch to the byte-wise kernels here: a vectorized mismatch for edits, and
+ * byte histograms copied out in bulk chunks for counting.
+ *
+ */
+final class EncodedChars implements CharSequence {
+	
+	// the high bit of every byte in a long
+	private static final long NON_ASCII_BITS = 0x8080808080808080L;
+	
+	private static final int CHUNK_SIZE = 8192;
+	
+	/***
+	 * Per-thread buffers for counting, so a call allocates nothing
+	 *
+	 */
+	private static final class Scratch {
+		final byte[] chunk = new byte[CHUNK_SIZE];
+		final int[] counts = new int[CharHistogram.MAX_HISTOGRAMS * 256];
+	}
+	
+	private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+	
+	private final ByteBuffer bytes;
+	private final int offset;
+	private final int length;
+	
+	private EncodedChars(ByteBuffer bytes, int offset, int length) {
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	/***
+	 * Read the bytes from a buffer's position to its limit as chars, leaving the position alone
+	 * @param buffer: the encoded bytes, heap or direct, or null
+	 * @param charset: how the bytes are encoded
+	 * @return the chars, or null for a null buffer
+	 */
+	static CharSequence decode(ByteBuffer buffer, Charset charset) {
+		if (buffer == null) {
+			return null;
+		}
+		return decode(buffer, buffer.position(), buffer.remaining(), charset);
+	}
+	
+	/***
+	 * Read a range of a buffer as chars, ignoring its position and limit, so a caller walking a large buffer
+	 * needs no slice per range
+	 * @param buffer: the encoded bytes, heap or direct
+	 * @param offset: the index of the first byte of the range
+	 * @param length: the number of bytes in the range
+	 * @param charset: how the bytes are encoded
+	 * @return the chars
+	 */
+	static CharSequence decode(ByteBuffer buffer, int offset, int length, Charset charset) {
+		if (isOneBytePerChar(buffer, offset, length, charset)) {
+			return new EncodedChars(buffer, offset, length);
+		}
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + offset, length, charset);
+		}
+		return charset.decode(buffer.slice(offset, length));
+	}
+	
+	/***
+	 * Read a range of a byte array as chars
+	 * @param array: the encoded bytes, or null
+	 * @param offset: the first byte of the range
+	 * @param length: the number of bytes in the range
+	 * @param charset: how the bytes are encoded
+	 * @return the chars, or null for a null array
+	 */
+	static CharSequence decode(byte[] array, int offset, int length, Charset charset) {
+		if (array == null) {
+			return null;
+		}
+		// checks the range
+		ByteBuffer buffer = ByteBuffer.wrap(array, offset, length);
+		if (isOneBytePerChar(buffer, offset, length, charset)) {
+			return new EncodedChars(buffer, offset, length);
+		}
+		return new String(array, offset, length, charset);
+	}
+	
+	/***
+	 * Determine if every byte of a range decodes to the char of the same value
+	 */
+	private static boolean isOneBytePerChar(ByteBuffer buffer, int offset, int length, Charset charset) {
+		if (charset.equals(StandardCharsets.ISO_8859_1)) {
+			return true;
+		}
+		if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.US_ASCII)) {
+			return false;
+		}
+		
+		// eight bytes at a time, any high bit means a multi-byte UTF-8 sequence or a malformed ASCII byte
+		int end = offset + length;
+		int i = offset;
+		for (; i + Long.BYTES <= end; i += Long.BYTES) {
+			if ((buffer.getLong(i) & NON_ASCII_BITS) != 0) {
+				return false;
+			}
+		}
+		for (; i < end; i++) {
+			if (buffer.get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/***
+	 * Determine if two views are at most one edit apart, like OneAwayChecker's pointer walk but comparing
+	 * runs of bytes with ByteBuffer.mismatch, which the JIT vectorizes
+	 * @param shorter: the shorter view, or either view if they are the same length
+	 * @param longer: a view the same length as the shorter one, or one byte longer
+	 * @return true if the views are zero or one edits apart
+	 */
+	static boolean atMostOneEdit(EncodedChars shorter, EncodedChars longer) {
+		int mismatch = shorter.region(0).mismatch(longer.region(0));
+		if (mismatch < 0 || mismatch == shorter.length) {
+			// identical, or the longer view's extra byte is the one insertion
+			return true;
+		}
+		
+		// skip the mismatched byte, in both views for a replacement or just the longer one for an insertion
+		int shorterResume = shorter.length == longer.length ? mismatch + 1 : mismatch;
+		return shorter.region(shorterResume).mismatch(longer.region(mismatch + 1)) < 0;
+	}
+	
+	/***
+	 * Determine if two views of the same length hold the same count of every byte
+	 * @param first: the first view
+	 * @param second: a view the same length as the first
+	 * @return true if every byte value is as common in one as in the other
+	 */
+	static boolean sameByteCounts(EncodedChars first, EncodedChars second) {
+		Scratch buffers = scratch.get();
+		// long repetitive views are counted by the vector kernel when the JVM has it, over one sub-histogram per lane
+		int histograms = CharHistogram.byteHistogramsFor(first);
+		int[] counts = buffers.counts;
+		Arrays.fill(counts, 0, histograms * 256, 0);
+		first.count(buffers.chunk, counts, 1, histograms);
+		second.count(buffers.chunk, counts, -1, histograms);
+		
+		// the lengths match, so any count left over means a difference
+		return CharHistogram.allCancelled(counts, histograms);
+	}
+	
+	/***
+	 * Add each byte of the view to its count, copying the bytes out a chunk at a time
+	 */
+	private void count(byte[] chunk, int[] counts, int increment, int histograms) {
+		for (int from = 0; from < length; from += chunk.length) {
+			int size = Math.min(chunk.length, length - from);
+			bytes.get(offset + from, chunk, 0, size);
+			CharHistogram.countBytes(chunk, size, counts, increment, histograms);
+		}
+	}
+	
+	/***
+	 * @return a buffer over the view from an index to its end, sharing its bytes
+	 */
+	private ByteBuffer region(int from) {
+		return bytes.slice(offset + from, length - from);
+	}
+	
+	/***
+	 * Determine if two sequences hold the same chars, using String.equals when both are strings
+	 * @param first: a non-null sequence
+	 * @param second: a non-null sequence
+	 * @return true if the chars are the same
+	 */
+	static boolean sameChars(CharSequence first, CharSequence second) {
+		if (first instanceof String && second instanceof String) {
+			return first.equals(second);
+		}
+		return CharSequence.compare(first, second) == 0;
+	}
+	
+	/***
+	 * Copy the chars of a sequence into a new array, as String.toCharArray does
+	 * @param chars: the sequence to copy
+	 * @return the chars
+	 */
+	static char[] toCharArray(CharSequence chars) {
+		if (chars instanceof String) {
+			return ((String) chars).toCharArray();
+		}
+		char[] copy = new char[chars.length()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = chars.charAt(i);
+		}
+		return copy;
+	}
+	
+	@Override
+	public int length() {
+		return length;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		return (char) (bytes.get(offset + index) & 0xFF);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+		}
+		return new EncodedChars(bytes, offset + start, end - start);
+	}
+	
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = charAt(i);
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,376 @@
+package com.machineghost.examples;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/***
+ * A matrix stored flat and row-major outside the Java heap, as an alternative to int[][] for ZeroMatrixChecker.
+ * There is no per-row array to chase or collect: elements live in direct buffers, or in a memory-mapped file
+ * for matrices larger than the heap. Elements are ints, longs or doubles, read and written without boxing.
+ * Storage is split into chunks of whole rows of up to 1 GB, since a single buffer can't address more than 2 GB.
+ * Elements are in the platform's native byte order, so a mapped file is only portable between like machines.
+ *
+ */
+public final class FlatMatrix {
+	
+	/***
+	 * The type of every element in a matrix
+	 *
+	 */
+	public enum ElementType {
+		INT(4),
+		LONG(8),
+		DOUBLE(8);
+		
+		final int bytes;
+		
+		ElementType(int bytes) {
+			this.bytes = bytes;
+		}
+	}
+	
+	private static final int MAX_CHUNK_BYTES = 1 << 30;
+	
+	// written over rows to clear them, a bulk put is much faster than one element at a time
+	private static final byte[] ZEROS = new byte[8192];
+	
+	private final ElementType elementType;
+	private final int rows;
+	private final int columns;
+	private final int rowBytes;
+	private final int chunkRows;
+	private final ByteBuffer[] chunks;
+	
+	private FlatMatrix(ElementType elementType, int rows, int columns, ByteBuffer[] chunks) {
+		this.elementType = elementType;
+		this.rows = rows;
+		this.columns = columns;
+		this.rowBytes = columns * elementType.bytes;
+		this.chunkRows = chunkRows(elementType, columns);
+		this.chunks = chunks;
+	}
+	
+	/***
+	 * Allocate a matrix of zeros in direct (off-heap) memory, limited by -XX:MaxDirectMemorySize
+	 * @param elementType: the type of the elements
+	 * @param rows: the number of rows
+	 * @param columns: the number of columns
+	 * @return the matrix
+	 */
+	public static FlatMatrix allocate(ElementType elementType, int rows, int columns) {
+		ByteBuffer[] chunks = new ByteBuffer[chunkCount(elementType, rows, columns)];
+		int chunkRows = chunkRows(elementType, columns);
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			int rowsInChunk = Math.min(chunkRows, rows - chunk * chunkRows);
+			chunks[chunk] = ByteBuffer.allocateDirect(rowsInChunk * columns * elementType.bytes).order(ByteOrder.nativeOrder());
+		}
+		return new FlatMatrix(elementType, rows, columns, chunks);
+	}
+	
+	/***
+	 * Map a matrix onto a file, which is created or grown to fit. Changes are written back to the file.
+	 * @param path: the file to map
+	 * @param elementType: the type of the elements
+	 * @param rows: the number of rows
+	 * @param columns: the number of columns
+	 * @return the matrix
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	public static FlatMatrix map(Path path, ElementType elementType, int rows, int columns) throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[chunkCount(elementType, rows, columns)];
+		int chunkRows = chunkRows(elementType, columns);
+		long chunkBytes = (long) chunkRows * columns * elementType.bytes;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// the mappings stay valid after the channel is closed
+			for (int chunk = 0; chunk < chunks.length; chunk++) {
+				int rowsInChunk = Math.min(chunkRows, rows - chunk * chunkRows);
+				long size = (long) rowsInChunk * columns * elementType.bytes;
+				chunks[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, chunk * chunkBytes, size).order(ByteOrder.nativeOrder());
+			}
+		}
+		return new FlatMatrix(elementType, rows, columns, chunks);
+	}
+	
+	/***
+	 * Copy a rectangular int matrix into direct memory
+	 * @param matrix: the matrix to copy, every row as long as the first
+	 * @return the flat matrix
+	 */
+	public static FlatMatrix of(int[][] matrix) {
+		FlatMatrix flat = allocate(ElementType.INT, matrix.length, matrix.length == 0 ? 0 : matrix[0].length);
+		for (int row = 0; row < flat.rows; row++) {
+			ByteBuffer chunk = flat.chunk(row);
+			int offset = flat.rowOffset(row);
+			for (int column = 0; column < flat.columns; column++) {
+				chunk.putInt(offset + column * 4, matrix[row][column]);
+			}
+		}
+		return flat;
+	}
+	
+	/***
+	 * Copy a rectangular long matrix into direct memory
+	 * @param matrix: the matrix to copy, every row as long as the first
+	 * @return the flat matrix
+	 */
+	public static FlatMatrix of(long[][] matrix) {
+		FlatMatrix flat = allocate(ElementType.LONG, matrix.length, matrix.length == 0 ? 0 : matrix[0].length);
+		for (int row = 0; row < flat.rows; row++) {
+			ByteBuffer chunk = flat.chunk(row);
+			int offset = flat.rowOffset(row);
+			for (int column = 0; column < flat.columns; column++) {
+				chunk.putLong(offset + column * 8, matrix[row][column]);
+			}
+		}
+		return flat;
+	}
+	
+	/***
+	 * Copy a rectangular double matrix into direct memory
+	 * @param matrix: the matrix to copy, every row as long as the first
+	 * @return the flat matrix
+	 */
+	public static FlatMatrix of(double[][] matrix) {
+		FlatMatrix flat = allocate(ElementType.DOUBLE, matrix.length, matrix.length == 0 ? 0 : matrix[0].length);
+		for (int row = 0; row < flat.rows; row++) {
+			ByteBuffer chunk = flat.chunk(row);
+			int offset = flat.rowOffset(row);
+			for (int column = 0; column < flat.columns; column++) {
+				chunk.putDouble(offset + column * 8, matrix[row][column]);
+			}
+		}
+		return flat;
+	}
+	
+	/***
+	 * Copy the matrix onto the heap
+	 * @return the elements, one array per row
+	 */
+	public int[][] toIntArray() {
+		requireType(ElementType.INT);
+		int[][] matrix = new int[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			ByteBuffer chunk = chunk(row);
+			int offset = rowOffset(row);
+			for (int column = 0; column < columns; column++) {
+				matrix[row][column] = chunk.getInt(offset + column * 4);
+			}
+		}
+		return matrix;
+	}
+	
+	/***
+	 * Copy the matrix onto the heap
+	 * @return the elements, one array per row
+	 */
+	public long[][] toLongArray() {
+		requireType(ElementType.LONG);
+		long[][] matrix = new long[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			ByteBuffer chunk = chunk(row);
+			int offset = rowOffset(row);
+			for (int column = 0; column < columns; column++) {
+				matrix[row][column] = chunk.getLong(offset + column * 8);
+			}
+		}
+		return matrix;
+	}
+	
+	/***
+	 * Copy the matrix onto the heap
+	 * @return the elements, one array per row
+	 */
+	public double[][] toDoubleArray() {
+		requireType(ElementType.DOUBLE);
+		double[][] matrix = new double[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			ByteBuffer chunk = chunk(row);
+			int offset = rowOffset(row);
+			for (int column = 0; column < columns; column++) {
+				matrix[row][column] = chunk.getDouble(offset + column * 8);
+			}
+		}
+		return matrix;
+	}
+	
+	public int getInt(int row, int column) {
+		requireType(ElementType.INT);
+		return chunk(row).getInt(elementOffset(row, column));
+	}
+	
+	public void setInt(int row, int column, int value) {
+		requireType(ElementType.INT);
+		chunk(row).putInt(elementOffset(row, column), value);
+	}
+	
+	public long getLong(int row, int column) {
+		requireType(ElementType.LONG);
+		return chunk(row).getLong(elementOffset(row, column));
+	}
+	
+	public void setLong(int row, int column, long value) {
+		requireType(ElementType.LONG);
+		chunk(row).putLong(elementOffset(row, column), value);
+	}
+	
+	public double getDouble(int row, int column) {
+		requireType(ElementType.DOUBLE);
+		return chunk(row).getDouble(elementOffset(row, column));
+	}
+	
+	public void setDouble(int row, int column, double value) {
+		requireType(ElementType.DOUBLE);
+		chunk(row).putDouble(elementOffset(row, column), value);
+	}
+	
+	public ElementType elementType() {
+		return elementType;
+	}
+	
+	public int rows() {
+		return rows;
+	}
+	
+	public int columns() {
+		return columns;
+	}
+	
+	/***
+	 * Write any changes to a mapped matrix back to its file, does nothing for a matrix in direct memory
+	 */
+	public void force() {
+		for (ByteBuffer chunk : chunks) {
+			if (chunk instanceof MappedByteBuffer) {
+				((MappedByteBuffer) chunk).force();
+			}
+		}
+	}
+	
+	/***
+	 * Mark the columns of a row that hold a zero, 0.0 and -0.0 both count for doubles
+	 * @param row: the row to scan
+	 * @param zeroColumns: the bitset of columns to mark
+	 * @return true if the row holds a zero
+	 */
+	boolean markZeroColumns(int row, long[] zeroColumns) {
+		ByteBuffer chunk = chunk(row);
+		int offset = rowOffset(row);
+		boolean found = false;
+		for (int column = 0; column < columns; column++) {
+			boolean zero;
+			if (elementType == ElementType.INT) {
+				zero = chunk.getInt(offset + column * 4) == 0;
+			}
+			else if (elementType == ElementType.LONG) {
+				zero = chunk.getLong(offset + column * 8) == 0;
+			}
+			else {
+				zero = chunk.getDouble(offset + column * 8) == 0;
+			}
+			if (zero) {
+				zeroColumns[column >>> 6] |= 1L << column;
+				found = true;
+			}
+		}
+		return found;
+	}
+	
+	/***
+	 * Set the marked columns of a row to zero, whatever the type (0.0 is all zero bits)
+	 * @param row: the row to clear
+	 * @param zeroColumns: the bitset of columns to clear
+	 */
+	void clearColumns(int row, long[] zeroColumns) {
+		ByteBuffer chunk = chunk(row);
+		int offset = rowOffset(row);
+		for (int word = 0; word < zeroColumns.length; word++) {
+			long bits = zeroColumns[word];
+			while (bits != 0) {
+				int column = (word << 6) + Long.numberOfTrailingZeros(bits);
+				if (elementType == ElementType.INT) {
+					chunk.putInt(offset + column * 4, 0);
+				}
+				else {
+					chunk.putLong(offset + column * 8, 0);
+				}
+				bits &= bits - 1;
+			}
+		}
+	}
+	
+	/***
+	 * Set every element of a row to zero
+	 */
+	void clearRow(int row) {
+		ByteBuffer chunk = chunk(row);
+		int offset = rowOffset(row);
+		for (int written = 0; written < rowBytes; written += ZEROS.length) {
+			chunk.put(offset + written, ZEROS, 0, Math.min(ZEROS.length, rowBytes - written));
+		}
+	}
+	
+	/***
+	 * Determine if two matrices have the same type, shape and elements, comparing a whole chunk at a time.
+	 * Doubles are compared by their bits, like Arrays.equals: NaN equals NaN, but 0.0 doesn't equal -0.0.
+	 */
+	boolean sameContents(FlatMatrix other) {
+		if (elementType != other.elementType || rows != other.rows || columns != other.columns) {
+			return false;
+		}
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			// absolute gets and puts never move a chunk's position, so each compares from 0 to its end
+			if (chunks[chunk].mismatch(other.chunks[chunk]) != -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private ByteBuffer chunk(int row) {
+		Objects.checkIndex(row, rows);
+		return chunks[row / chunkRows];
+	}
+	
+	private int rowOffset(int row) {
+		return (row % chunkRows) * rowBytes;
+	}
+	
+	private int elementOffset(int row, int column) {
+		Objects.checkIndex(column, columns);
+		return rowOffset(row) + column * elementType.bytes;
+	}
+	
+	private void requireType(ElementType type) {
+		if (elementType != type) {
+			throw new IllegalStateException("the matrix holds " + elementType + " elements, not " + type);
+		}
+	}
+	
+	/***
+	 * @return the number of whole rows that fit in one chunk
+	 */
+	private static int chunkRows(ElementType elementType, int columns) {
+		long rowBytes = (long) columns * elementType.bytes;
+		return rowBytes == 0 ? Integer.MAX_VALUE : (int) Math.max(1, MAX_CHUNK_BYTES / rowBytes);
+	}
+	
+	private static int chunkCount(ElementType elementType, int rows, int columns) {
+		if (rows < 0 || columns < 0) {
+			throw new IllegalArgumentException("rows and columns must not be negative: " + rows + ", " + columns);
+		}
+		if ((long) columns * elementType.bytes > MAX_CHUNK_BYTES) {
+			throw new IllegalArgumentException("a row must fit in " + MAX_CHUNK_BYTES + " bytes: " + columns + " columns");
+		}
+		if (rows == 0) {
+			return 0;
+		}
+		int chunkRows = chunkRows(elementType, columns);
+		return (int) (((long) rows + chunkRows - 1) / chunkRows);
+	}
+}
@@ -1,5 +1,10 @@
 package com.machineghost.examples;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 /***
  * There are three types of edits that can be performed on strings: 
  * insert a char, remove a char, or replace a char. Given two strings,
@@ -16,7 +21,56 @@ public class OneAwayChecker {
 	 * @param secondString: the string to compare to
 	 * @return True if the string is one away by means of insertion, deletion, or replacement of one or zero chars.
 	 */
-	public Boolean isOneAway(String firstString, String secondString) {
+	public boolean isOneAway(String firstString, String secondString) {
+		return isOneAway((CharSequence) firstString, secondString);
+	}
+	
+	/***
+	 * Determine if one char sequence is one char away from another, reading the sequences in place
+	 * @param firstString: the first sequence
+	 * @param secondString: the sequence to compare to
+	 * @return True if the sequence is one away by means of insertion, deletion, or replacement of one or zero chars.
+	 */
+	public boolean isOneAway(CharSequence firstString, CharSequence secondString) {
+		if (!CheckerMetrics.ENABLED) {
+			return oneAway(firstString, secondString);
+		}
+		long start = CheckerMetrics.IS_ONE_AWAY.start();
+		boolean result = oneAway(firstString, secondString);
+		CheckerMetrics.IS_ONE_AWAY.record(start, CheckerMetrics.length(firstString) + CheckerMetrics.length(secondString), result);
+		return result;
+	}
+	
+	/***
+	 * Determine if the text in one buffer is one char away from the text in another, without building strings.
+	 * Latin-1 bytes, and ASCII or UTF-8 bytes below 0x80, are compared in place, other text is decoded first.
+	 * Each buffer is read from its position to its limit, and the positions are left alone.
+	 * @param firstBytes: the first encoded text
+	 * @param secondBytes: the encoded text to compare to
+	 * @param charset: how both texts are encoded
+	 * @return True if the text is one away by means of insertion, deletion, or replacement of one or zero chars.
+	 */
+	public boolean isOneAway(ByteBuffer firstBytes, ByteBuffer secondBytes, Charset charset) {
+		return isOneAway(EncodedChars.decode(firstBytes, charset), EncodedChars.decode(secondBytes, charset));
+	}
+	
+	/***
+	 * Determine if the text in one byte range is one char away from the text in another, without building strings
+	 * @param firstBytes: the first encoded text
+	 * @param firstOffset: where the first text starts
+	 * @param firstLength: the number of bytes in the first text
+	 * @param secondBytes: the encoded text to compare to
+	 * @param secondOffset: where the second text starts
+	 * @param secondLength: the number of bytes in the second text
+	 * @param charset: how both texts are encoded
+	 * @return True if the text is one away by means of insertion, deletion, or replacement of one or zero chars.
+	 */
+	public boolean isOneAway(byte[] firstBytes, int firstOffset, int firstLength, byte[] secondBytes, int secondOffset, int secondLength, Charset charset) {
+		return isOneAway(EncodedChars.decode(firstBytes, firstOffset, firstLength, charset),
+				EncodedChars.decode(secondBytes, secondOffset, secondLength, charset));
+	}
+	
+	private boolean oneAway(CharSequence firstString, CharSequence secondString) {
 		
 		// if both are null, return true
 		if (firstString == null && secondString == null) {
@@ -27,25 +81,26 @@ public class OneAwayChecker {
 		}
 		
 		// if strings are identical, return true
-		if (firstString.equals(secondString)) {
+		if (EncodedChars.sameChars(firstString, secondString)) {
 			return true;
 		}
 		
 		// if one string is empty and the other isn't, but it is one char in length, return true
-		if ((firstString.isEmpty() && secondString.length() == 1)
-				|| (secondString.isEmpty() && firstString.length() == 1)) {
+		if ((firstString.length() == 0 && secondString.length() == 1)
+				|| (secondString.length() == 0 && firstString.length() == 1)) {
 			return true;
 		}
 		
-		// if the strings are one-away, return true
-		if (insertions(firstString, secondString)) {
-			return true;
+		// only one kind of edit can apply, so pick it from the length difference
+		int lengthDifference = secondString.length() - firstString.length();
+		if (lengthDifference == 1) {
+			return atMostOneEdit(firstString, secondString);
 		}
-		else if (deletions(firstString, secondString)) {
-			return true;
+		else if (lengthDifference == -1) {
+			return atMostOneEdit(secondString, firstString);
 		}
-		else if (replacements(firstString, secondString)) {
-			return true;
+		else if (lengthDifference == 0) {
+			return replacement(firstString, secondString);
 		}
 		else {
 			// all else, return false
@@ -53,23 +108,42 @@ public class OneAwayChecker {
 		}
 	}
 	
+	/***
+	 * Determine, for each pair of strings at the same index, if they are one char away
+	 * Large batches are split across cores by input length, small ones are checked on the calling thread.
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @return the result for each pair, in order
+	 */
+	public boolean[] isOneAwayBatch(String[] firstStrings, String[] secondStrings) {
+		return isOneAwayBatch(firstStrings, secondStrings, true);
+	}
+	
+	/***
+	 * Determine, for each pair of strings at the same index, if they are one char away
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @param parallel: false to check every pair on the calling thread
+	 * @return the result for each pair, in order
+	 */
+	public boolean[] isOneAwayBatch(String[] firstStrings, String[] secondStrings, boolean parallel) {
+		return PairBatch.checkAll(firstStrings, secondStrings, this::isOneAway, parallel);
+	}
+	
 	/***
 	 * Determine if two strings are one away if the second string has one more char than the first
 	 * @param firstString: the first string
 	 * @param secondString: the string to compare to
 	 * @return True if one-away
 	 */
-	public Boolean insertions(String firstString, String secondString) {
+	public boolean insertions(String firstString, String secondString) {
 		// if the second string is one more char than the first
-		// and all of the first string's chars are found in the second
+		// and skipping one char of the second leaves the first
 		// then we have a match
-		Boolean isOneAway = false;
-		if (secondString.length() - firstString.length() == 1) {
-			if (secondString.contains(firstString)) {
-				isOneAway = true;
-			}
+		if (secondString.length() - firstString.length() != 1) {
+			return false;
 		}
-		return isOneAway;
+		return atMostOneEdit(firstString, secondString);
 	}
 	
 	/***
@@ -78,17 +152,14 @@ public class OneAwayChecker {
 	 * @param secondString: the string to compare to
 	 * @return True if one-away
 	 */
-	public Boolean deletions(String firstString, String secondString) {
+	public boolean deletions(String firstString, String secondString) {
 		// if the first string is one more char than the second
-		// and all the second string's chars are found in the first
+		// and skipping one char of the first leaves the second
 		// then we have a match
-		Boolean isOneAway = false;
-		if (firstString.length() - secondString.length() == 1) {
-			if (firstString.contains(secondString)) {
-				isOneAway = true;
-			}
+		if (firstString.length() - secondString.length() != 1) {
+			return false;
 		}
-		return isOneAway;
+		return atMostOneEdit(secondString, firstString);
 	}
 	
 	/***
@@ -97,31 +168,93 @@ public class OneAwayChecker {
 	 * @param secondString: the string to compare to
 	 * @return True if one-away
 	 */
-	public Boolean replacements(String firstString, String secondString) {
+	public boolean replacements(String firstString, String secondString) {
 		// if the first and second strings are the same length
 		// and they have all the same letters in place except for one
 		// then we have a match
-		Boolean isOneAway = false;
-		if (firstString.length() == secondString.length()) {
-			int countNoMatch = 0;
-			for (int i = 0; i < firstString.length(); i++) {
-				if (firstString.charAt(i) != secondString.charAt(i)) {
-					countNoMatch++;
-					if (countNoMatch > 1) {
-						isOneAway = false;
-						break;
-					}
+		if (firstString.length() != secondString.length()) {
+			return false;
+		}
+		return replacement(firstString, secondString);
+	}
+	
+	/***
+	 * @param firstString: the first string
+	 * @param secondString: a string the same length as the first
+	 * @return true if the strings differ in at most one place
+	 */
+	private static boolean replacement(CharSequence firstString, CharSequence secondString) {
+		boolean result = atMostOneEdit(firstString, secondString);
+		if (CheckerMetrics.ENABLED) {
+			// same length, so a false answer means the walk stopped at a second mismatch
+			CheckerMetrics.REPLACEMENTS.count(!result);
+		}
+		return result;
+	}
+	
+	/***
+	 * Walk both strings with one pointer each, allowing a single mismatch.
+	 * On a mismatch the longer string's pointer skips the char (an insertion),
+	 * or both pointers move on when the lengths match (a replacement).
+	 * This is a single pass that stops at the second mismatch: O(n)
+	 * @param shorter: the shorter string, or either string if they are the same length
+	 * @param longer: a string the same length as the shorter one, or one char longer
+	 * @return true if the strings are zero or one edits apart
+	 */
+	private static boolean atMostOneEdit(CharSequence shorter, CharSequence longer) {
+		if (shorter instanceof EncodedChars && longer instanceof EncodedChars) {
+			// two byte views, compared a run of bytes at a time
+			return EncodedChars.atMostOneEdit((EncodedChars) shorter, (EncodedChars) longer);
+		}
+		
+		boolean sameLength = shorter.length() == longer.length();
+		boolean edited = false;
+		int i = 0;
+		int j = 0;
+		while (i < shorter.length() && j < longer.length()) {
+			if (shorter.charAt(i) != longer.charAt(j)) {
+				if (edited) {
+					return false;
+				}
+				edited = true;
+				if (sameLength) {
+					i++;
+				}
+			}
+			else {
+				i++;
+			}
+			j++;
+		}
+		
+		// any char left over in the longer string is the one insertion
+		return true;
+	}
+	
+	/***
+	 * Reference Levenshtein distance, used to check the one-away engine
+	 * @param firstString: the first string
+	 * @param secondString: the string to compare to
+	 * @return the number of insertions, deletions and replacements between the strings
+	 */
+	static int levenshteinDistance(String firstString, String secondString) {
+		int[][] distances = new int[firstString.length() + 1][secondString.length() + 1];
+		for (int i = 0; i <= firstString.length(); i++) {
+			for (int j = 0; j <= secondString.length(); j++) {
+				if (i == 0 || j == 0) {
+					distances[i][j] = i + j;
 				}
 				else {
-					isOneAway = true;
+					int replacement = distances[i - 1][j - 1] + (firstString.charAt(i - 1) == secondString.charAt(j - 1) ? 0 : 1);
+					distances[i][j] = Math.min(replacement, Math.min(distances[i - 1][j], distances[i][j - 1]) + 1);
 				}
 			}
 		}
-		return isOneAway;
+		return distances[firstString.length()][secondString.length()];
 	}
 	
 	public static void main(String[] args) {
-		Boolean isOneAway = false;
+		boolean isOneAway = false;
 		
 		// test 1: null and empty inputs
 		OneAwayChecker checker1 = new OneAwayChecker();
@@ -188,5 +321,134 @@ public class OneAwayChecker {
 		
 		isOneAway = checker6.isOneAway("palem", "lapem");
 		System.out.println("Test 6.2: permutations should return false. Result: " + (!isOneAway ? "test passed" : "test failed"));
+		
+		// test 7: edits away from the ends of the strings
+		OneAwayChecker checker7 = new OneAwayChecker();
+		isOneAway = checker7.isOneAway("abc", "abxc");
+		System.out.println("Test 7.1: insertion inside the string should return true. Result: " + (isOneAway ? "test passed" : "test failed"));
+		
+		isOneAway = checker7.isOneAway("abxc", "abc");
+		System.out.println("Test 7.2: deletion inside the string should return true. Result: " + (isOneAway ? "test passed" : "test failed"));
+		
+		isOneAway = checker7.isOneAway("a", "b");
+		System.out.println("Test 7.3: replacing the only char should return true. Result: " + (isOneAway ? "test passed" : "test failed"));
+		
+		isOneAway = checker7.isOneAway("abc", "xabcx");
+		System.out.println("Test 7.4: two insertions should return false. Result: " + (!isOneAway ? "test passed" : "test failed"));
+		
+		isOneAway = checker7.isOneAway("abc", "xbcd");
+		System.out.println("Test 7.5: a replacement and an insertion should return false. Result: " + (!isOneAway ? "test passed" : "test failed"));
+		
+		// test 8: property check against the reference Levenshtein distance
+		OneAwayChecker checker8 = new OneAwayChecker();
+		Random random = new Random(7);
+		int disagreements = 0;
+		for (int trial = 0; trial < 100000; trial++) {
+			String first = randomString(random, random.nextInt(7));
+			String second = random.nextBoolean() ? randomString(random, random.nextInt(7)) : randomEdit(random, first);
+			int distance = levenshteinDistance(first, second);
+			int lengthDifference = second.length() - first.length();
+			if (checker8.isOneAway(first, second) != (distance <= 1)
+					|| checker8.insertions(first, second) != (lengthDifference == 1 && distance == 1)
+					|| checker8.deletions(first, second) != (lengthDifference == -1 && distance == 1)
+					|| checker8.replacements(first, second) != (lengthDifference == 0 && distance <= 1)) {
+				disagreements++;
+			}
+		}
+		System.out.println("Test 8.1: random pairs should agree with the Levenshtein distance. Result: " + (disagreements == 0 ? "test passed" : "test failed"));
+		
+		// test 9: batches, large enough to be split across threads
+		OneAwayChecker checker9 = new OneAwayChecker();
+		String[] firstStrings = new String[50000];
+		String[] secondStrings = new String[firstStrings.length];
+		for (int i = 0; i < firstStrings.length; i++) {
+			// a few long pairs, so splits by length and by count differ
+			firstStrings[i] = i % 1000 == 0 ? randomString(random, 5000) : randomString(random, random.nextInt(7));
+			secondStrings[i] = random.nextBoolean() ? randomString(random, firstStrings[i].length()) : randomEdit(random, firstStrings[i]);
+		}
+		firstStrings[1] = null;
+		boolean[] parallelResults = checker9.isOneAwayBatch(firstStrings, secondStrings);
+		boolean[] sequentialResults = checker9.isOneAwayBatch(firstStrings, secondStrings, false);
+		boolean batchAgrees = true;
+		for (int i = 0; i < firstStrings.length; i++) {
+			boolean expected = checker9.isOneAway(firstStrings[i], secondStrings[i]);
+			batchAgrees &= parallelResults[i] == expected && sequentialResults[i] == expected;
+		}
+		System.out.println("Test 9.1: batch results should agree with single checks. Result: " + (batchAgrees ? "test passed" : "test failed"));
+		
+		boolean rejected = false;
+		try {
+			checker9.isOneAwayBatch(new String[2], new String[3]);
+		}
+		catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		System.out.println("Test 9.2: batches of different sizes should be rejected. Result: " + (rejected ? "test passed" : "test failed"));
+		
+		// test 10: char sequences and encoded bytes
+		OneAwayChecker checker10 = new OneAwayChecker();
+		isOneAway = checker10.isOneAway(new StringBuilder("pale"), new StringBuilder("ple"));
+		System.out.println("Test 10.1: a char sequence with a deletion should return true. Result: " + (isOneAway ? "test passed" : "test failed"));
+		
+		byte[] record = "xxpalesxxbakex".getBytes(StandardCharsets.UTF_8);
+		isOneAway = checker10.isOneAway(record, 2, 5, record, 9, 4, StandardCharsets.UTF_8);
+		System.out.println("Test 10.2: ASCII byte ranges two edits apart should return false. Result: " + (!isOneAway ? "test passed" : "test failed"));
+		
+		ByteBuffer firstBuffer = ByteBuffer.allocateDirect(8).put("caf\u00e9".getBytes(StandardCharsets.ISO_8859_1));
+		firstBuffer.flip();
+		ByteBuffer secondBuffer = ByteBuffer.allocateDirect(8).put("caf\u00e8".getBytes(StandardCharsets.ISO_8859_1));
+		secondBuffer.flip();
+		isOneAway = checker10.isOneAway(firstBuffer, secondBuffer, StandardCharsets.ISO_8859_1);
+		System.out.println("Test 10.3: direct Latin-1 buffers with a replacement should return true. Result: "
+				+ (isOneAway && firstBuffer.position() == 0 && firstBuffer.remaining() == 4 ? "test passed" : "test failed"));
+		
+		// the UTF-8 bytes differ in length, but the decoded strings are one char apart
+		isOneAway = checker10.isOneAway(ByteBuffer.wrap("na\u00efve".getBytes(StandardCharsets.UTF_8)),
+				ByteBuffer.wrap("naive".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+		System.out.println("Test 10.4: UTF-8 buffers with a multi-byte replacement should return true. Result: " + (isOneAway ? "test passed" : "test failed"));
+		
+		isOneAway = checker10.isOneAway((ByteBuffer) null, null, StandardCharsets.UTF_8);
+		System.out.println("Test 10.5: null buffers should return true like null strings. Result: " + (isOneAway ? "test passed" : "test failed"));
+		
+		// the byte kernel should agree with the char walk on random edits
+		Random byteRandom = new Random(10);
+		int byteDisagreements = 0;
+		for (int i = 0; i < 20000; i++) {
+			String first = randomString(byteRandom, byteRandom.nextInt(40));
+			String second = byteRandom.nextBoolean() ? randomEdit(byteRandom, first) : randomEdit(byteRandom, randomEdit(byteRandom, first));
+			byte[] firstBytes = first.getBytes(StandardCharsets.ISO_8859_1);
+			byte[] secondBytes = second.getBytes(StandardCharsets.ISO_8859_1);
+			if (checker10.isOneAway(firstBytes, 0, firstBytes.length, secondBytes, 0, secondBytes.length, StandardCharsets.ISO_8859_1) != checker10.isOneAway(first, second)) {
+				byteDisagreements++;
+			}
+		}
+		System.out.println("Test 10.6: byte ranges should agree with strings on random edits. Result: " + (byteDisagreements == 0 ? "test passed" : "test failed"));
+	}
+	
+	/***
+	 * Build a random string over a small alphabet, so random pairs are often close
+	 */
+	private static String randomString(Random random, int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			builder.append((char) ('a' + random.nextInt(3)));
+		}
+		return builder.toString();
+	}
+	
+	/***
+	 * Apply one random insertion, deletion or replacement
+	 */
+	private static String randomEdit(Random random, String string) {
+		int kind = string.isEmpty() ? 0 : random.nextInt(3);
+		int index = random.nextInt(string.length() + (kind == 0 ? 1 : 0));
+		char c = (char) ('a' + random.nextInt(3));
+		if (kind == 0) {
+			return string.substring(0, index) + c + string.substring(index);
+		}
+		else if (kind == 1) {
+			return string.substring(0, index) + string.substring(index + 1);
+		}
+		return string.substring(0, index) + c + string.substring(index + 1);
 	}
 }
@@ -0,0 +1,380 @@
+package com.machineghost.examples;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/***
+ * Find every dictionary entry within one (or k) edits of a query without comparing the query to each entry.
+ * This is a deletion-neighbourhood index (as in SymSpell): every string reachable by deleting up to k chars
+ * from an entry points back to that entry. Two strings within k edits always share such a string, so a query
+ * only looks up its own deletions and checks the few candidates it finds with BoundedEditDistanceChecker.
+ * Reads go to an immutable snapshot, so queries can run on any number of threads while a rebuild
+ * prepares the next snapshot and swaps it in.
+ *
+ */
+public class OneAwayIndex {
+	
+	// rough object sizes used for the memory footprint estimate (64-bit JVM, compressed oops)
+	private static final long STRING_OVERHEAD_BYTES = 40;
+	private static final long MAP_ENTRY_BYTES = 32;
+	private static final long ARRAY_OVERHEAD_BYTES = 16;
+	
+	private final int maxDistance;
+	private final BoundedEditDistanceChecker editDistanceChecker = new BoundedEditDistanceChecker();
+	private final Object rebuildLock = new Object();
+	private volatile Snapshot snapshot;
+	
+	/***
+	 * The entries and their deletion neighbourhoods, never changed once built
+	 *
+	 */
+	private static final class Snapshot {
+		final String[] entries;
+		final Map<String, int[]> postings;
+		final long buildTimeNanos;
+		final long memoryFootprint;
+		
+		Snapshot(String[] entries, Map<String, int[]> postings, long buildTimeNanos, long memoryFootprint) {
+			this.entries = entries;
+			this.postings = postings;
+			this.buildTimeNanos = buildTimeNanos;
+			this.memoryFootprint = memoryFootprint;
+		}
+	}
+	
+	/***
+	 * Create an empty index for one-away queries
+	 */
+	public OneAwayIndex() {
+		this(1);
+	}
+	
+	/***
+	 * Create an empty index
+	 * @param maxDistance: the most edits a query can ask for, each extra edit grows the index by about a factor of the entry length
+	 */
+	public OneAwayIndex(int maxDistance) {
+		if (maxDistance < 0) {
+			throw new IllegalArgumentException("maxDistance must not be negative: " + maxDistance);
+		}
+		this.maxDistance = maxDistance;
+		this.snapshot = build(Collections.<String>emptyList());
+	}
+	
+	/***
+	 * Replace the indexed entries. Queries keep using the old entries until the new ones are ready.
+	 * @param entries: the dictionary entries, nulls are skipped
+	 */
+	public void rebuild(Collection<String> entries) {
+		synchronized (rebuildLock) {
+			snapshot = build(entries);
+		}
+	}
+	
+	/***
+	 * Replace the indexed entries on another thread
+	 * @param entries: the dictionary entries, nulls are skipped
+	 * @param executor: the executor to build on
+	 * @return a future that completes once the new entries are visible to queries
+	 */
+	public CompletableFuture<Void> rebuildInBackground(Collection<String> entries, Executor executor) {
+		return CompletableFuture.runAsync(() -> rebuild(entries), executor);
+	}
+	
+	/***
+	 * Find every entry within the index's edit bound of a query
+	 * @param query: the string to look up
+	 * @return the matching entries, in the order they were given to rebuild
+	 */
+	public List<String> findWithinEdits(String query) {
+		return findWithinEdits(query, maxDistance);
+	}
+	
+	/***
+	 * Find every entry within a number of edits of a query
+	 * @param query: the string to look up
+	 * @param distance: the most edits allowed, at most the index's bound
+	 * @return the matching entries, in the order they were given to rebuild
+	 */
+	public List<String> findWithinEdits(String query, int distance) {
+		if (distance < 0 || distance > maxDistance) {
+			throw new IllegalArgumentException("distance must be between 0 and " + maxDistance + ": " + distance);
+		}
+		if (query == null) {
+			return Collections.emptyList();
+		}
+		
+		// read the snapshot once, so a rebuild halfway through the query can't mix two dictionaries
+		Snapshot current = snapshot;
+		int[] candidates = new int[16];
+		int candidateCount = 0;
+		for (String deletion : deletions(query, distance)) {
+			int[] ids = current.postings.get(deletion);
+			if (ids == null) {
+				continue;
+			}
+			if (candidateCount + ids.length > candidates.length) {
+				candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, candidateCount + ids.length));
+			}
+			System.arraycopy(ids, 0, candidates, candidateCount, ids.length);
+			candidateCount += ids.length;
+		}
+		
+		// the same entry is usually reached through several deletions, so sort and skip repeats
+		Arrays.sort(candidates, 0, candidateCount);
+		List<String> matches = new ArrayList<String>();
+		for (int i = 0; i < candidateCount; i++) {
+			if (i > 0 && candidates[i] == candidates[i - 1]) {
+				continue;
+			}
+			String entry = current.entries[candidates[i]];
+			if (editDistanceChecker.isWithinEdits(query, entry, distance)) {
+				matches.add(entry);
+			}
+		}
+		return matches;
+	}
+	
+	/***
+	 * Get the number of indexed entries
+	 * @return the number of entries
+	 */
+	public int size() {
+		return snapshot.entries.length;
+	}
+	
+	/***
+	 * Get how long the current entries took to index
+	 * @return the build time in nanoseconds
+	 */
+	public long buildTimeNanos() {
+		return snapshot.buildTimeNanos;
+	}
+	
+	/***
+	 * Estimate the heap used by the current entries: the entries, the deletion keys and their posting lists
+	 * @return the estimated footprint in bytes
+	 */
+	public long memoryFootprint() {
+		return snapshot.memoryFootprint;
+	}
+	
+	/***
+	 * Index a set of entries
+	 * @param entries: the dictionary entries, nulls are skipped
+	 * @return the new snapshot
+	 */
+	private Snapshot build(Collection<String> entries) {
+		long start = System.nanoTime();
+		List<String> kept = new ArrayList<String>(entries.size());
+		for (String entry : entries) {
+			if (entry != null) {
+				kept.add(entry);
+			}
+		}
+		String[] entryArray = kept.toArray(new String[0]);
+		
+		// collect ids per deletion, then trim each list to an exact-size array
+		Map<String, int[]> growing = new HashMap<String, int[]>();
+		for (int id = 0; id < entryArray.length; id++) {
+			for (String deletion : deletions(entryArray[id], maxDistance)) {
+				int[] ids = growing.get(deletion);
+				if (ids == null) {
+					ids = new int[] { 0, 0 };
+					growing.put(deletion, ids);
+				}
+				else if (ids[0] + 1 == ids.length) {
+					ids = Arrays.copyOf(ids, ids.length * 2);
+					growing.put(deletion, ids);
+				}
+				// slot 0 holds the count while building
+				ids[0]++;
+				ids[ids[0]] = id;
+			}
+		}
+		
+		Map<String, int[]> postings = new HashMap<String, int[]>(growing.size() * 2);
+		long bytes = ARRAY_OVERHEAD_BYTES + 4L * entryArray.length;
+		for (String entry : entryArray) {
+			bytes += stringBytes(entry);
+		}
+		for (Map.Entry<String, int[]> posting : growing.entrySet()) {
+			int[] ids = posting.getValue();
+			int[] trimmed = Arrays.copyOfRange(ids, 1, ids[0] + 1);
+			postings.put(posting.getKey(), trimmed);
+			bytes += MAP_ENTRY_BYTES + stringBytes(posting.getKey()) + ARRAY_OVERHEAD_BYTES + 4L * trimmed.length;
+		}
+		return new Snapshot(entryArray, postings, System.nanoTime() - start, bytes);
+	}
+	
+	/***
+	 * Find every distinct string reachable by deleting up to a number of chars
+	 * @param string: the string to delete from
+	 * @param distance: the most chars to delete
+	 * @return the deletions, including the string itself
+	 */
+	private static Set<String> deletions(String string, int distance) {
+		Set<String> deletions = new HashSet<String>();
+		deletions.add(string);
+		List<String> frontier = Collections.singletonList(string);
+		for (int round = 0; round < distance; round++) {
+			List<String> next = new ArrayList<String>();
+			for (String current : frontier) {
+				for (int i = 0; i < current.length(); i++) {
+					String deletion = current.substring(0, i) + current.substring(i + 1);
+					if (deletions.add(deletion)) {
+						next.add(deletion);
+					}
+				}
+			}
+			frontier = next;
+		}
+		return deletions;
+	}
+	
+	/***
+	 * Estimate the heap used by a string
+	 * @param string: the string to measure
+	 * @return the estimated size in bytes
+	 */
+	private static long stringBytes(String string) {
+		return STRING_OVERHEAD_BYTES + 2L * string.length();
+	}
+	
+	public static void main(String[] args) throws Exception {
+		List<String> matches;
+		
+		// test 1: empty index and null queries
+		OneAwayIndex index1 = new OneAwayIndex();
+		matches = index1.findWithinEdits("abc");
+		System.out.println("Test 1.1: empty index should find nothing. Result: " + (matches.isEmpty() ? "test passed" : "test failed"));
+		
+		index1.rebuild(Arrays.asList("abc", null));
+		matches = index1.findWithinEdits(null);
+		System.out.println("Test 1.2: null query should find nothing. Result: " + (matches.isEmpty() && index1.size() == 1 ? "test passed" : "test failed"));
+		
+		// test 2: one-away lookups
+		OneAwayIndex index2 = new OneAwayIndex();
+		index2.rebuild(Arrays.asList("pale", "ple", "pales", "bale", "bake", "taco", "ocat"));
+		matches = index2.findWithinEdits("pale");
+		System.out.println("Test 2.1: insertions, deletions and replacements should be found. Result: "
+				+ (matches.equals(Arrays.asList("pale", "ple", "pales", "bale")) ? "test passed" : "test failed"));
+		
+		matches = index2.findWithinEdits("taco", 0);
+		System.out.println("Test 2.2: zero edits should only find the exact entry. Result: " + (matches.equals(Arrays.asList("taco")) ? "test passed" : "test failed"));
+		
+		matches = index2.findWithinEdits("xyz");
+		System.out.println("Test 2.3: unrelated query should find nothing. Result: " + (matches.isEmpty() ? "test passed" : "test failed"));
+		
+		// test 3: k edits agree with a linear scan
+		OneAwayIndex index3 = new OneAwayIndex(2);
+		Random random = new Random(9);
+		List<String> dictionary = new ArrayList<String>();
+		for (int i = 0; i < 2000; i++) {
+			dictionary.add(randomString(random, 3 + random.nextInt(5)));
+		}
+		index3.rebuild(dictionary);
+		BoundedEditDistanceChecker checker = new BoundedEditDistanceChecker();
+		int disagreements = 0;
+		for (int trial = 0; trial < 500; trial++) {
+			String query = randomString(random, 2 + random.nextInt(7));
+			int distance = random.nextInt(3);
+			List<String> expected = new ArrayList<String>();
+			for (String entry : dictionary) {
+				if (checker.isWithinEdits(query, entry, distance)) {
+					expected.add(entry);
+				}
+			}
+			if (!expected.equals(index3.findWithinEdits(query, distance))) {
+				disagreements++;
+			}
+		}
+		System.out.println("Test 3.1: index should agree with a linear scan. Result: " + (disagreements == 0 ? "test passed" : "test failed"));
+		
+		boolean statsReported = index3.buildTimeNanos() > 0 && index3.memoryFootprint() > 0;
+		System.out.println("Test 3.2: build time and memory should be reported. Result: " + (statsReported ? "test passed" : "test failed"));
+		
+		// test 4: queries keep working while a rebuild runs on another thread
+		final OneAwayIndex index4 = new OneAwayIndex();
+		index4.rebuild(Arrays.asList("pale", "ple", "bale", "taco"));
+		List<String> oldAnswer = Arrays.asList("pale", "ple", "bale");
+		final List<String> newDictionary = new ArrayList<String>(dictionary);
+		newDictionary.add("pales");
+		newDictionary.add("bake");
+		List<String> newAnswer = Arrays.asList("pales");
+		
+		// the new entries hold the rebuild partway through until the queries below have run against it
+		final CountDownLatch building = new CountDownLatch(1);
+		final CountDownLatch queried = new CountDownLatch(1);
+		Collection<String> gatedDictionary = new AbstractCollection<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				building.countDown();
+				try {
+					queried.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return newDictionary.iterator();
+			}
+			
+			@Override
+			public int size() {
+				return newDictionary.size();
+			}
+		};
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CompletableFuture<Void> rebuilt = index4.rebuildInBackground(gatedDictionary, executor);
+		building.await();
+		boolean consistent = true;
+		int overlapping = 0;
+		while (!rebuilt.isDone()) {
+			// each answer must be exactly one dictionary's answer, never a mix
+			List<String> found = index4.findWithinEdits("pale");
+			if (!found.equals(oldAnswer) && !found.equals(newAnswer)) {
+				consistent = false;
+			}
+			if (!rebuilt.isDone()) {
+				overlapping++;
+			}
+			if (overlapping == 100) {
+				queried.countDown();
+			}
+		}
+		rebuilt.get();
+		executor.shutdown();
+		System.out.println("Test 4.1: queries during a rebuild should see one whole dictionary. Result: "
+				+ (consistent && overlapping >= 100 ? "test passed" : "test failed"));
+		
+		matches = index4.findWithinEdits("pale");
+		System.out.println("Test 4.2: queries after a rebuild should see the new dictionary. Result: "
+				+ (matches.equals(newAnswer) && index4.size() == newDictionary.size() ? "test passed" : "test failed"));
+	}
+	
+	/***
+	 * Build a random string over a small alphabet, so random entries are often close
+	 */
+	private static String randomString(Random random, int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			builder.append((char) ('a' + random.nextInt(4)));
+		}
+		return builder.toString();
+	}
+}
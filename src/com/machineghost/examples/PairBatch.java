@@ -0,0 +1,116 @@
+package com.machineghost.examples;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/***
+ * Run a pair check over two arrays of strings, splitting the work across the fork-join common pool.
+ * Splits are made by the number of chars in each half rather than the number of pairs, so a few long
+ * pairs don't leave one worker busy while the others steal nothing. The checkers keep their scratch
+ * buffers per thread, so each worker reuses its own for every pair it checks.
+ *
+ */
+final class PairBatch {
+	
+	// below this many chars a batch, or a split of one, is checked on a single thread
+	static final int SEQUENTIAL_THRESHOLD = 1 << 16;
+	
+	/***
+	 * A check of one pair of strings, like OneAwayChecker.isOneAway
+	 *
+	 */
+	@FunctionalInterface
+	interface PairCheck {
+		boolean check(String firstString, String secondString);
+	}
+	
+	private PairBatch() { }
+	
+	/***
+	 * Check every pair of strings at the same index in two arrays
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair
+	 * @param check: the check to run on each pair
+	 * @param parallel: false to check every pair on the calling thread
+	 * @return the result of the check for each pair, in order
+	 */
+	static boolean[] checkAll(String[] firstStrings, String[] secondStrings, PairCheck check, boolean parallel) {
+		if (firstStrings.length != secondStrings.length) {
+			throw new IllegalArgumentException("batches must be the same size: " + firstStrings.length + " and " + secondStrings.length);
+		}
+		
+		boolean[] results = new boolean[firstStrings.length];
+		if (!parallel || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			checkRange(firstStrings, secondStrings, check, results, 0, results.length);
+			return results;
+		}
+		
+		// weights[i] is the number of chars in the pairs before i, counting each pair as at least one
+		long[] weights = new long[results.length + 1];
+		for (int i = 0; i < results.length; i++) {
+			weights[i + 1] = weights[i] + length(firstStrings[i]) + length(secondStrings[i]) + 1;
+		}
+		if (weights[results.length] < SEQUENTIAL_THRESHOLD) {
+			checkRange(firstStrings, secondStrings, check, results, 0, results.length);
+		}
+		else {
+			ForkJoinPool.commonPool().invoke(new CheckTask(firstStrings, secondStrings, check, results, weights, 0, results.length));
+		}
+		return results;
+	}
+	
+	private static void checkRange(String[] firstStrings, String[] secondStrings, PairCheck check, boolean[] results, int from, int to) {
+		for (int i = from; i < to; i++) {
+			results[i] = check.check(firstStrings[i], secondStrings[i]);
+		}
+	}
+	
+	private static int length(String string) {
+		return string == null ? 0 : string.length();
+	}
+	
+	/***
+	 * Checks a range of pairs, splitting it where half of its chars fall on each side until the range is small
+	 *
+	 */
+	private static final class CheckTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final String[] firstStrings;
+		private final String[] secondStrings;
+		private final PairCheck check;
+		private final boolean[] results;
+		private final long[] weights;
+		private final int from;
+		private final int to;
+		
+		CheckTask(String[] firstStrings, String[] secondStrings, PairCheck check, boolean[] results, long[] weights, int from, int to) {
+			this.firstStrings = firstStrings;
+			this.secondStrings = secondStrings;
+			this.check = check;
+			this.results = results;
+			this.weights = weights;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			long weight = weights[to] - weights[from];
+			if (weight <= SEQUENTIAL_THRESHOLD || to - from < 2) {
+				checkRange(firstStrings, secondStrings, check, results, from, to);
+				return;
+			}
+			
+			// find the first pair past the halfway weight, keeping at least one pair on each side
+			int middle = Arrays.binarySearch(weights, from + 1, to, weights[from] + weight / 2);
+			if (middle < 0) {
+				middle = -middle - 1;
+			}
+			middle = Math.max(from + 1, Math.min(to - 1, middle));
+			invokeAll(new CheckTask(firstStrings, secondStrings, check, results, weights, from, middle),
+					new CheckTask(firstStrings, secondStrings, check, results, weights, middle, to));
+		}
+	}
+}
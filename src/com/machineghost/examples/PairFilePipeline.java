@@ -0,0 +1,780 @@
+package com.machineghost.examples;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * Run a pair check over every line of a file of tab-separated pairs, writing one result per line.
+ * The file is memory-mapped in windows of at least CHUNK_BYTES that end on line breaks, and each window
+ * is cut into chunks that also end on line breaks, so small chunks balance the work without a mapping
+ * each. Every chunk is checked on its own fork-join worker. Within a chunk, tabs and line breaks are
+ * found eight bytes at a time, and fields are handed to the checker as EncodedChars views over the
+ * mapped bytes, so ASCII input is checked without a String, or a copy, per field. Results are kept as
+ * a bitmap per chunk, then written in line order as a bitmap or as text.
+ * The charset must encode ASCII as single bytes, as UTF-8 and the ISO-8859 family do, since the tabs and
+ * line breaks are found as bytes.
+ * Each run reports its stages: splitting the file, mapping windows, scanning and checking chunks, and
+ * writing, so it shows whether a job is waiting on the disk or on the checker.
+ *
+ */
+public final class PairFilePipeline {
+	
+	// each mapped window, and by default each chunk, is at least this long, and ends at the first line break after it
+	static final int CHUNK_BYTES = 16 * 1024 * 1024;
+	
+	// the smallest chunk allowed, below this the per-chunk work costs more than the lines in it
+	static final int MIN_CHUNK_BYTES = 4096;
+	
+	// the output is written through a buffer of this size
+	private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+	
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long TABS = ONES * '\t';
+	private static final long NEWLINES = ONES * '\n';
+	
+	/***
+	 * The checks a pipeline can run on each pair
+	 *
+	 */
+	public enum Check {
+		ONE_AWAY, PERMUTATION, ROTATION
+	}
+	
+	/***
+	 * The output formats
+	 *
+	 */
+	public enum Output {
+		// bit i of the file, counting from the low bit of the first byte, is the result for line i
+		BITMAP,
+		// one line per pair, 1 or 0
+		TEXT
+	}
+	
+	/***
+	 * A check of one pair of fields
+	 *
+	 */
+	@FunctionalInterface
+	private interface FieldCheck {
+		boolean check(CharSequence firstField, CharSequence secondField);
+	}
+	
+	private final FieldCheck fieldCheck;
+	private final Charset charset;
+	private final int chunkBytes;
+	private final int windowBytes;
+	private final boolean parallel;
+	
+	/***
+	 * @param check: the check to run on each pair
+	 * @param charset: how the file is encoded, a charset that encodes ASCII as single bytes
+	 * @throws IllegalArgumentException if the charset doesn't encode ASCII as single bytes
+	 */
+	public PairFilePipeline(Check check, Charset charset) {
+		this(check, charset, CHUNK_BYTES, true);
+	}
+	
+	/***
+	 * @param check: the check to run on each pair
+	 * @param charset: how the file is encoded, a charset that encodes ASCII as single bytes
+	 * @param chunkBytes: the least size of a chunk, at least MIN_CHUNK_BYTES
+	 * @param parallel: false to check every chunk on the calling thread
+	 */
+	PairFilePipeline(Check check, Charset charset, int chunkBytes, boolean parallel) {
+		this(check, charset, chunkBytes, CHUNK_BYTES, parallel);
+	}
+	
+	/***
+	 * @param check: the check to run on each pair
+	 * @param charset: how the file is encoded, a charset that encodes ASCII as single bytes
+	 * @param chunkBytes: the least size of a chunk, at least MIN_CHUNK_BYTES
+	 * @param windowBytes: the least size of a mapped window, raised to chunkBytes if smaller
+	 * @param parallel: false to check every chunk on the calling thread
+	 */
+	PairFilePipeline(Check check, Charset charset, int chunkBytes, int windowBytes, boolean parallel) {
+		if (check == null || charset == null) {
+			throw new IllegalArgumentException("a check and a charset are required");
+		}
+		if (!encodesAsciiAsBytes(charset)) {
+			throw new IllegalArgumentException("tabs and line breaks are found as bytes, so " + charset + " can't be split");
+		}
+		if (chunkBytes < MIN_CHUNK_BYTES) {
+			throw new IllegalArgumentException("chunks must be at least " + MIN_CHUNK_BYTES + " bytes: " + chunkBytes);
+		}
+		this.charset = charset;
+		this.chunkBytes = chunkBytes;
+		this.windowBytes = Math.max(chunkBytes, windowBytes);
+		this.parallel = parallel;
+		switch (check) {
+			case ONE_AWAY:
+				fieldCheck = new OneAwayChecker()::isOneAway;
+				break;
+			case PERMUTATION:
+				fieldCheck = new PermutationChecker()::stringIsPermutationOfAnotherOptimized;
+				break;
+			default:
+				fieldCheck = new StringRotationChecker()::isRotation;
+				break;
+		}
+	}
+	
+	/***
+	 * Check that a charset encodes every ASCII char as the same single byte, so a tab or line break byte
+	 * is always a tab or line break, never part of another char
+	 */
+	private static boolean encodesAsciiAsBytes(Charset charset) {
+		if (!charset.canEncode()) {
+			return false;
+		}
+		byte[] ascii = new byte[128];
+		for (int i = 0; i < ascii.length; i++) {
+			ascii[i] = (byte) i;
+		}
+		return Arrays.equals(new String(ascii, StandardCharsets.US_ASCII).getBytes(charset), ascii);
+	}
+	
+	/***
+	 * The size and per-stage timing of one run
+	 *
+	 */
+	public static final class Report {
+		private final long inputBytes;
+		private final long pairs;
+		private final long matches;
+		private final int chunks;
+		private final int windows;
+		private final long splitNanos;
+		private final long mapNanos;
+		private final long scanNanos;
+		private final long checkStageNanos;
+		private final long writeNanos;
+		
+		Report(long inputBytes, long pairs, long matches, int chunks, int windows, long splitNanos, long mapNanos, long scanNanos, long checkStageNanos, long writeNanos) {
+			this.inputBytes = inputBytes;
+			this.pairs = pairs;
+			this.matches = matches;
+			this.chunks = chunks;
+			this.windows = windows;
+			this.splitNanos = splitNanos;
+			this.mapNanos = mapNanos;
+			this.scanNanos = scanNanos;
+			this.checkStageNanos = checkStageNanos;
+			this.writeNanos = writeNanos;
+		}
+		
+		public long getInputBytes() {
+			return inputBytes;
+		}
+		
+		public long getPairs() {
+			return pairs;
+		}
+		
+		/***
+		 * @return the number of pairs the check was true for
+		 */
+		public long getMatches() {
+			return matches;
+		}
+		
+		public int getChunks() {
+			return chunks;
+		}
+		
+		/***
+		 * @return the number of memory-mapped windows the chunks were cut from
+		 */
+		public int getWindows() {
+			return windows;
+		}
+		
+		/***
+		 * @return the time spent finding the window and chunk boundaries
+		 */
+		public long getSplitNanos() {
+			return splitNanos;
+		}
+		
+		/***
+		 * @return the time spent mapping windows
+		 */
+		public long getMapNanos() {
+			return mapNanos;
+		}
+		
+		/***
+		 * @return the time spent parsing and checking chunks, page faults included, summed over the workers
+		 */
+		public long getScanNanos() {
+			return scanNanos;
+		}
+		
+		/***
+		 * @return the elapsed time of the parallel stage, parsing and checking every chunk
+		 */
+		public long getCheckStageNanos() {
+			return checkStageNanos;
+		}
+		
+		public long getWriteNanos() {
+			return writeNanos;
+		}
+		
+		public long getTotalNanos() {
+			return splitNanos + mapNanos + checkStageNanos + writeNanos;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%,d pairs (%,d true) in %,d bytes, %d chunks in %d windows%n"
+					+ "split %.1f ms, map %.1f ms, check %.1f ms (scan %.1f ms across workers), write %.1f ms%n"
+					+ "total %.1f ms, %.1f MB/s, %.1f MB/s in the check stage",
+					pairs, matches, inputBytes, chunks, windows,
+					splitNanos / 1e6, mapNanos / 1e6, checkStageNanos / 1e6, scanNanos / 1e6, writeNanos / 1e6,
+					getTotalNanos() / 1e6, megabytesPerSecond(getTotalNanos()), megabytesPerSecond(checkStageNanos));
+		}
+		
+		private double megabytesPerSecond(long nanos) {
+			return nanos == 0 ? 0 : inputBytes * 1e3 / nanos;
+		}
+	}
+	
+	/***
+	 * Check every pair in a file, writing the results in line order
+	 * @param input: the file of pairs, one per line as first, tab, second, with \n or \r\n line breaks
+	 * @param output: the file to write the results to, replacing it, or null to only count them
+	 * @param format: how to write the results
+	 * @return the sizes and timing of the run
+	 * @throws IOException if the input can't be read or the output can't be written
+	 * @throws IllegalArgumentException if a line has no tab
+	 */
+	public Report run(Path input, Path output, Output format) throws IOException {
+		if (input == null || (output != null && format == null)) {
+			throw new IllegalArgumentException("an input file, and a format for the output, are required");
+		}
+		
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long start = System.nanoTime();
+			long[] windowBoundaries = split(channel, size, windowBytes);
+			long splitNanos = System.nanoTime() - start;
+			
+			// one mapping per window, however small the chunks are
+			start = System.nanoTime();
+			int windowCount = windowBoundaries.length - 1;
+			ByteBuffer[] windows = new ByteBuffer[windowCount];
+			for (int window = 0; window < windowCount; window++) {
+				long windowSize = windowBoundaries[window + 1] - windowBoundaries[window];
+				if (windowSize > Integer.MAX_VALUE) {
+					throw new IllegalArgumentException("a line starting before byte " + windowBoundaries[window] + " is too long to map");
+				}
+				// little-endian, so the first byte of the file is the low byte of each word the scan reads
+				windows[window] = channel.map(FileChannel.MapMode.READ_ONLY, windowBoundaries[window], windowSize).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			long mapNanos = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			Chunks chunks = cut(windows, windowBoundaries, chunkBytes);
+			splitNanos += System.nanoTime() - start;
+			
+			int chunkCount = chunks.count;
+			long[][] results = new long[chunkCount][];
+			int[] pairCounts = new int[chunkCount];
+			LongAdder scanNanos = new LongAdder();
+			start = System.nanoTime();
+			if (!parallel || chunkCount < 2 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+				for (int chunk = 0; chunk < chunkCount; chunk++) {
+					checkChunk(chunks, chunk, results, pairCounts, scanNanos);
+				}
+			}
+			else {
+				ForkJoinPool.commonPool().invoke(new ChunkTask(chunks, results, pairCounts, scanNanos, 0, chunkCount));
+			}
+			long checkStageNanos = System.nanoTime() - start;
+			
+			long pairs = 0;
+			long matches = 0;
+			for (int chunk = 0; chunk < chunkCount; chunk++) {
+				pairs += pairCounts[chunk];
+				for (long word : results[chunk]) {
+					matches += Long.bitCount(word);
+				}
+			}
+			
+			start = System.nanoTime();
+			if (output != null) {
+				write(output, format, results, pairCounts);
+			}
+			long writeNanos = System.nanoTime() - start;
+			
+			return new Report(size, pairs, matches, chunkCount, windowCount, splitNanos, mapNanos, scanNanos.sum(), checkStageNanos, writeNanos);
+		}
+	}
+	
+	/***
+	 * The chunks of a file, each a range of lines within one mapped window
+	 *
+	 */
+	private static final class Chunks {
+		final ByteBuffer[] windows;
+		final long[] windowStarts;
+		int[] windowOf = new int[16];
+		int[] starts = new int[16];
+		int[] ends = new int[16];
+		int count;
+		
+		Chunks(ByteBuffer[] windows, long[] windowStarts) {
+			this.windows = windows;
+			this.windowStarts = windowStarts;
+		}
+		
+		void add(int window, int start, int end) {
+			if (count == starts.length) {
+				windowOf = Arrays.copyOf(windowOf, count * 2);
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+			}
+			windowOf[count] = window;
+			starts[count] = start;
+			ends[count] = end;
+			count++;
+		}
+	}
+	
+	/***
+	 * Cut each window into chunks of at least chunkBytes that each end just after a line break, or at the window's end
+	 */
+	private static Chunks cut(ByteBuffer[] windows, long[] windowBoundaries, int chunkBytes) {
+		Chunks chunks = new Chunks(windows, windowBoundaries);
+		for (int window = 0; window < windows.length; window++) {
+			ByteBuffer bytes = windows[window];
+			int length = bytes.capacity();
+			int chunkStart = 0;
+			while (chunkStart < length) {
+				// a line starts after a line break, so look from the byte before
+				int chunkEnd = length - chunkStart <= chunkBytes ? length
+						: Math.min(length, nextDelimiter(bytes, chunkStart + chunkBytes - 1, length, NEWLINES, NEWLINES) + 1);
+				chunks.add(window, chunkStart, chunkEnd);
+				chunkStart = chunkEnd;
+			}
+		}
+		return chunks;
+	}
+	
+	/***
+	 * Cut a file into windows of at least windowBytes that each end just after a line break, or at the end
+	 * @return the offset each window starts at, followed by the file's size
+	 */
+	static long[] split(FileChannel channel, long size, int windowBytes) throws IOException {
+		long[] boundaries = new long[16];
+		int count = 1;
+		ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+		long position = windowBytes;
+		while (position < size) {
+			long next = lineStartFrom(channel, buffer, position, size);
+			if (next >= size) {
+				break;
+			}
+			if (count == boundaries.length - 1) {
+				boundaries = Arrays.copyOf(boundaries, boundaries.length * 2);
+			}
+			boundaries[count++] = next;
+			position = next + windowBytes;
+		}
+		boundaries[count++] = size;
+		return Arrays.copyOf(boundaries, count);
+	}
+	
+	/***
+	 * @return the offset of the first line that starts at or after a position, or the size if there is none
+	 */
+	private static long lineStartFrom(FileChannel channel, ByteBuffer buffer, long position, long size) throws IOException {
+		// a line starts after a line break, so look from the byte before
+		long offset = position - 1;
+		while (offset < size) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return size;
+	}
+	
+	/***
+	 * Check every line in one chunk, and keep its results
+	 */
+	private void checkChunk(Chunks chunks, int chunk, long[][] results, int[] pairCounts, LongAdder scanNanos) {
+		long start = System.nanoTime();
+		int window = chunks.windowOf[chunk];
+		ByteBuffer bytes = chunks.windows[window];
+		int chunkStart = chunks.starts[chunk];
+		int chunkEnd = chunks.ends[chunk];
+		
+		// a guess of one pair per 16 bytes, grown if the lines are shorter
+		long[] bits = new long[Math.max(1, (chunkEnd - chunkStart) >>> 10)];
+		int pairs = 0;
+		int lineStart = chunkStart;
+		while (lineStart < chunkEnd) {
+			int tab = nextDelimiter(bytes, lineStart, chunkEnd, TABS, NEWLINES);
+			if (tab == chunkEnd || bytes.get(tab) != '\t') {
+				throw new IllegalArgumentException("the line at byte " + (chunks.windowStarts[window] + lineStart) + " has no tab");
+			}
+			int lineEnd = nextDelimiter(bytes, tab + 1, chunkEnd, NEWLINES, NEWLINES);
+			int secondEnd = lineEnd > tab + 1 && bytes.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+			
+			boolean result = fieldCheck.check(EncodedChars.decode(bytes, lineStart, tab - lineStart, charset),
+					EncodedChars.decode(bytes, tab + 1, secondEnd - tab - 1, charset));
+			if (pairs == bits.length * Long.SIZE) {
+				bits = Arrays.copyOf(bits, bits.length * 2);
+			}
+			if (result) {
+				bits[pairs >>> 6] |= 1L << pairs;
+			}
+			pairs++;
+			lineStart = lineEnd + 1;
+		}
+		
+		results[chunk] = bits;
+		pairCounts[chunk] = pairs;
+		scanNanos.add(System.nanoTime() - start);
+	}
+	
+	/***
+	 * Find the first byte in a range that is one of two delimiters, reading eight bytes at a time
+	 * @param bytes: a little-endian buffer
+	 * @param from: the first index to look at
+	 * @param to: the index after the last one to look at
+	 * @param first: the first delimiter repeated in every byte of a long
+	 * @param second: the second delimiter repeated in every byte of a long
+	 * @return the index of the delimiter, or to if there is none
+	 */
+	static int nextDelimiter(ByteBuffer bytes, int from, int to, long first, long second) {
+		int i = from;
+		for (; i + Long.BYTES <= to; i += Long.BYTES) {
+			long word = bytes.getLong(i);
+			// the lowest high bit set marks the first byte equal to a delimiter, higher ones may be false hits
+			long found = zeroBytes(word ^ first) | zeroBytes(word ^ second);
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		byte firstByte = (byte) first;
+		byte secondByte = (byte) second;
+		for (; i < to; i++) {
+			byte b = bytes.get(i);
+			if (b == firstByte || b == secondByte) {
+				return i;
+			}
+		}
+		return to;
+	}
+	
+	/***
+	 * @return a high bit in the lowest zero byte of a word, and possibly in some bytes above it
+	 */
+	private static long zeroBytes(long word) {
+		return (word - ONES) & ~word & HIGH_BITS;
+	}
+	
+	/***
+	 * Write every chunk's results in order
+	 */
+	private static void write(Path output, Output format, long[][] results, int[] pairCounts) throws IOException {
+		try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			
+			// bits not yet written, which chunks of any length shift into place
+			long pending = 0;
+			int pendingBits = 0;
+			for (int chunk = 0; chunk < results.length; chunk++) {
+				long[] bits = results[chunk];
+				int pairs = pairCounts[chunk];
+				for (int word = 0; word * Long.SIZE < pairs; word++) {
+					int wordBits = Math.min(Long.SIZE, pairs - word * Long.SIZE);
+					if (format == Output.TEXT) {
+						if (buffer.remaining() < 2 * Long.SIZE) {
+							flush(channel, buffer);
+						}
+						for (int bit = 0; bit < wordBits; bit++) {
+							buffer.put((bits[word] & (1L << bit)) != 0 ? (byte) '1' : (byte) '0').put((byte) '\n');
+						}
+						continue;
+					}
+					
+					long value = wordBits == Long.SIZE ? bits[word] : bits[word] & ((1L << wordBits) - 1);
+					pending |= value << pendingBits;
+					if (pendingBits + wordBits >= Long.SIZE) {
+						if (buffer.remaining() < Long.BYTES) {
+							flush(channel, buffer);
+						}
+						buffer.putLong(pending);
+						pending = pendingBits == 0 ? 0 : value >>> (Long.SIZE - pendingBits);
+						pendingBits += wordBits - Long.SIZE;
+					}
+					else {
+						pendingBits += wordBits;
+					}
+				}
+			}
+			
+			// the last partial word, in as few bytes as hold it
+			for (int written = 0; written < pendingBits; written += Byte.SIZE) {
+				if (!buffer.hasRemaining()) {
+					flush(channel, buffer);
+				}
+				buffer.put((byte) (pending >>> written));
+			}
+			flush(channel, buffer);
+		}
+	}
+	
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/***
+	 * Checks a range of chunks, splitting it in half until one chunk is left
+	 *
+	 */
+	private final class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Chunks chunks;
+		private final long[][] results;
+		private final int[] pairCounts;
+		private final LongAdder scanNanos;
+		private final int from;
+		private final int to;
+		
+		ChunkTask(Chunks chunks, long[][] results, int[] pairCounts, LongAdder scanNanos, int from, int to) {
+			this.chunks = chunks;
+			this.results = results;
+			this.pairCounts = pairCounts;
+			this.scanNanos = scanNanos;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				checkChunk(chunks, from, results, pairCounts, scanNanos);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ChunkTask(chunks, results, pairCounts, scanNanos, from, middle),
+					new ChunkTask(chunks, results, pairCounts, scanNanos, middle, to));
+		}
+	}
+	
+	/***
+	 * Check every line of a file the way the nightly jobs did, with a reader, split and the String checkers
+	 * @return the result for each line
+	 */
+	static boolean[] checkWithReader(Path input, Check check, Charset charset) throws IOException {
+		OneAwayChecker oneAway = new OneAwayChecker();
+		PermutationChecker permutation = new PermutationChecker();
+		StringRotationChecker rotation = new StringRotationChecker();
+		List<String> lines = Files.readAllLines(input, charset);
+		boolean[] results = new boolean[lines.size()];
+		for (int i = 0; i < results.length; i++) {
+			String[] fields = lines.get(i).split("\t", 2);
+			results[i] = check == Check.ONE_AWAY ? oneAway.isOneAway(fields[0], fields[1])
+					: check == Check.PERMUTATION ? permutation.stringIsPermutationOfAnotherOptimized(fields[0], fields[1])
+					: rotation.isRotation(fields[0], fields[1]);
+		}
+		return results;
+	}
+	
+	/***
+	 * Write a file of random pairs, a mix of edits, shuffles and rotations so every check sees both answers
+	 * @param path: the file to write
+	 * @param pairs: the number of lines
+	 * @param maxLength: the longest first field
+	 * @param nonAsciiRate: the fraction of fields with chars outside ASCII
+	 * @param random: the source of the pairs
+	 */
+	static void writePairs(Path path, long pairs, int maxLength, double nonAsciiRate, Random random) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			StringBuilder line = new StringBuilder();
+			for (long pair = 0; pair < pairs; pair++) {
+				int length = random.nextInt(maxLength + 1);
+				boolean nonAscii = random.nextDouble() < nonAsciiRate;
+				char[] chars = new char[length];
+				for (int i = 0; i < length; i++) {
+					chars[i] = (char) (nonAscii && random.nextInt(4) == 0 ? 0xE0 + random.nextInt(0x400) : 'a' + random.nextInt(6));
+				}
+				String first = new String(chars);
+				String second;
+				int kind = random.nextInt(4);
+				if (kind == 0 && length > 0) {
+					int split = random.nextInt(length);
+					second = first.substring(split) + first.substring(0, split);
+				}
+				else if (kind == 1) {
+					for (int i = length - 1; i > 0; i--) {
+						int j = random.nextInt(i + 1);
+						char swap = chars[i];
+						chars[i] = chars[j];
+						chars[j] = swap;
+					}
+					second = new String(chars);
+				}
+				else if (kind == 2 && length > 0) {
+					chars[random.nextInt(length)] = 'z';
+					second = new String(chars);
+				}
+				else {
+					second = first + 'y';
+				}
+				line.setLength(0);
+				line.append(first).append('\t').append(second).append(random.nextInt(16) == 0 ? "\r\n" : "\n");
+				writer.append(line);
+			}
+		}
+	}
+	
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(25);
+		Path input = Files.createTempFile("pairs", ".tsv");
+		Path output = Files.createTempFile("pairs", ".out");
+		try {
+			writePairs(input, 20000, 40, 0.2, random);
+			
+			// test 1: every check, with small chunks and windows so many lines cross a boundary, agrees with the reader
+			boolean agreesPassed = true;
+			int[][] sizes = { { MIN_CHUNK_BYTES, 64 * 1024 }, { MIN_CHUNK_BYTES, CHUNK_BYTES }, { CHUNK_BYTES, CHUNK_BYTES } };
+			for (Check check : Check.values()) {
+				boolean[] expected = checkWithReader(input, check, StandardCharsets.UTF_8);
+				for (int[] size : sizes) {
+					for (boolean parallel : new boolean[] { false, true }) {
+						new PairFilePipeline(check, StandardCharsets.UTF_8, size[0], size[1], parallel).run(input, output, Output.BITMAP);
+						byte[] bitmap = Files.readAllBytes(output);
+						agreesPassed &= bitmap.length == (expected.length + 7) / 8;
+						for (int i = 0; i < expected.length && agreesPassed; i++) {
+							agreesPassed &= ((bitmap[i >>> 3] >>> (i & 7)) & 1) == (expected[i] ? 1 : 0);
+						}
+					}
+				}
+			}
+			System.out.println("Test 1: the pipeline should agree with reading each line and splitting it. Result: " + (agreesPassed ? "test passed" : "test failed"));
+			
+			// test 2: text output is one line of 1 or 0 per pair
+			boolean[] expected = checkWithReader(input, Check.PERMUTATION, StandardCharsets.UTF_8);
+			Report report = new PairFilePipeline(Check.PERMUTATION, StandardCharsets.UTF_8, MIN_CHUNK_BYTES, true).run(input, output, Output.TEXT);
+			List<String> lines = Files.readAllLines(output);
+			boolean textPassed = lines.size() == expected.length;
+			long expectedMatches = 0;
+			for (int i = 0; i < expected.length && textPassed; i++) {
+				textPassed &= lines.get(i).equals(expected[i] ? "1" : "0");
+				expectedMatches += expected[i] ? 1 : 0;
+			}
+			System.out.println("Test 2: text output should have a 1 or 0 line per pair. Result: " + (textPassed ? "test passed" : "test failed"));
+			
+			// test 3: the report counts the pairs and times each stage, and small chunks share one mapping
+			boolean reportPassed = report.getPairs() == expected.length && report.getMatches() == expectedMatches
+					&& report.getInputBytes() == Files.size(input) && report.getChunks() > 1 && report.getWindows() == 1
+					&& report.getScanNanos() > 0 && report.getCheckStageNanos() > 0 && report.toString().contains("MB/s");
+			System.out.println("Test 3: the report should count pairs and time each stage. Result: " + (reportPassed ? "test passed" : "test failed"));
+			
+			// test 4: no trailing line break, empty fields and an empty file
+			Files.write(input, "ab\tba\n\t\npale\tple".getBytes(StandardCharsets.UTF_8));
+			Report edgeReport = new PairFilePipeline(Check.ONE_AWAY, StandardCharsets.UTF_8).run(input, output, Output.TEXT);
+			boolean edgesPassed = edgeReport.getPairs() == 3 && Files.readAllLines(output).equals(Arrays.asList("0", "1", "1"));
+			Files.write(input, new byte[0]);
+			edgesPassed &= new PairFilePipeline(Check.ONE_AWAY, StandardCharsets.UTF_8).run(input, output, Output.BITMAP).getPairs() == 0
+					&& Files.size(output) == 0;
+			System.out.println("Test 4: edge lines and empty files should be handled. Result: " + (edgesPassed ? "test passed" : "test failed"));
+			
+			// test 5: a line without a tab is rejected with its offset, in the first window and a later one
+			Files.write(input, "ab\tba\nabba\n".getBytes(StandardCharsets.UTF_8));
+			boolean rejected = false;
+			try {
+				new PairFilePipeline(Check.ROTATION, StandardCharsets.UTF_8).run(input, null, null);
+			}
+			catch (IllegalArgumentException e) {
+				rejected = e.getMessage().contains("byte 6");
+			}
+			StringBuilder lateLine = new StringBuilder();
+			while (lateLine.length() < 3 * MIN_CHUNK_BYTES) {
+				lateLine.append("ab\tba\n");
+			}
+			int lateOffset = lateLine.length();
+			Files.write(input, lateLine.append("abba\n").toString().getBytes(StandardCharsets.UTF_8));
+			boolean lateRejected = false;
+			try {
+				new PairFilePipeline(Check.ROTATION, StandardCharsets.UTF_8, MIN_CHUNK_BYTES, MIN_CHUNK_BYTES, false).run(input, null, null);
+			}
+			catch (IllegalArgumentException e) {
+				lateRejected = e.getMessage().contains("byte " + lateOffset + " ");
+			}
+			rejected &= lateRejected;
+			System.out.println("Test 5: a line without a tab should be rejected. Result: " + (rejected ? "test passed" : "test failed"));
+			
+			// test 6: delimiters are found in every position of a word
+			ByteBuffer bytes = ByteBuffer.wrap("abcdefghijklmnop\tq".getBytes(StandardCharsets.US_ASCII)).order(ByteOrder.LITTLE_ENDIAN);
+			boolean delimitersPassed = nextDelimiter(bytes, 0, 18, TABS, NEWLINES) == 16 && nextDelimiter(bytes, 0, 16, TABS, NEWLINES) == 16;
+			for (int position = 0; position < 16; position++) {
+				byte[] word = "aaaaaaaaaaaaaaaa".getBytes(StandardCharsets.US_ASCII);
+				word[position] = '\n';
+				// a byte of 0x0B just above the delimiter is where a borrow would give a false hit
+				if (position < 15) {
+					word[position + 1] = 0x0B;
+				}
+				delimitersPassed &= nextDelimiter(ByteBuffer.wrap(word).order(ByteOrder.LITTLE_ENDIAN), 0, 16, TABS, NEWLINES) == position;
+			}
+			System.out.println("Test 6: delimiters should be found at every offset. Result: " + (delimitersPassed ? "test passed" : "test failed"));
+			
+			// test 7: charsets that don't encode ASCII as single bytes, and chunks below the minimum, are rejected
+			new PairFilePipeline(Check.ONE_AWAY, StandardCharsets.ISO_8859_1);
+			int rejections = 0;
+			for (Charset wide : new Charset[] { StandardCharsets.UTF_16, StandardCharsets.UTF_16LE, Charset.forName("UTF-32") }) {
+				try {
+					new PairFilePipeline(Check.ONE_AWAY, wide);
+				}
+				catch (IllegalArgumentException e) {
+					rejections++;
+				}
+			}
+			try {
+				new PairFilePipeline(Check.ONE_AWAY, StandardCharsets.UTF_8, MIN_CHUNK_BYTES - 1, false);
+			}
+			catch (IllegalArgumentException e) {
+				rejections++;
+			}
+			boolean settingsPassed = rejections == 4;
+			System.out.println("Test 7: wide charsets and tiny chunks should be rejected. Result: " + (settingsPassed ? "test passed" : "test failed"));
+		}
+		finally {
+			Files.deleteIfExists(input);
+			Files.deleteIfExists(output);
+		}
+	}
+}
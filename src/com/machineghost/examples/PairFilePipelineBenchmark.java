@@ -0,0 +1,79 @@
+package com.machineghost.examples;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/***
+ * Compare the pair file pipeline with the reader the nightly jobs used, a BufferedReader, String.split and
+ * the String checkers, on a generated file. Reading the file sequentially with nothing else to do is the
+ * bandwidth bound the pipeline is measured against. A file just written is in the page cache, so these
+ * numbers are for memory bandwidth; drop the cache between runs to see the disk.
+ * Usage: PairFilePipelineBenchmark [pairs] [max field length] [runs]
+ *
+ */
+public class PairFilePipelineBenchmark {
+	
+	/***
+	 * Read a file front to back into a direct buffer
+	 * @return the number of bytes read
+	 */
+	private static long readAll(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+		long total = 0;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			int read;
+			while ((read = channel.read(buffer)) >= 0) {
+				total += read;
+				buffer.clear();
+			}
+		}
+		return total;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		long pairs = args.length > 0 ? Long.parseLong(args[0]) : 2000000;
+		int maxLength = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		
+		Path input = Files.createTempFile("pairs", ".tsv");
+		Path output = Files.createTempFile("pairs", ".bits");
+		try {
+			PairFilePipeline.writePairs(input, pairs, maxLength, 0.05, new Random(25));
+			double megabytes = Files.size(input) / 1e6;
+			System.out.printf("%,d pairs, %.1f MB%n", pairs, megabytes);
+			
+			for (PairFilePipeline.Check check : PairFilePipeline.Check.values()) {
+				PairFilePipeline pipeline = new PairFilePipeline(check, StandardCharsets.UTF_8);
+				for (int run = 0; run < runs; run++) {
+					long start = System.nanoTime();
+					readAll(input);
+					long readNanos = System.nanoTime() - start;
+					
+					start = System.nanoTime();
+					boolean[] expected = PairFilePipeline.checkWithReader(input, check, StandardCharsets.UTF_8);
+					long readerNanos = System.nanoTime() - start;
+					
+					PairFilePipeline.Report report = pipeline.run(input, output, PairFilePipeline.Output.BITMAP);
+					if (report.getPairs() != expected.length) {
+						throw new IllegalStateException("the pipeline saw " + report.getPairs() + " pairs, the reader " + expected.length);
+					}
+					System.out.printf("%s run %d: sequential read %.0f MB/s, reader and split %.0f MB/s, pipeline %.0f MB/s%n",
+							check, run + 1, megabytes * 1e9 / readNanos, megabytes * 1e9 / readerNanos, megabytes * 1e9 / report.getTotalNanos());
+					if (run == runs - 1) {
+						System.out.println(report);
+					}
+				}
+			}
+		}
+		finally {
+			Files.deleteIfExists(input);
+			Files.deleteIfExists(output);
+		}
+	}
+}
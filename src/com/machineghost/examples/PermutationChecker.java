@@ -1,60 +1,338 @@
 package com.machineghost.examples;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.Random;
 
+/***
+ * Given two strings, decide if one is a permutation of the other.
+ * The checker holds no state, so one instance can be shared by any number of threads.
+ *
+ */
 public class PermutationChecker {
 	
-	private Boolean isPermutation;
+	// buffer size for streams, and window size for memory-mapped files
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	private static final long MAPPED_CHUNK_SIZE = 64L * 1024 * 1024;
 	
-	public PermutationChecker() { }
+	// per-thread Latin-1 counting table, cleared on each use rather than allocated
+	private static final ThreadLocal<int[]> latin1CountTable = ThreadLocal.withInitial(() -> new int[256]);
 	
-	public Boolean getIsPermutation() {
-		return isPermutation;
-	}
+	public PermutationChecker() { }
 	
 	/***
 	 * Given two strings, decide if one is a permutation of the other.
 	 * This approach mimics a hash table by mapping each char in the strings to its count/frequency.
-	 * This is not as readable, but is effective and more efficient: close to O(1)
-	 * Assumption: ASCII chars only, case and whitespace sensitive
-	 * @param firstString: the first ASCII string to compare
-	 * @param secondString: the second ASCII string to compare
+	 * This is not as readable, but is effective and more efficient: O(n)
+	 * Assumption: case and whitespace sensitive, any Unicode input (code points are counted)
+	 * @param firstString: the first string to compare
+	 * @param secondString: the second string to compare
 	 * @return true if the strings are permutations of each other
 	 */
-	public Boolean stringIsPermutationOfAnotherOptimized(String firstString, String secondString) {
-		isPermutation = true;
-		
+	public boolean stringIsPermutationOfAnotherOptimized(String firstString, String secondString) {
+		return stringIsPermutationOfAnotherOptimized((CharSequence) firstString, secondString);
+	}
+	
+	/***
+	 * Given two char sequences, decide if one is a permutation of the other by counting code points, reading them in place
+	 * @param firstString: the first sequence to compare
+	 * @param secondString: the second sequence to compare
+	 * @return true if the sequences are permutations of each other
+	 */
+	public boolean stringIsPermutationOfAnotherOptimized(CharSequence firstString, CharSequence secondString) {
+		if (!CheckerMetrics.ENABLED) {
+			return permutationByCounts(firstString, secondString);
+		}
+		long start = CheckerMetrics.IS_PERMUTATION_OPTIMIZED.start();
+		boolean result = permutationByCounts(firstString, secondString);
+		CheckerMetrics.IS_PERMUTATION_OPTIMIZED.record(start, CheckerMetrics.length(firstString) + CheckerMetrics.length(secondString), result);
+		return result;
+	}
+	
+	/***
+	 * Given the text in two buffers, decide if one is a permutation of the other by counting, without building strings.
+	 * Latin-1 bytes, and ASCII or UTF-8 bytes below 0x80, are counted in place, other text is decoded first.
+	 * Each buffer is read from its position to its limit, and the positions are left alone.
+	 * @param firstBytes: the first encoded text to compare
+	 * @param secondBytes: the second encoded text to compare
+	 * @param charset: how both texts are encoded
+	 * @return true if the texts are permutations of each other
+	 */
+	public boolean stringIsPermutationOfAnotherOptimized(ByteBuffer firstBytes, ByteBuffer secondBytes, Charset charset) {
+		return stringIsPermutationOfAnotherOptimized(EncodedChars.decode(firstBytes, charset), EncodedChars.decode(secondBytes, charset));
+	}
+	
+	/***
+	 * Given the text in two byte ranges, decide if one is a permutation of the other by counting, without building strings
+	 * @param firstBytes: the first encoded text to compare
+	 * @param firstOffset: where the first text starts
+	 * @param firstLength: the number of bytes in the first text
+	 * @param secondBytes: the second encoded text to compare
+	 * @param secondOffset: where the second text starts
+	 * @param secondLength: the number of bytes in the second text
+	 * @param charset: how both texts are encoded
+	 * @return true if the texts are permutations of each other
+	 */
+	public boolean stringIsPermutationOfAnotherOptimized(byte[] firstBytes, int firstOffset, int firstLength, byte[] secondBytes, int secondOffset, int secondLength, Charset charset) {
+		return stringIsPermutationOfAnotherOptimized(EncodedChars.decode(firstBytes, firstOffset, firstLength, charset),
+				EncodedChars.decode(secondBytes, secondOffset, secondLength, charset));
+	}
+	
+	private boolean permutationByCounts(CharSequence firstString, CharSequence secondString) {
 		if (!eligibleForPermutations(firstString, secondString)) {
-			isPermutation = false;
-			return isPermutation;
+			return false;
 		}
 		
-		/*** 
-		 * Algorithm:
-		 * Create an array of ints that stores the count of each char in the first string.
-		 * Then decrement the count based on how the second string maps to the same array of ints.
-		 * If there are any negative numbers, then we can infer there is a "mismatch" between the char frequency in the two strings.
-		 */
+		if (firstString instanceof EncodedChars && secondString instanceof EncodedChars) {
+			// two byte views, one char per byte, so counting bytes counts the chars
+			return EncodedChars.sameByteCounts((EncodedChars) firstString, (EncodedChars) secondString);
+		}
+		
+		// the kernel copies chars out in bulk, which only a String can do
+		if (firstString instanceof String && secondString instanceof String && CharHistogram.favorsVector(firstString)) {
+			// long repetitive Latin-1 strings are counted by the vector kernel
+			int latin1Result = CharHistogram.compareLatin1Counts((String) firstString, (String) secondString);
+			if (latin1Result != CharHistogram.NOT_LATIN1) {
+				return latin1Result == CharHistogram.SAME_COUNTS;
+			}
+		}
+		
+		return sameCodePointCounts(firstString, secondString, false, false);
+	}
+	
+	/***
+	 * Given two strings, decide if one is a permutation of the other, optionally ignoring case and whitespace.
+	 * Counts code points like stringIsPermutationOfAnotherOptimized: O(n)
+	 * Assumption: case folding is per code point (as in equalsIgnoreCase), strings that are the same
+	 * under the policy aren't permutations (like identical strings)
+	 * @param firstString: the first string to compare
+	 * @param secondString: the second string to compare
+	 * @param ignoreCase: true to treat upper and lower case as the same char
+	 * @param ignoreWhitespace: true to skip whitespace entirely
+	 * @return true if the strings are permutations of each other
+	 */
+	public boolean stringIsPermutationOfAnotherOptimized(String firstString, String secondString, boolean ignoreCase, boolean ignoreWhitespace) {
+		if (firstString == null || secondString == null) {
+			// if either string is null, there is nothing to compare
+			return false;
+		}
 		
-		int[] chars = new int[128];
-		for (int i = 0; i < firstString.length(); i++) {
-			// increment the frequency count for the current char
-			chars[firstString.charAt(i)]++;
+		if (!ignoreWhitespace && firstString.length() != secondString.length()) {
+			// if they aren't the same length, they can't be permutations
+			return false;
+		}
+		
+		if (sameUnderPolicy(firstString, secondString, ignoreCase, ignoreWhitespace)) {
+			// if the strings are identical, they aren't really permutations are they?
+			return false;
 		}
 		
-		for (int j = 0; j < secondString.length(); j++) {
-			// decrement the frequency count for the current char
-			chars[secondString.charAt(j)]--;
+		return sameCodePointCounts(firstString, secondString, ignoreCase, ignoreWhitespace);
+	}
+	
+	/***
+	 * Count the code points of two strings and compare the counts.
+	 * Algorithm:
+	 * Store the count of each code point in the first string, then decrement the counts for the second string.
+	 * If any count goes negative, the second string has a code point the first doesn't.
+	 * Latin-1 code points are counted in a dense 256-slot table; anything above that goes to an
+	 * open-addressed code point to count map, which is only created if such a code point shows up.
+	 * @param firstString: the first string to compare
+	 * @param secondString: the second string to compare
+	 * @param ignoreCase: true to fold case before counting
+	 * @param ignoreWhitespace: true to skip whitespace
+	 * @return true if both strings have the same count of every code point
+	 */
+	private static boolean sameCodePointCounts(CharSequence firstString, CharSequence secondString, boolean ignoreCase, boolean ignoreWhitespace) {
+		int[] latin1Counts = latin1CountTable.get();
+		Arrays.fill(latin1Counts, 0);
+		CodePointCounts otherCounts = null;
+		
+		int firstTotal = 0;
+		for (int i = 0; i < firstString.length(); ) {
+			int codePoint = Character.codePointAt(firstString, i);
+			i += Character.charCount(codePoint);
+			if (ignoreWhitespace && Character.isWhitespace(codePoint)) {
+				continue;
+			}
+			if (ignoreCase) {
+				codePoint = foldCase(codePoint);
+			}
 			
-			int currentCharCount = chars[secondString.charAt(j)];
-			if (currentCharCount < 0) {
-				// if we find a negative number it indicates a unique char in the second string
-				isPermutation = false;
-				break;
+			// increment the frequency count for the current code point
+			if (codePoint < 256) {
+				latin1Counts[codePoint]++;
+			}
+			else {
+				if (otherCounts == null) {
+					otherCounts = new CodePointCounts();
+				}
+				otherCounts.increment(codePoint);
+			}
+			firstTotal++;
+		}
+		
+		int secondTotal = 0;
+		for (int j = 0; j < secondString.length(); ) {
+			int codePoint = Character.codePointAt(secondString, j);
+			j += Character.charCount(codePoint);
+			if (ignoreWhitespace && Character.isWhitespace(codePoint)) {
+				continue;
+			}
+			if (ignoreCase) {
+				codePoint = foldCase(codePoint);
+			}
+			
+			// decrement the frequency count, a negative count indicates a unique code point in the second string
+			if (codePoint < 256) {
+				if (--latin1Counts[codePoint] < 0) {
+					return false;
+				}
+			}
+			else if (otherCounts == null || !otherCounts.decrement(codePoint)) {
+				return false;
+			}
+			secondTotal++;
+		}
+		
+		// with nothing left over in the second string, the first must not have extra code points either
+		return firstTotal == secondTotal;
+	}
+	
+	/***
+	 * Determine if two strings are the same once the policy is applied
+	 * @param firstString: the first string to compare
+	 * @param secondString: the second string to compare
+	 * @param ignoreCase: true to fold case before comparing
+	 * @param ignoreWhitespace: true to skip whitespace
+	 * @return true if the strings are the same under the policy
+	 */
+	private static boolean sameUnderPolicy(String firstString, String secondString, boolean ignoreCase, boolean ignoreWhitespace) {
+		int i = 0;
+		int j = 0;
+		while (true) {
+			if (ignoreWhitespace) {
+				while (i < firstString.length() && Character.isWhitespace(firstString.codePointAt(i))) {
+					i += Character.charCount(firstString.codePointAt(i));
+				}
+				while (j < secondString.length() && Character.isWhitespace(secondString.codePointAt(j))) {
+					j += Character.charCount(secondString.codePointAt(j));
+				}
+			}
+			if (i >= firstString.length() || j >= secondString.length()) {
+				return i >= firstString.length() && j >= secondString.length();
+			}
+			
+			int firstCodePoint = firstString.codePointAt(i);
+			int secondCodePoint = secondString.codePointAt(j);
+			i += Character.charCount(firstCodePoint);
+			j += Character.charCount(secondCodePoint);
+			if (ignoreCase) {
+				firstCodePoint = foldCase(firstCodePoint);
+				secondCodePoint = foldCase(secondCodePoint);
+			}
+			if (firstCodePoint != secondCodePoint) {
+				return false;
+			}
+		}
+	}
+	
+	/***
+	 * Fold a code point the same way String.equalsIgnoreCase compares chars
+	 * @param codePoint: the code point to fold
+	 * @return the folded code point
+	 */
+	private static int foldCase(int codePoint) {
+		return Character.toLowerCase(Character.toUpperCase(codePoint));
+	}
+	
+	/***
+	 * Counts of code points above Latin-1, in an open-addressed table so no code point is ever boxed.
+	 * It starts small and doubles as distinct code points are added, so it is sized by the code points
+	 * actually seen rather than by the length of the string.
+	 *
+	 */
+	private static final class CodePointCounts {
+		
+		private static final int EMPTY = -1;
+		private static final int INITIAL_CAPACITY = 16;
+		
+		private int[] keys;
+		private int[] counts;
+		private int mask;
+		private int size;
+		
+		CodePointCounts() {
+			keys = new int[INITIAL_CAPACITY];
+			counts = new int[INITIAL_CAPACITY];
+			Arrays.fill(keys, EMPTY);
+			mask = INITIAL_CAPACITY - 1;
+		}
+		
+		void increment(int codePoint) {
+			int slot = slotFor(keys, mask, codePoint);
+			if (keys[slot] == codePoint) {
+				counts[slot]++;
+				return;
+			}
+			keys[slot] = codePoint;
+			counts[slot] = 1;
+			
+			// keep the load factor at or below one half
+			if (++size * 2 > keys.length) {
+				grow();
 			}
 		}
 		
-		return isPermutation;
+		/***
+		 * @return false if the code point's count was already zero
+		 */
+		boolean decrement(int codePoint) {
+			int slot = slotFor(keys, mask, codePoint);
+			if (keys[slot] == EMPTY || counts[slot] == 0) {
+				return false;
+			}
+			counts[slot]--;
+			return true;
+		}
+		
+		private void grow() {
+			int[] grownKeys = new int[keys.length * 2];
+			int[] grownCounts = new int[grownKeys.length];
+			Arrays.fill(grownKeys, EMPTY);
+			int grownMask = grownKeys.length - 1;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != EMPTY) {
+					int slot = slotFor(grownKeys, grownMask, keys[i]);
+					grownKeys[slot] = keys[i];
+					grownCounts[slot] = counts[i];
+				}
+			}
+			keys = grownKeys;
+			counts = grownCounts;
+			mask = grownMask;
+		}
+		
+		private static int slotFor(int[] keys, int mask, int codePoint) {
+			// Fibonacci hashing, the top bits of the product are the best mixed, so take as many as the table needs
+			int slot = (codePoint * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+			while (keys[slot] != EMPTY && keys[slot] != codePoint) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
 	}
 	
 	/***
@@ -66,23 +344,262 @@ public class PermutationChecker {
 	 * @param secondString: the second string to compare as a permutation of the first
 	 * @return true if the strings are permutations of each other
 	 */
-	public Boolean stringIsPermutationOfAnother(String firstString, String secondString) {
-		isPermutation = true;
-		
+	public boolean stringIsPermutationOfAnother(String firstString, String secondString) {
+		return stringIsPermutationOfAnother((CharSequence) firstString, secondString);
+	}
+	
+	/***
+	 * Given two char sequences, decide if one is a permutation of the other by sorting copies of their chars
+	 * @param firstString: the first sequence to compare
+	 * @param secondString: the second sequence to compare as a permutation of the first
+	 * @return true if the sequences are permutations of each other
+	 */
+	public boolean stringIsPermutationOfAnother(CharSequence firstString, CharSequence secondString) {
+		if (!CheckerMetrics.ENABLED) {
+			return permutationBySorting(firstString, secondString);
+		}
+		long start = CheckerMetrics.IS_PERMUTATION.start();
+		boolean result = permutationBySorting(firstString, secondString);
+		CheckerMetrics.IS_PERMUTATION.record(start, CheckerMetrics.length(firstString) + CheckerMetrics.length(secondString), result);
+		return result;
+	}
+	
+	/***
+	 * Given the text in two buffers, decide if one is a permutation of the other by sorting, without building strings.
+	 * Latin-1 bytes, and ASCII or UTF-8 bytes below 0x80, are copied straight into the char arrays to sort,
+	 * other text is decoded first. Each buffer is read from its position to its limit, and the positions are left alone.
+	 * @param firstBytes: the first encoded text to compare
+	 * @param secondBytes: the second encoded text to compare
+	 * @param charset: how both texts are encoded
+	 * @return true if the texts are permutations of each other
+	 */
+	public boolean stringIsPermutationOfAnother(ByteBuffer firstBytes, ByteBuffer secondBytes, Charset charset) {
+		return stringIsPermutationOfAnother(EncodedChars.decode(firstBytes, charset), EncodedChars.decode(secondBytes, charset));
+	}
+	
+	/***
+	 * Given the text in two byte ranges, decide if one is a permutation of the other by sorting, without building strings
+	 * @param firstBytes: the first encoded text to compare
+	 * @param firstOffset: where the first text starts
+	 * @param firstLength: the number of bytes in the first text
+	 * @param secondBytes: the second encoded text to compare
+	 * @param secondOffset: where the second text starts
+	 * @param secondLength: the number of bytes in the second text
+	 * @param charset: how both texts are encoded
+	 * @return true if the texts are permutations of each other
+	 */
+	public boolean stringIsPermutationOfAnother(byte[] firstBytes, int firstOffset, int firstLength, byte[] secondBytes, int secondOffset, int secondLength, Charset charset) {
+		return stringIsPermutationOfAnother(EncodedChars.decode(firstBytes, firstOffset, firstLength, charset),
+				EncodedChars.decode(secondBytes, secondOffset, secondLength, charset));
+	}
+	
+	private boolean permutationBySorting(CharSequence firstString, CharSequence secondString) {
 		if (!eligibleForPermutations(firstString, secondString)) {
-			isPermutation = false;
-			return isPermutation;
+			return false;
 		}
 		
-		char[] firstChars = firstString.toCharArray();
+		char[] firstChars = EncodedChars.toCharArray(firstString);
 		Arrays.sort(firstChars);
 		
-		char[] secondChars = secondString.toCharArray();
+		char[] secondChars = EncodedChars.toCharArray(secondString);
 		Arrays.sort(secondChars);
 		
-		isPermutation = (Arrays.equals(firstChars, secondChars));
+		return Arrays.equals(firstChars, secondChars);
+	}
+	
+	/***
+	 * Decide, for each pair of strings at the same index, if one is a permutation of the other, by sorting
+	 * Large batches are split across cores by input length, small ones are checked on the calling thread.
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @return the result for each pair, in order
+	 */
+	public boolean[] stringIsPermutationOfAnotherBatch(String[] firstStrings, String[] secondStrings) {
+		return stringIsPermutationOfAnotherBatch(firstStrings, secondStrings, true);
+	}
+	
+	/***
+	 * Decide, for each pair of strings at the same index, if one is a permutation of the other, by sorting
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @param parallel: false to check every pair on the calling thread
+	 * @return the result for each pair, in order
+	 */
+	public boolean[] stringIsPermutationOfAnotherBatch(String[] firstStrings, String[] secondStrings, boolean parallel) {
+		return PairBatch.checkAll(firstStrings, secondStrings, this::stringIsPermutationOfAnother, parallel);
+	}
+	
+	/***
+	 * Decide, for each pair of strings at the same index, if one is a permutation of the other, by counting
+	 * Large batches are split across cores by input length, small ones are checked on the calling thread.
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @return the result for each pair, in order
+	 */
+	public boolean[] stringIsPermutationOfAnotherOptimizedBatch(String[] firstStrings, String[] secondStrings) {
+		return stringIsPermutationOfAnotherOptimizedBatch(firstStrings, secondStrings, true);
+	}
+	
+	/***
+	 * Decide, for each pair of strings at the same index, if one is a permutation of the other, by counting
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @param parallel: false to check every pair on the calling thread
+	 * @return the result for each pair, in order
+	 */
+	public boolean[] stringIsPermutationOfAnotherOptimizedBatch(String[] firstStrings, String[] secondStrings, boolean parallel) {
+		return PairBatch.checkAll(firstStrings, secondStrings, this::stringIsPermutationOfAnotherOptimized, parallel);
+	}
+	
+	/***
+	 * Given two character streams, decide if one is a permutation of the other.
+	 * Both streams are read in lockstep through fixed buffers into one fixed-size table of counts,
+	 * so memory doesn't depend on the input size. Neither stream is closed.
+	 * Assumption: case and whitespace sensitive, identical streams aren't permutations (like identical strings)
+	 * @param firstReader: the first stream to compare
+	 * @param secondReader: the second stream to compare
+	 * @return true if the streams are permutations of each other
+	 * @throws IOException if either stream can't be read
+	 */
+	public boolean streamIsPermutationOfAnother(Reader firstReader, Reader secondReader) throws IOException {
+		if (firstReader == null || secondReader == null) {
+			return false;
+		}
+		
+		// one count per char value, long so multi-GB inputs can't overflow
+		long[] counts = new long[Character.MAX_VALUE + 1];
+		char[] firstBuffer = new char[STREAM_BUFFER_SIZE];
+		char[] secondBuffer = new char[STREAM_BUFFER_SIZE];
+		boolean identical = true;
+		while (true) {
+			int firstLength = fill(firstReader, firstBuffer);
+			int secondLength = fill(secondReader, secondBuffer);
+			if (firstLength != secondLength) {
+				// one stream ended first, so they aren't the same length
+				return false;
+			}
+			if (firstLength == 0) {
+				break;
+			}
+			
+			for (int i = 0; i < firstLength; i++) {
+				char firstChar = firstBuffer[i];
+				char secondChar = secondBuffer[i];
+				counts[firstChar]++;
+				counts[secondChar]--;
+				identical &= firstChar == secondChar;
+			}
+		}
+		return !identical && allZero(counts);
+	}
+	
+	/***
+	 * Given two byte streams, decide if one is a permutation of the other, byte by byte.
+	 * Both streams are read in lockstep through fixed buffers into a 256-slot table of counts,
+	 * so memory doesn't depend on the input size. Neither stream is closed.
+	 * Assumption: bytes are compared, which is exact for single-byte encodings
+	 * @param firstStream: the first stream to compare
+	 * @param secondStream: the second stream to compare
+	 * @return true if the streams are permutations of each other
+	 * @throws IOException if either stream can't be read
+	 */
+	public boolean streamIsPermutationOfAnother(InputStream firstStream, InputStream secondStream) throws IOException {
+		if (firstStream == null || secondStream == null) {
+			return false;
+		}
+		
+		long[] counts = new long[256];
+		byte[] firstBuffer = new byte[STREAM_BUFFER_SIZE];
+		byte[] secondBuffer = new byte[STREAM_BUFFER_SIZE];
+		boolean identical = true;
+		while (true) {
+			int firstLength = firstStream.readNBytes(firstBuffer, 0, firstBuffer.length);
+			int secondLength = secondStream.readNBytes(secondBuffer, 0, secondBuffer.length);
+			if (firstLength != secondLength) {
+				return false;
+			}
+			if (firstLength == 0) {
+				break;
+			}
+			
+			for (int i = 0; i < firstLength; i++) {
+				counts[firstBuffer[i] & 0xFF]++;
+				counts[secondBuffer[i] & 0xFF]--;
+			}
+			identical = identical && Arrays.equals(firstBuffer, 0, firstLength, secondBuffer, 0, secondLength);
+		}
+		return !identical && allZero(counts);
+	}
+	
+	/***
+	 * Given two files, decide if one is a permutation of the other, byte by byte.
+	 * Files of different sizes are rejected before reading. Otherwise both files are memory-mapped
+	 * a chunk at a time and counted into a 256-slot table, so memory doesn't depend on the file size.
+	 * Assumption: bytes are compared, which is exact for single-byte encodings
+	 * @param firstPath: the first file to compare
+	 * @param secondPath: the second file to compare
+	 * @return true if the files are permutations of each other
+	 * @throws IOException if either file can't be read
+	 */
+	public boolean fileIsPermutationOfAnother(Path firstPath, Path secondPath) throws IOException {
+		if (firstPath == null || secondPath == null) {
+			return false;
+		}
 		
-		return isPermutation;
+		long size = Files.size(firstPath);
+		if (size != Files.size(secondPath)) {
+			return false;
+		}
+		
+		long[] counts = new long[256];
+		boolean identical = true;
+		try (FileChannel firstChannel = FileChannel.open(firstPath, StandardOpenOption.READ);
+				FileChannel secondChannel = FileChannel.open(secondPath, StandardOpenOption.READ)) {
+			for (long position = 0; position < size; position += MAPPED_CHUNK_SIZE) {
+				long chunkSize = Math.min(MAPPED_CHUNK_SIZE, size - position);
+				MappedByteBuffer firstChunk = firstChannel.map(FileChannel.MapMode.READ_ONLY, position, chunkSize);
+				MappedByteBuffer secondChunk = secondChannel.map(FileChannel.MapMode.READ_ONLY, position, chunkSize);
+				identical = identical && firstChunk.equals(secondChunk);
+				for (int i = 0; i < chunkSize; i++) {
+					counts[firstChunk.get(i) & 0xFF]++;
+					counts[secondChunk.get(i) & 0xFF]--;
+				}
+			}
+		}
+		return !identical && allZero(counts);
+	}
+	
+	/***
+	 * Read from a stream until the buffer is full or the stream ends
+	 * @param reader: the stream to read
+	 * @param buffer: the buffer to fill
+	 * @return the number of chars read, 0 once the stream has ended
+	 * @throws IOException if the stream can't be read
+	 */
+	private static int fill(Reader reader, char[] buffer) throws IOException {
+		int length = 0;
+		while (length < buffer.length) {
+			int read = reader.read(buffer, length, buffer.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
+	
+	/***
+	 * Check a table of count differences for any mismatch
+	 * @param counts: the table to check
+	 * @return true if every count is zero
+	 */
+	private static boolean allZero(long[] counts) {
+		for (long count : counts) {
+			if (count != 0) {
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	/***
@@ -92,7 +609,27 @@ public class PermutationChecker {
 	 * @param secondString: the second string to compare
 	 * @return true if the strings could be possible permutations
 	 */
-	public Boolean eligibleForPermutations(String firstString, String secondString) {
+	public boolean eligibleForPermutations(String firstString, String secondString) {
+		return eligibleForPermutations((CharSequence) firstString, secondString);
+	}
+	
+	/***
+	 * Check if the input char sequences are valid for permutation evaluation.
+	 * 
+	 * @param firstString: the first sequence to compare
+	 * @param secondString: the second sequence to compare
+	 * @return true if the sequences could be possible permutations
+	 */
+	public boolean eligibleForPermutations(CharSequence firstString, CharSequence secondString) {
+		boolean eligible = eligible(firstString, secondString);
+		if (CheckerMetrics.ENABLED) {
+			// an ineligible pair is answered without counting or sorting anything
+			CheckerMetrics.ELIGIBLE_FOR_PERMUTATIONS.count(!eligible);
+		}
+		return eligible;
+	}
+	
+	private static boolean eligible(CharSequence firstString, CharSequence secondString) {
 		if (firstString == null || secondString == null) {
 			// if either string is null, there is nothing to compare
 			return false;
@@ -103,7 +640,7 @@ public class PermutationChecker {
 			return false;
 		}
 		
-		if (firstString.equals(secondString)) {
+		if (EncodedChars.sameChars(firstString, secondString)) {
 			// if the strings are identical, they aren't really permutations are they?
 			return false;
 		}
@@ -111,74 +648,288 @@ public class PermutationChecker {
 		return true;
 	}
 	
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
+		boolean isPermutation = false;
 		
 		// test 1: null inputs
 		PermutationChecker checker1 = new PermutationChecker();
-		checker1.stringIsPermutationOfAnother("something", null);
-		System.out.println("Test 1.1: null string should return false. Result: " + (!checker1.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker1.stringIsPermutationOfAnother("something", null);
+		System.out.println("Test 1.1: null string should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker1.stringIsPermutationOfAnother(null, "something");
-		System.out.println("Test 1.2: null string should return false. Result: " + (!checker1.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker1.stringIsPermutationOfAnother(null, "something");
+		System.out.println("Test 1.2: null string should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker1.stringIsPermutationOfAnother(null, null);
-		System.out.println("Test 1.3: null string should return false. Result: " + (!checker1.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker1.stringIsPermutationOfAnother(null, null);
+		System.out.println("Test 1.3: null string should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker1.stringIsPermutationOfAnotherOptimized("something", null);
-		System.out.println("Test 1.4: null string should return false. Result: " + (!checker1.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker1.stringIsPermutationOfAnotherOptimized("something", null);
+		System.out.println("Test 1.4: null string should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker1.stringIsPermutationOfAnotherOptimized(null, "something");
-		System.out.println("Test 1.5: null string should return false. Result: " + (!checker1.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker1.stringIsPermutationOfAnotherOptimized(null, "something");
+		System.out.println("Test 1.5: null string should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker1.stringIsPermutationOfAnotherOptimized(null, null);
-		System.out.println("Test 1.6: null string should return false. Result: " + (!checker1.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker1.stringIsPermutationOfAnotherOptimized(null, null);
+		System.out.println("Test 1.6: null string should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
 		// test 2: strings are not permutations
 		PermutationChecker checker2 = new PermutationChecker();
-		checker2.stringIsPermutationOfAnother("something", "something");
-		System.out.println("Test 2.1: identical strings should return false. Result: " + (!checker2.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker2.stringIsPermutationOfAnother("something", "something");
+		System.out.println("Test 2.1: identical strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker2.stringIsPermutationOfAnother("", "");
-		System.out.println("Test 2.2: identical strings should return false. Result: " + (!checker2.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker2.stringIsPermutationOfAnother("", "");
+		System.out.println("Test 2.2: identical strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker2.stringIsPermutationOfAnother("dog", "cat");
-		System.out.println("Test 2.3: non-permutation strings should return false. Result: " + (!checker2.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker2.stringIsPermutationOfAnother("dog", "cat");
+		System.out.println("Test 2.3: non-permutation strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker2.stringIsPermutationOfAnother("dog", "d og");
-		System.out.println("Test 2.4: non-permutation strings should return false. Result: " + (!checker2.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker2.stringIsPermutationOfAnother("dog", "d og");
+		System.out.println("Test 2.4: non-permutation strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker2.stringIsPermutationOfAnotherOptimized("something", "something");
-		System.out.println("Test 2.5: identical strings should return false. Result: " + (!checker2.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker2.stringIsPermutationOfAnotherOptimized("something", "something");
+		System.out.println("Test 2.5: identical strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker2.stringIsPermutationOfAnotherOptimized("", "");
-		System.out.println("Test 2.6: identical strings should return false. Result: " + (!checker2.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker2.stringIsPermutationOfAnotherOptimized("", "");
+		System.out.println("Test 2.6: identical strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker2.stringIsPermutationOfAnotherOptimized("dog", "cat");
-		System.out.println("Test 2.7: non-permutation strings should return false. Result: " + (!checker2.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker2.stringIsPermutationOfAnotherOptimized("dog", "cat");
+		System.out.println("Test 2.7: non-permutation strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
-		checker2.stringIsPermutationOfAnotherOptimized("dog", "d og");
-		System.out.println("Test 2.8: non-permutation strings should return false. Result: " + (!checker2.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker2.stringIsPermutationOfAnotherOptimized("dog", "d og");
+		System.out.println("Test 2.8: non-permutation strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
 		
 		// test 3: strings are permutations
 		PermutationChecker checker3 = new PermutationChecker();
-		checker3.stringIsPermutationOfAnother("dog", "god");
-		System.out.println("Test 3.1: permutation strings should return true. Result: " + (checker3.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker3.stringIsPermutationOfAnother("dog", "god");
+		System.out.println("Test 3.1: permutation strings should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
 		
-		checker3.stringIsPermutationOfAnother("dog12", "g1o2d");
-		System.out.println("Test 3.2: permutation strings should return true. Result: " + (checker3.getIsPermutation() ? "test passed" : "test failed"));
-	
-		checker3.stringIsPermutationOfAnotherOptimized("dog", "god");
-		System.out.println("Test 3.3: permutation strings should return true. Result: " + (checker3.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker3.stringIsPermutationOfAnother("dog12", "g1o2d");
+		System.out.println("Test 3.2: permutation strings should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker3.stringIsPermutationOfAnotherOptimized("dog", "god");
+		System.out.println("Test 3.3: permutation strings should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker3.stringIsPermutationOfAnotherOptimized("dog12", "g1o2d");
+		System.out.println("Test 3.4: permutation strings should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
 		
-		checker3.stringIsPermutationOfAnotherOptimized("dog12", "g1o2d");
-		System.out.println("Test 3.4: permutation strings should return true. Result: " + (checker3.getIsPermutation() ? "test passed" : "test failed"));
-	
 		// test 4: string is substring of the other
 		PermutationChecker checker4 = new PermutationChecker();
-		checker4.stringIsPermutationOfAnother("abcdef", "abc");
-		System.out.println("Test 4.1: substrings should return false. Result: " + (!checker4.getIsPermutation() ? "test passed" : "test failed"));
+		isPermutation = checker4.stringIsPermutationOfAnother("abcdef", "abc");
+		System.out.println("Test 4.1: substrings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker4.stringIsPermutationOfAnotherOptimized("abcdef", "abc");
+		System.out.println("Test 4.2: substrings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));	
+		
+		// test 5: non-ASCII input and case and whitespace policies
+		PermutationChecker checker7 = new PermutationChecker();
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("\u00e9t\u00e9\u4e2d", "\u4e2d\u00e9t\u00e9");
+		System.out.println("Test 5.1: non-ASCII permutation strings should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("a\ud83d\ude00b", "\ud83d\ude00ba");
+		System.out.println("Test 5.2: permutations with surrogate pairs should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("\u4e2d\u6587", "\u4e2d\u4e2d");
+		System.out.println("Test 5.3: non-ASCII non-permutation strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("Dog", "GOD", true, false);
+		System.out.println("Test 5.4: permutations ignoring case should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("Dog", "dog", true, false);
+		System.out.println("Test 5.5: strings identical ignoring case should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("dog", "g o d", false, true);
+		System.out.println("Test 5.6: permutations ignoring whitespace should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("dog", "d og", false, true);
+		System.out.println("Test 5.7: strings identical ignoring whitespace should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("\u00c9t\u00e9 Noir", "riontee\u00e9", true, true);
+		System.out.println("Test 5.8: strings with extra chars ignoring case and whitespace should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized("\u00c9t\u00e9 Noir", "riont\u00e9\u00e9", true, true);
+		System.out.println("Test 5.9: permutations ignoring case and whitespace should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		// long repetitive strings are counted by CharHistogram when the JVM has the vector kernel
+		StringBuilder runs = new StringBuilder();
+		for (int i = 0; i < 25000; i++) {
+			runs.append(i % 3 == 0 ? "aaab" : "\u00e9\u00e9");
+		}
+		String longFirst = runs.toString();
+		String longSecond = runs.reverse().toString();
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized(longFirst, longSecond);
+		System.out.println("Test 5.10: long repetitive permutation strings should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized(longFirst, longSecond.replaceFirst("b", "a"));
+		System.out.println("Test 5.11: long repetitive non-permutation strings should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized(longFirst + "\u4e2d", "\u4e2d" + longSecond);
+		System.out.println("Test 5.12: long repetitive non-Latin-1 permutation strings should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized(longFirst + "a", "\u4e2d" + longSecond);
+		System.out.println("Test 5.13: long repetitive strings with an extra non-Latin-1 char should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		// enough distinct non-Latin-1 code points that the count table has to grow several times
+		StringBuilder distinct = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			distinct.append((char) (0x4E00 + i)).append((char) (0x4E00 + i % 7));
+		}
+		String distinctFirst = distinct.toString();
+		String distinctSecond = distinct.reverse().toString();
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized(distinctFirst, distinctSecond);
+		System.out.println("Test 5.14: permutations with many distinct non-Latin-1 chars should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized(distinctFirst, distinctSecond.replace('\u4e01', '\u4e02'));
+		System.out.println("Test 5.15: many distinct non-Latin-1 chars with one swapped should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		// a few hundred thousand distinct astral code points, a table past 2^16 slots must still spread them out
+		StringBuilder astral = new StringBuilder();
+		for (int i = 0; i < 400000; i++) {
+			astral.appendCodePoint(0x10000 + i);
+		}
+		String astralFirst = astral.toString();
+		String astralSecond = astral.reverse().toString();
+		long astralStart = System.nanoTime();
+		isPermutation = checker7.stringIsPermutationOfAnotherOptimized(astralFirst, astralSecond);
+		long astralMillis = (System.nanoTime() - astralStart) / 1000000;
+		System.out.println("Test 5.16: hundreds of thousands of distinct code points should be counted quickly. Result: "
+				+ (isPermutation && astralMillis < 5000 ? "test passed" : "test failed"));
+		
+		// test 6: streams
+		PermutationChecker checker5 = new PermutationChecker();
+		isPermutation = checker5.streamIsPermutationOfAnother(new StringReader("dog12"), new StringReader("g1o2d"));
+		System.out.println("Test 6.1: permutation readers should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker5.streamIsPermutationOfAnother(new StringReader("something"), new StringReader("something"));
+		System.out.println("Test 6.2: identical readers should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker5.streamIsPermutationOfAnother(new StringReader("abcdef"), new StringReader("abc"));
+		System.out.println("Test 6.3: readers of different length should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker5.streamIsPermutationOfAnother(new StringReader("\u00e9t\u00e9\u4e2d"), new StringReader("\u4e2d\u00e9\u00e9t"));
+		System.out.println("Test 6.4: non-ASCII permutation readers should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker5.streamIsPermutationOfAnother(new ByteArrayInputStream(new byte[] { 1, 2, 3, -1 }),
+				new ByteArrayInputStream(new byte[] { -1, 3, 2, 1 }));
+		System.out.println("Test 6.5: permutation byte streams should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker5.streamIsPermutationOfAnother(new ByteArrayInputStream(new byte[] { 1, 2, 3 }),
+				new ByteArrayInputStream(new byte[] { 1, 2, 4 }));
+		System.out.println("Test 6.6: non-permutation byte streams should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		// test 7: files, longer than one stream buffer so the chunks are exercised
+		PermutationChecker checker6 = new PermutationChecker();
+		StringBuilder lines = new StringBuilder();
+		StringBuilder reversedLines = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			lines.append("line ").append(i).append('\n');
+			reversedLines.append("line ").append(19999 - i).append('\n');
+		}
+		Path firstPath = Files.createTempFile("permutation", ".txt");
+		Path secondPath = Files.createTempFile("permutation", ".txt");
+		try {
+			Files.write(firstPath, lines.toString().getBytes(StandardCharsets.US_ASCII));
+			Files.write(secondPath, reversedLines.toString().getBytes(StandardCharsets.US_ASCII));
+			isPermutation = checker6.fileIsPermutationOfAnother(firstPath, secondPath);
+			System.out.println("Test 7.1: reordered files should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+			
+			isPermutation = checker6.fileIsPermutationOfAnother(firstPath, firstPath);
+			System.out.println("Test 7.2: identical files should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+			
+			try (InputStream firstStream = Files.newInputStream(firstPath); InputStream secondStream = Files.newInputStream(secondPath)) {
+				isPermutation = checker6.streamIsPermutationOfAnother(firstStream, secondStream);
+			}
+			System.out.println("Test 7.3: reordered file streams should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+			
+			Files.write(secondPath, reversedLines.append('x').toString().getBytes(StandardCharsets.US_ASCII));
+			isPermutation = checker6.fileIsPermutationOfAnother(firstPath, secondPath);
+			System.out.println("Test 7.4: files of different size should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		}
+		finally {
+			Files.deleteIfExists(firstPath);
+			Files.deleteIfExists(secondPath);
+		}
+		
+		// test 8: batches, large enough to be split across threads
+		PermutationChecker checker8 = new PermutationChecker();
+		Random random = new Random(8);
+		String[] firstStrings = new String[20000];
+		String[] secondStrings = new String[firstStrings.length];
+		for (int i = 0; i < firstStrings.length; i++) {
+			char[] chars = new char[random.nextInt(i % 500 == 0 ? 5000 : 12)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = (char) ('a' + random.nextInt(3));
+			}
+			firstStrings[i] = new String(chars);
+			// shuffle for a permutation, or change one char for a likely miss
+			for (int j = chars.length - 1; j > 0; j--) {
+				int k = random.nextInt(j + 1);
+				char swap = chars[j];
+				chars[j] = chars[k];
+				chars[k] = swap;
+			}
+			if (chars.length > 0 && random.nextBoolean()) {
+				chars[0] = 'd';
+			}
+			secondStrings[i] = new String(chars);
+		}
+		boolean[] sortedResults = checker8.stringIsPermutationOfAnotherBatch(firstStrings, secondStrings);
+		boolean[] countedResults = checker8.stringIsPermutationOfAnotherOptimizedBatch(firstStrings, secondStrings);
+		boolean[] sequentialResults = checker8.stringIsPermutationOfAnotherOptimizedBatch(firstStrings, secondStrings, false);
+		boolean batchAgrees = true;
+		for (int i = 0; i < firstStrings.length; i++) {
+			boolean expected = checker8.stringIsPermutationOfAnother(firstStrings[i], secondStrings[i]);
+			batchAgrees &= sortedResults[i] == expected && countedResults[i] == expected && sequentialResults[i] == expected;
+		}
+		System.out.println("Test 8.1: batch results should agree with single checks. Result: " + (batchAgrees ? "test passed" : "test failed"));
+		
+		// test 9: char sequences and encoded bytes
+		PermutationChecker checker9 = new PermutationChecker();
+		isPermutation = checker9.stringIsPermutationOfAnotherOptimized(new StringBuilder("listen"), "silent");
+		System.out.println("Test 9.1: a char sequence permutation should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker9.stringIsPermutationOfAnother(new StringBuilder("listen"), new StringBuilder("listen"));
+		System.out.println("Test 9.2: identical char sequences should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		byte[] record = "..listen..silent..".getBytes(StandardCharsets.US_ASCII);
+		isPermutation = checker9.stringIsPermutationOfAnotherOptimized(record, 2, 6, record, 10, 6, StandardCharsets.US_ASCII)
+				&& checker9.stringIsPermutationOfAnother(record, 2, 6, record, 10, 6, StandardCharsets.US_ASCII);
+		System.out.println("Test 9.3: ASCII byte range permutations should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		ByteBuffer firstBuffer = ByteBuffer.allocateDirect(16).put("r\u00e9sum\u00e9".getBytes(StandardCharsets.UTF_8));
+		firstBuffer.flip();
+		ByteBuffer secondBuffer = ByteBuffer.allocateDirect(16).put("\u00e9mus\u00e9r".getBytes(StandardCharsets.UTF_8));
+		secondBuffer.flip();
+		isPermutation = checker9.stringIsPermutationOfAnotherOptimized(firstBuffer, secondBuffer, StandardCharsets.UTF_8)
+				&& checker9.stringIsPermutationOfAnother(firstBuffer, secondBuffer, StandardCharsets.UTF_8);
+		System.out.println("Test 9.4: direct UTF-8 buffer permutations should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		// the same bytes in a different order, but not the same chars
+		isPermutation = checker9.stringIsPermutationOfAnotherOptimized(ByteBuffer.wrap(new byte[] { (byte) 0xC3, (byte) 0xA9, 'a' }),
+				ByteBuffer.wrap(new byte[] { 'a', (byte) 0xA9, (byte) 0xC3 }), StandardCharsets.UTF_8);
+		System.out.println("Test 9.5: reordered bytes of a multi-byte UTF-8 char should return false. Result: " + (!isPermutation ? "test passed" : "test failed"));
+		
+		isPermutation = checker9.stringIsPermutationOfAnotherOptimized(ByteBuffer.wrap(new byte[] { (byte) 0xE9, 'a' }),
+				ByteBuffer.wrap(new byte[] { 'a', (byte) 0xE9 }), StandardCharsets.ISO_8859_1);
+		System.out.println("Test 9.6: Latin-1 buffer permutations should return true. Result: " + (isPermutation ? "test passed" : "test failed"));
+		
+		// long and repetitive enough for the vector kernel when the JVM has it, with a tail shorter than a vector
+		byte[] longBytes = new byte[70001];
+		for (int i = 0; i < longBytes.length; i++) {
+			longBytes[i] = (byte) (i / 8 * 37);
+		}
+		byte[] reversedBytes = new byte[longBytes.length];
+		for (int i = 0; i < longBytes.length; i++) {
+			reversedBytes[i] = longBytes[longBytes.length - 1 - i];
+		}
+		isPermutation = checker9.stringIsPermutationOfAnotherOptimized(ByteBuffer.wrap(longBytes), ByteBuffer.wrap(reversedBytes), StandardCharsets.ISO_8859_1);
+		reversedBytes[longBytes.length - 1]++;
+		boolean changedIsPermutation = checker9.stringIsPermutationOfAnotherOptimized(ByteBuffer.wrap(longBytes), ByteBuffer.wrap(reversedBytes), StandardCharsets.ISO_8859_1);
+		System.out.println("Test 9.7: long Latin-1 buffers should be counted exactly. Result: " + (isPermutation && !changedIsPermutation ? "test passed" : "test failed"));
 		
-		checker4.stringIsPermutationOfAnotherOptimized("abcdef", "abc");
-		System.out.println("Test 4.2: substrings should return false. Result: " + (!checker4.getIsPermutation() ? "test passed" : "test failed"));	
+		String longLatin1 = new String(longBytes, StandardCharsets.ISO_8859_1);
+		String reversedLatin1 = new StringBuilder(longLatin1).reverse().toString();
+		boolean stringsCounted = checker9.stringIsPermutationOfAnotherOptimized(longLatin1, reversedLatin1)
+				&& !checker9.stringIsPermutationOfAnotherOptimized(longLatin1, reversedLatin1.substring(1) + '\u00ff')
+				&& checker9.stringIsPermutationOfAnotherOptimized(longLatin1 + "\u4e2d", "\u4e2d" + reversedLatin1);
+		System.out.println("Test 9.8: long repetitive Latin-1 strings should be counted exactly. Result: " + (stringsCounted ? "test passed" : "test failed"));
 	}
 }
@@ -0,0 +1,257 @@
+package com.machineghost.examples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/***
+ * Group strings into permutation classes (anagrams) without comparing them pairwise.
+ * Like the counting approach in PermutationChecker, each string is reduced to its char frequencies,
+ * here folded into a 64-bit signature: the sum of a mixed hash of every char. The sum doesn't depend
+ * on char order, so permutations always share a signature; a shared signature is confirmed exactly,
+ * so a hash collision can never merge two classes.
+ * Assumption: case and whitespace sensitive, and unlike PermutationChecker a string is in its own class
+ *
+ */
+public class PermutationIndex {
+	
+	// below this many strings a grouping task runs on its own thread instead of splitting
+	private static final int PARALLEL_THRESHOLD = 4096;
+	
+	private final PermutationChecker permutationChecker = new PermutationChecker();
+	private final ConcurrentLongMap<Bucket> buckets = new ConcurrentLongMap<Bucket>(ForkJoinPool.getCommonPoolParallelism());
+	
+	/***
+	 * The classes that share one signature, almost always exactly one
+	 *
+	 */
+	private static final class Bucket {
+		final List<List<String>> classes = new ArrayList<List<String>>(1);
+	}
+	
+	public PermutationIndex() { }
+	
+	/***
+	 * Add a string to its permutation class. Safe to call from any number of threads.
+	 * @param string: the string to add
+	 * @return false if the string is null and wasn't added
+	 */
+	public boolean add(String string) {
+		if (string == null) {
+			return false;
+		}
+		
+		Bucket bucket = buckets.getOrCreate(signature(string), Bucket::new);
+		synchronized (bucket) {
+			List<String> permutationClass = findClass(bucket, string);
+			if (permutationClass == null) {
+				permutationClass = new ArrayList<String>();
+				bucket.classes.add(permutationClass);
+			}
+			permutationClass.add(string);
+		}
+		return true;
+	}
+	
+	/***
+	 * Add many strings, splitting the work across the fork-join common pool
+	 * @param strings: the strings to add, nulls are skipped
+	 */
+	public void addAll(List<String> strings) {
+		ForkJoinPool.commonPool().invoke(new AddTask(strings, 0, strings.size()));
+	}
+	
+	/***
+	 * Find every stored string that is a permutation of the given string: O(length)
+	 * @param string: the string to look up
+	 * @return the stored strings in the same permutation class, including the string itself if it was stored
+	 */
+	public List<String> findPermutationsOf(String string) {
+		if (string == null) {
+			return Collections.emptyList();
+		}
+		
+		Bucket bucket = buckets.get(signature(string));
+		if (bucket == null) {
+			return Collections.emptyList();
+		}
+		synchronized (bucket) {
+			List<String> permutationClass = findClass(bucket, string);
+			return permutationClass == null ? Collections.<String>emptyList() : new ArrayList<String>(permutationClass);
+		}
+	}
+	
+	/***
+	 * Count the stored strings that are a permutation of the given string, without copying them: O(length)
+	 * @param string: the string to look up
+	 * @return the size of the string's permutation class
+	 */
+	public int countPermutationsOf(String string) {
+		if (string == null) {
+			return 0;
+		}
+		
+		Bucket bucket = buckets.get(signature(string));
+		if (bucket == null) {
+			return 0;
+		}
+		synchronized (bucket) {
+			List<String> permutationClass = findClass(bucket, string);
+			return permutationClass == null ? 0 : permutationClass.size();
+		}
+	}
+	
+	/***
+	 * Get every permutation class
+	 * @return a copy of each class, in no particular order
+	 */
+	public List<List<String>> groupAll() {
+		List<List<String>> groups = new ArrayList<List<String>>();
+		for (Bucket bucket : buckets.values()) {
+			synchronized (bucket) {
+				for (List<String> permutationClass : bucket.classes) {
+					groups.add(new ArrayList<String>(permutationClass));
+				}
+			}
+		}
+		return groups;
+	}
+	
+	/***
+	 * Compute an order-insensitive signature of a string's char frequencies
+	 * @param string: the string to sign
+	 * @return the signature, equal for all permutations of the string
+	 */
+	static long signature(String string) {
+		long sum = 0;
+		for (int i = 0; i < string.length(); i++) {
+			sum += mix(string.charAt(i) + 1);
+		}
+		// fold in the length so strings of different lengths rarely collide
+		return mix(sum + string.length());
+	}
+	
+	/***
+	 * Scramble the bits of a value (the MurmurHash3 finalizer)
+	 */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB9FE1A85EC53L;
+		value ^= value >>> 33;
+		return value;
+	}
+	
+	/***
+	 * Find the class in a bucket whose strings are exact permutations of a string, confirming by counting: O(length)
+	 * @return the class, or null if there isn't one
+	 */
+	private List<String> findClass(Bucket bucket, String string) {
+		for (List<String> permutationClass : bucket.classes) {
+			String representative = permutationClass.get(0);
+			if (representative.equals(string) || permutationChecker.stringIsPermutationOfAnotherOptimized(representative, string)) {
+				return permutationClass;
+			}
+		}
+		return null;
+	}
+	
+	/***
+	 * Adds a range of strings, splitting in half until the range is small
+	 *
+	 */
+	private final class AddTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final List<String> strings;
+		private final int from;
+		private final int to;
+		
+		AddTask(List<String> strings, int from, int to) {
+			this.strings = strings;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					add(strings.get(i));
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new AddTask(strings, from, middle), new AddTask(strings, middle, to));
+		}
+	}
+	
+	public static void main(String[] args) {
+		// test 1: null strings
+		PermutationIndex index1 = new PermutationIndex();
+		boolean added = index1.add(null);
+		System.out.println("Test 1.1: null string should not be added. Result: " + (!added ? "test passed" : "test failed"));
+		
+		int count = index1.countPermutationsOf(null);
+		System.out.println("Test 1.2: null string should have no permutations. Result: " + (count == 0 ? "test passed" : "test failed"));
+		
+		// test 2: lookups
+		PermutationIndex index2 = new PermutationIndex();
+		index2.addAll(Arrays.asList("dog", "god", "cat", "act", "tac", "dog", "d og", "\u00e9t\u00e9", "t\u00e9\u00e9"));
+		List<String> permutations = index2.findPermutationsOf("odg");
+		Collections.sort(permutations);
+		System.out.println("Test 2.1: permutations should be found. Result: " + (permutations.equals(Arrays.asList("dog", "dog", "god")) ? "test passed" : "test failed"));
+		
+		count = index2.countPermutationsOf("tca");
+		System.out.println("Test 2.2: permutations should be counted. Result: " + (count == 3 ? "test passed" : "test failed"));
+		
+		count = index2.countPermutationsOf("\u00e9\u00e9t");
+		System.out.println("Test 2.3: non-ASCII permutations should be counted. Result: " + (count == 2 ? "test passed" : "test failed"));
+		
+		count = index2.countPermutationsOf("fish");
+		System.out.println("Test 2.4: unknown string should have no permutations. Result: " + (count == 0 ? "test passed" : "test failed"));
+		
+		int groups = index2.groupAll().size();
+		System.out.println("Test 2.5: strings should be grouped by permutation class. Result: " + (groups == 4 ? "test passed" : "test failed"));
+		
+		// test 3: parallel grouping agrees with sorted-char keys
+		PermutationIndex index3 = new PermutationIndex();
+		Random random = new Random(11);
+		List<String> strings = new ArrayList<String>();
+		for (int i = 0; i < 100000; i++) {
+			char[] chars = new char[1 + random.nextInt(6)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = (char) ('a' + random.nextInt(5));
+			}
+			strings.add(new String(chars));
+		}
+		index3.addAll(strings);
+		boolean consistent = true;
+		int total = 0;
+		for (List<String> group : index3.groupAll()) {
+			char[] key = group.get(0).toCharArray();
+			Arrays.sort(key);
+			for (String member : group) {
+				char[] memberKey = member.toCharArray();
+				Arrays.sort(memberKey);
+				consistent &= Arrays.equals(key, memberKey);
+			}
+			total += group.size();
+		}
+		Set<String> distinctKeys = new HashSet<String>();
+		for (String string : strings) {
+			char[] key = string.toCharArray();
+			Arrays.sort(key);
+			distinctKeys.add(new String(key));
+		}
+		consistent &= total == strings.size() && index3.groupAll().size() == distinctKeys.size();
+		System.out.println("Test 3.1: parallel grouping should match sorted-char keys. Result: " + (consistent ? "test passed" : "test failed"));
+	}
+}
@@ -0,0 +1,218 @@
+package com.machineghost.examples;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***
+ * Index a collection of strings by rotation class, so "is any stored string a rotation of X"
+ * doesn't need an isRotation call per stored string.
+ * Each string is stored under its canonical (least, case-folded) rotation, so every query is O(length).
+ * Assumption: case-insensitive, the same as StringRotationChecker. A string is in its own rotation class.
+ *
+ */
+public class RotationIndex {
+	
+	// rough object sizes used for the memory footprint estimate (64-bit JVM, compressed oops)
+	private static final long STRING_OVERHEAD_BYTES = 40;
+	private static final long MAP_ENTRY_BYTES = 32;
+	private static final long SET_OVERHEAD_BYTES = 64;
+	private static final long SET_ENTRY_BYTES = 48;
+	
+	private final StringRotationChecker rotationChecker = new StringRotationChecker();
+	private final Map<String, Set<String>> rotationClasses = new HashMap<String, Set<String>>();
+	private int size;
+	
+	public RotationIndex() { }
+	
+	/***
+	 * Add a string to the index
+	 * @param string: the string to add
+	 * @return true if the string was not already in the index
+	 */
+	public boolean add(String string) {
+		if (string == null || string.isEmpty()) {
+			return false;
+		}
+		
+		String key = rotationChecker.canonicalRotation(string);
+		Set<String> rotationClass = rotationClasses.get(key);
+		if (rotationClass == null) {
+			rotationClass = new LinkedHashSet<String>();
+			rotationClasses.put(key, rotationClass);
+		}
+		
+		if (!rotationClass.add(string)) {
+			return false;
+		}
+		size++;
+		return true;
+	}
+	
+	/***
+	 * Remove a string from the index
+	 * @param string: the string to remove
+	 * @return true if the string was in the index
+	 */
+	public boolean remove(String string) {
+		if (string == null || string.isEmpty()) {
+			return false;
+		}
+		
+		String key = rotationChecker.canonicalRotation(string);
+		Set<String> rotationClass = rotationClasses.get(key);
+		if (rotationClass == null || !rotationClass.remove(string)) {
+			return false;
+		}
+		
+		// drop empty classes so removed strings don't keep their key alive
+		if (rotationClass.isEmpty()) {
+			rotationClasses.remove(key);
+		}
+		size--;
+		return true;
+	}
+	
+	/***
+	 * Determine if any stored string is a rotation of the given string
+	 * @param string: the string to look up
+	 * @return true if at least one stored string is in the same rotation class
+	 */
+	public boolean contains(String string) {
+		if (string == null || string.isEmpty()) {
+			return false;
+		}
+		
+		return rotationClasses.containsKey(rotationChecker.canonicalRotation(string));
+	}
+	
+	/***
+	 * Find every stored string that is a rotation of the given string
+	 * @param string: the string to look up
+	 * @return the stored strings in the same rotation class, in insertion order
+	 */
+	public List<String> findAllRotationsOf(String string) {
+		if (string == null || string.isEmpty()) {
+			return Collections.emptyList();
+		}
+		
+		Set<String> rotationClass = rotationClasses.get(rotationChecker.canonicalRotation(string));
+		if (rotationClass == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<String>(rotationClass);
+	}
+	
+	/***
+	 * Group the stored strings by rotation class
+	 * @return one list per rotation class, keyed by its canonical rotation
+	 */
+	public Map<String, List<String>> groupByRotationClass() {
+		Map<String, List<String>> groups = new HashMap<String, List<String>>(rotationClasses.size() * 2);
+		for (Map.Entry<String, Set<String>> entry : rotationClasses.entrySet()) {
+			groups.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+		}
+		return groups;
+	}
+	
+	/***
+	 * Get the number of stored strings
+	 * @return the number of stored strings
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/***
+	 * Get the number of distinct rotation classes
+	 * @return the number of rotation classes
+	 */
+	public int rotationClassCount() {
+		return rotationClasses.size();
+	}
+	
+	/***
+	 * Estimate the heap used by the index: keys, stored strings and the map and set structures.
+	 * The stored strings are counted too, even though callers may also hold references to them.
+	 * @return the estimated footprint in bytes
+	 */
+	public long memoryFootprint() {
+		long bytes = 0;
+		for (Map.Entry<String, Set<String>> entry : rotationClasses.entrySet()) {
+			bytes += MAP_ENTRY_BYTES + stringBytes(entry.getKey()) + SET_OVERHEAD_BYTES;
+			for (String string : entry.getValue()) {
+				bytes += SET_ENTRY_BYTES + stringBytes(string);
+			}
+		}
+		return bytes;
+	}
+	
+	/***
+	 * Estimate the heap used by a string
+	 * @param string: the string to measure
+	 * @return the estimated size in bytes
+	 */
+	private static long stringBytes(String string) {
+		return STRING_OVERHEAD_BYTES + 2L * string.length();
+	}
+	
+	public static void main(String[] args) {
+		boolean result = false;
+		
+		// test 1: null and empty strings
+		RotationIndex index1 = new RotationIndex();
+		result = index1.add(null);
+		System.out.println("Test 1.1: null string should not be added. Result: " + (!result ? "test passed" : "test failed"));
+		
+		result = index1.add("");
+		System.out.println("Test 1.2: empty string should not be added. Result: " + (!result ? "test passed" : "test failed"));
+		
+		result = index1.contains(null);
+		System.out.println("Test 1.3: null string should not be found. Result: " + (!result ? "test passed" : "test failed"));
+		
+		// test 2: lookups
+		RotationIndex index2 = new RotationIndex();
+		index2.add("teacup");
+		index2.add("CupTea");
+		index2.add("abab");
+		index2.add("catdog");
+		result = index2.contains("upteac");
+		System.out.println("Test 2.1: rotation of a stored string should be found. Result: " + (result ? "test passed" : "test failed"));
+		
+		result = index2.contains("eatcup");
+		System.out.println("Test 2.2: non-rotation should not be found. Result: " + (!result ? "test passed" : "test failed"));
+		
+		result = index2.findAllRotationsOf("TEACUP").size() == 2;
+		System.out.println("Test 2.3: all rotations of a string should be found. Result: " + (result ? "test passed" : "test failed"));
+		
+		result = index2.groupByRotationClass().size() == 3 && index2.rotationClassCount() == 3 && index2.size() == 4;
+		System.out.println("Test 2.4: strings should be grouped by rotation class. Result: " + (result ? "test passed" : "test failed"));
+		
+		// test 3: duplicates and removals
+		RotationIndex index3 = new RotationIndex();
+		index3.add("teacup");
+		result = index3.add("teacup");
+		System.out.println("Test 3.1: duplicate string should not be added. Result: " + (!result ? "test passed" : "test failed"));
+		
+		index3.add("cuptea");
+		result = index3.remove("teacup") && index3.contains("teacup");
+		System.out.println("Test 3.2: other rotations should remain after a removal. Result: " + (result ? "test passed" : "test failed"));
+		
+		result = index3.remove("cuptea") && !index3.contains("teacup") && index3.rotationClassCount() == 0;
+		System.out.println("Test 3.3: removing the last rotation should drop the class. Result: " + (result ? "test passed" : "test failed"));
+		
+		result = index3.remove("cuptea");
+		System.out.println("Test 3.4: removing a missing string should return false. Result: " + (!result ? "test passed" : "test failed"));
+		
+		// test 4: memory footprint
+		RotationIndex index4 = new RotationIndex();
+		long emptyFootprint = index4.memoryFootprint();
+		index4.add("teacup");
+		result = emptyFootprint == 0 && index4.memoryFootprint() > 0;
+		System.out.println("Test 4.1: memory footprint should grow with the index. Result: " + (result ? "test passed" : "test failed"));
+	}
+}
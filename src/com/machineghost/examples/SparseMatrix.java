@@ -0,0 +1,343 @@
+package com.machineghost.examples;
+
+import java.util.Arrays;
+
+/***
+ * An int matrix that stores only its non-zero elements, in compressed sparse row (CSR) form:
+ * the column and value of each element, row by row, and where each row starts.
+ * A matrix can also carry row and column masks, bitsets of rows and columns that read as zero
+ * whatever is stored. ZeroMatrixChecker uses them to zero whole rows and columns without writing anything,
+ * so a transform costs O(non-zeros + rows + columns) rather than O(rows x columns).
+ *
+ */
+public final class SparseMatrix {
+	
+	private final int rows;
+	private final int columns;
+	private final int[] rowStarts;
+	private final int[] columnIndices;
+	private final int[] values;
+	
+	// null when nothing is masked
+	private final long[] zeroRows;
+	private final long[] zeroColumns;
+	
+	private SparseMatrix(int rows, int columns, int[] rowStarts, int[] columnIndices, int[] values, long[] zeroRows, long[] zeroColumns) {
+		this.rows = rows;
+		this.columns = columns;
+		this.rowStarts = rowStarts;
+		this.columnIndices = columnIndices;
+		this.values = values;
+		this.zeroRows = zeroRows;
+		this.zeroColumns = zeroColumns;
+	}
+	
+	/***
+	 * Wrap a matrix in compressed sparse row form, without copying it
+	 * @param rows: the number of rows
+	 * @param columns: the number of columns
+	 * @param rowStarts: where each row's elements start, rows + 1 entries ending with the number of elements
+	 * @param columnIndices: the column of each element, increasing within each row
+	 * @param values: the value of each element, a stored zero is allowed and reads as zero
+	 * @return the matrix
+	 */
+	public static SparseMatrix fromCsr(int rows, int columns, int[] rowStarts, int[] columnIndices, int[] values) {
+		if (rows < 0 || columns < 0) {
+			throw new IllegalArgumentException("rows and columns must not be negative: " + rows + ", " + columns);
+		}
+		if (rowStarts.length != rows + 1 || rowStarts[0] != 0 || rowStarts[rows] != columnIndices.length || columnIndices.length != values.length) {
+			throw new IllegalArgumentException("rowStarts must have rows + 1 entries from 0 to the number of elements");
+		}
+		for (int row = 0; row < rows; row++) {
+			if (rowStarts[row] > rowStarts[row + 1]) {
+				throw new IllegalArgumentException("rowStarts must not decrease: row " + row);
+			}
+			for (int element = rowStarts[row]; element < rowStarts[row + 1]; element++) {
+				int column = columnIndices[element];
+				if (column < 0 || column >= columns || (element > rowStarts[row] && column <= columnIndices[element - 1])) {
+					throw new IllegalArgumentException("columns must be in range and increasing within a row: row " + row + ", column " + column);
+				}
+			}
+		}
+		return new SparseMatrix(rows, columns, rowStarts, columnIndices, values, null, null);
+	}
+	
+	/***
+	 * Build a matrix from coordinate (COO) form, elements in any order
+	 * @param rows: the number of rows
+	 * @param columns: the number of columns
+	 * @param rowIndices: the row of each element
+	 * @param columnIndices: the column of each element
+	 * @param values: the value of each element
+	 * @return the matrix, in compressed sparse row form
+	 */
+	public static SparseMatrix fromCoo(int rows, int columns, int[] rowIndices, int[] columnIndices, int[] values) {
+		if (rowIndices.length != columnIndices.length || rowIndices.length != values.length) {
+			throw new IllegalArgumentException("rowIndices, columnIndices and values must be the same length");
+		}
+		if (rows < 0) {
+			throw new IllegalArgumentException("rows must not be negative: " + rows);
+		}
+		
+		// counting sort by row
+		int[] rowStarts = new int[rows + 1];
+		for (int row : rowIndices) {
+			if (row < 0 || row >= rows) {
+				throw new IllegalArgumentException("row out of range: " + row);
+			}
+			rowStarts[row + 1]++;
+		}
+		for (int row = 0; row < rows; row++) {
+			rowStarts[row + 1] += rowStarts[row];
+		}
+		
+		// within a row, sort by column: pack the column above the element's position and sort the longs
+		long[] packed = new long[values.length];
+		int[] next = Arrays.copyOf(rowStarts, rows);
+		for (int element = 0; element < values.length; element++) {
+			packed[next[rowIndices[element]]++] = ((long) columnIndices[element] << 32) | element;
+		}
+		int[] sortedColumns = new int[values.length];
+		int[] sortedValues = new int[values.length];
+		for (int row = 0; row < rows; row++) {
+			Arrays.sort(packed, rowStarts[row], rowStarts[row + 1]);
+			for (int element = rowStarts[row]; element < rowStarts[row + 1]; element++) {
+				sortedColumns[element] = (int) (packed[element] >> 32);
+				sortedValues[element] = values[(int) packed[element]];
+			}
+		}
+		// fromCsr rejects columns out of range and duplicates, which are now adjacent
+		return fromCsr(rows, columns, rowStarts, sortedColumns, sortedValues);
+	}
+	
+	/***
+	 * Copy the non-zero elements of a rectangular dense matrix
+	 * @param matrix: the matrix to copy, every row as long as the first
+	 * @return the sparse matrix
+	 */
+	public static SparseMatrix of(int[][] matrix) {
+		int rows = matrix.length;
+		int columns = rows == 0 ? 0 : matrix[0].length;
+		int[] rowStarts = new int[rows + 1];
+		for (int row = 0; row < rows; row++) {
+			int count = 0;
+			for (int column = 0; column < columns; column++) {
+				if (matrix[row][column] != 0) {
+					count++;
+				}
+			}
+			rowStarts[row + 1] = rowStarts[row] + count;
+		}
+		int[] columnIndices = new int[rowStarts[rows]];
+		int[] values = new int[rowStarts[rows]];
+		for (int row = 0; row < rows; row++) {
+			int element = rowStarts[row];
+			for (int column = 0; column < columns; column++) {
+				if (matrix[row][column] != 0) {
+					columnIndices[element] = column;
+					values[element++] = matrix[row][column];
+				}
+			}
+		}
+		return new SparseMatrix(rows, columns, rowStarts, columnIndices, values, null, null);
+	}
+	
+	public int rows() {
+		return rows;
+	}
+	
+	public int columns() {
+		return columns;
+	}
+	
+	/***
+	 * Get an element: O(log of the row's stored elements)
+	 * @param row: the element's row
+	 * @param column: the element's column
+	 * @return the element, zero if it isn't stored or is masked
+	 */
+	public int get(int row, int column) {
+		if (row < 0 || row >= rows || column < 0 || column >= columns) {
+			throw new IndexOutOfBoundsException("no element at " + row + ", " + column + " in a " + rows + "x" + columns + " matrix");
+		}
+		if (isMasked(zeroRows, row) || isMasked(zeroColumns, column)) {
+			return 0;
+		}
+		int element = Arrays.binarySearch(columnIndices, rowStarts[row], rowStarts[row + 1], column);
+		return element < 0 ? 0 : values[element];
+	}
+	
+	/***
+	 * Count the elements that are stored, non-zero and not masked: O(stored elements)
+	 * @return the number of non-zero elements
+	 */
+	public int nonZeroCount() {
+		int count = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int element = rowStarts[row]; element < rowStarts[row + 1]; element++) {
+				if (isLive(row, element)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
+	/***
+	 * Build a new matrix holding only the non-zero elements, with no masks
+	 * @return the compacted matrix
+	 */
+	public SparseMatrix compact() {
+		int[] compactStarts = new int[rows + 1];
+		int[] compactColumns = new int[nonZeroCount()];
+		int[] compactValues = new int[compactColumns.length];
+		int next = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int element = rowStarts[row]; element < rowStarts[row + 1]; element++) {
+				if (isLive(row, element)) {
+					compactColumns[next] = columnIndices[element];
+					compactValues[next++] = values[element];
+				}
+			}
+			compactStarts[row + 1] = next;
+		}
+		return new SparseMatrix(rows, columns, compactStarts, compactColumns, compactValues, null, null);
+	}
+	
+	/***
+	 * Write the matrix out in full, masks applied
+	 * @return the dense matrix
+	 */
+	public int[][] toArray() {
+		int[][] matrix = new int[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			for (int element = rowStarts[row]; element < rowStarts[row + 1]; element++) {
+				if (isLive(row, element)) {
+					matrix[row][columnIndices[element]] = values[element];
+				}
+			}
+		}
+		return matrix;
+	}
+	
+	/***
+	 * Zero every row and column that holds a zero, as masks over the same stored elements.
+	 * A row holds a zero if it stores fewer non-zero elements than there are columns, and likewise for a column.
+	 * The columns are only counted if some row is full, otherwise every row is masked anyway.
+	 * @return a view of the transformed matrix, sharing this matrix's arrays
+	 */
+	SparseMatrix maskZeroRowsAndColumns() {
+		long[] maskedRows = new long[(rows + 63) >>> 6];
+		long[] maskedColumns = new long[(columns + 63) >>> 6];
+		boolean anyFullRow = false;
+		for (int row = 0; row < rows; row++) {
+			if (liveInRow(row) < columns) {
+				maskedRows[row >>> 6] |= 1L << row;
+			}
+			else {
+				anyFullRow = true;
+			}
+		}
+		
+		if (anyFullRow) {
+			int[] columnCounts = new int[columns];
+			for (int row = 0; row < rows; row++) {
+				for (int element = rowStarts[row]; element < rowStarts[row + 1]; element++) {
+					if (isLive(row, element)) {
+						columnCounts[columnIndices[element]]++;
+					}
+				}
+			}
+			for (int column = 0; column < columns; column++) {
+				if (columnCounts[column] < rows) {
+					maskedColumns[column >>> 6] |= 1L << column;
+				}
+			}
+		}
+		// with no full row every element is masked by its row, the columns don't matter
+		
+		return new SparseMatrix(rows, columns, rowStarts, columnIndices, values, maskedRows, maskedColumns);
+	}
+	
+	/***
+	 * Determine if another sparse matrix has the same shape and values, masks applied: O(stored elements + rows)
+	 */
+	boolean sameValues(SparseMatrix other) {
+		if (rows != other.rows || columns != other.columns) {
+			return false;
+		}
+		for (int row = 0; row < rows; row++) {
+			// walk both rows' live elements in step
+			int element = nextLive(row, rowStarts[row]);
+			int otherElement = other.nextLive(row, other.rowStarts[row]);
+			while (element < rowStarts[row + 1] && otherElement < other.rowStarts[row + 1]) {
+				if (columnIndices[element] != other.columnIndices[otherElement] || values[element] != other.values[otherElement]) {
+					return false;
+				}
+				element = nextLive(row, element + 1);
+				otherElement = other.nextLive(row, otherElement + 1);
+			}
+			if (element < rowStarts[row + 1] || otherElement < other.rowStarts[row + 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/***
+	 * Determine if a dense matrix has the same shape and values, masks applied: O(rows x columns)
+	 */
+	boolean sameValues(int[][] matrix) {
+		if (matrix.length != rows) {
+			return false;
+		}
+		for (int row = 0; row < rows; row++) {
+			if (matrix[row].length != columns) {
+				return false;
+			}
+			int element = nextLive(row, rowStarts[row]);
+			for (int column = 0; column < columns; column++) {
+				int expected = 0;
+				if (element < rowStarts[row + 1] && columnIndices[element] == column) {
+					expected = values[element];
+					element = nextLive(row, element + 1);
+				}
+				if (matrix[row][column] != expected) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/***
+	 * @return the first live element of the row at or after the given one, or the row's end
+	 */
+	private int nextLive(int row, int element) {
+		while (element < rowStarts[row + 1] && !isLive(row, element)) {
+			element++;
+		}
+		return element;
+	}
+	
+	private int liveInRow(int row) {
+		int count = 0;
+		for (int element = rowStarts[row]; element < rowStarts[row + 1]; element++) {
+			if (isLive(row, element)) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/***
+	 * @return true if a stored element is non-zero and not masked
+	 */
+	private boolean isLive(int row, int element) {
+		return values[element] != 0 && !isMasked(zeroRows, row) && !isMasked(zeroColumns, columnIndices[element]);
+	}
+	
+	private static boolean isMasked(long[] mask, int index) {
+		return mask != null && (mask[index >>> 6] & (1L << index)) != 0;
+	}
+}
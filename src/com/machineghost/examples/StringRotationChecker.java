@@ -1,5 +1,10 @@
 package com.machineghost.examples;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 /***
  * Given two strings, check if the second string is a rotation of the first.
  * Assumption: case-insensitive
@@ -7,13 +12,150 @@ package com.machineghost.examples;
  */
 public class StringRotationChecker {
 
+	// per-thread KMP failure table, grown on demand so steady-state calls do not allocate
+	private static final ThreadLocal<int[]> failureTable = ThreadLocal.withInitial(() -> new int[64]);
+
 	/***
-	 * Determine if the second string is a rotation of the first
+	 * Determine if the second string is a rotation of the first.
+	 * This approach runs a KMP search for the second string over a virtual doubled view of the first
+	 * (firstString + firstString is never built), so it is linear: O(n) and allocation free.
+	 * Only the proper rotations (offsets 1 to n - 1) are searched, matching the naive approach.
 	 * @param firstString: the base string
 	 * @param secondString: the rotated string
 	 * @return true if the second string is a rotation of the first
 	 */
-	public Boolean isRotation(String firstString, String secondString) {
+	public boolean isRotation(String firstString, String secondString) {
+		return isRotation((CharSequence) firstString, secondString);
+	}
+	
+	/***
+	 * Determine if the second char sequence is a rotation of the first, reading the sequences in place
+	 * @param firstString: the base sequence
+	 * @param secondString: the rotated sequence
+	 * @return true if the second sequence is a rotation of the first
+	 */
+	public boolean isRotation(CharSequence firstString, CharSequence secondString) {
+		if (!CheckerMetrics.ENABLED) {
+			return rotation(firstString, secondString);
+		}
+		long start = CheckerMetrics.IS_ROTATION.start();
+		boolean result = rotation(firstString, secondString);
+		CheckerMetrics.IS_ROTATION.record(start, CheckerMetrics.length(firstString) + CheckerMetrics.length(secondString), result);
+		return result;
+	}
+	
+	/***
+	 * Determine if the text in the second buffer is a rotation of the text in the first, without building strings.
+	 * Latin-1 bytes, and ASCII or UTF-8 bytes below 0x80, are searched in place, other text is decoded first.
+	 * Each buffer is read from its position to its limit, and the positions are left alone.
+	 * @param firstBytes: the base encoded text
+	 * @param secondBytes: the rotated encoded text
+	 * @param charset: how both texts are encoded
+	 * @return true if the second text is a rotation of the first
+	 */
+	public boolean isRotation(ByteBuffer firstBytes, ByteBuffer secondBytes, Charset charset) {
+		return isRotation(EncodedChars.decode(firstBytes, charset), EncodedChars.decode(secondBytes, charset));
+	}
+	
+	/***
+	 * Determine if the text in the second byte range is a rotation of the text in the first, without building strings
+	 * @param firstBytes: the base encoded text
+	 * @param firstOffset: where the base text starts
+	 * @param firstLength: the number of bytes in the base text
+	 * @param secondBytes: the rotated encoded text
+	 * @param secondOffset: where the rotated text starts
+	 * @param secondLength: the number of bytes in the rotated text
+	 * @param charset: how both texts are encoded
+	 * @return true if the second text is a rotation of the first
+	 */
+	public boolean isRotation(byte[] firstBytes, int firstOffset, int firstLength, byte[] secondBytes, int secondOffset, int secondLength, Charset charset) {
+		return isRotation(EncodedChars.decode(firstBytes, firstOffset, firstLength, charset),
+				EncodedChars.decode(secondBytes, secondOffset, secondLength, charset));
+	}
+	
+	private boolean rotation(CharSequence firstString, CharSequence secondString) {
+		// check for null
+		if (firstString == null || secondString == null) {
+			return false;
+		}
+		
+		// check for empty
+		if (firstString.length() == 0 || secondString.length() == 0) {
+			return false;
+		}
+		
+		// check if strings are not the same length
+		if (firstString.length() != secondString.length()) {
+			return false;
+		}
+		
+		int length = secondString.length();
+		int[] failure = failureTable(length);
+		
+		// build the KMP failure table for the (case-folded) second string
+		failure[0] = 0;
+		int matched = 0;
+		for (int i = 1; i < length; i++) {
+			char current = fold(secondString.charAt(i));
+			while (matched > 0 && fold(secondString.charAt(matched)) != current) {
+				matched = failure[matched - 1];
+			}
+			if (fold(secondString.charAt(matched)) == current) {
+				matched++;
+			}
+			failure[i] = matched;
+		}
+		
+		// scan the doubled view from offset 1, a match must start no later than offset n - 1
+		matched = 0;
+		int lastIndex = 2 * length - 2;
+		for (int i = 1; i <= lastIndex; i++) {
+			char current = fold(firstString.charAt(i < length ? i : i - length));
+			while (matched > 0 && fold(secondString.charAt(matched)) != current) {
+				matched = failure[matched - 1];
+			}
+			if (fold(secondString.charAt(matched)) == current) {
+				matched++;
+				if (matched == length) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	/***
+	 * Determine, for each pair of strings at the same index, if the second is a rotation of the first
+	 * Large batches are split across cores by input length, small ones are checked on the calling thread.
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @return the result for each pair, in order
+	 */
+	public boolean[] isRotationBatch(String[] firstStrings, String[] secondStrings) {
+		return isRotationBatch(firstStrings, secondStrings, true);
+	}
+	
+	/***
+	 * Determine, for each pair of strings at the same index, if the second is a rotation of the first
+	 * @param firstStrings: the first string of each pair
+	 * @param secondStrings: the second string of each pair, the same number as the first
+	 * @param parallel: false to check every pair on the calling thread
+	 * @return the result for each pair, in order
+	 */
+	public boolean[] isRotationBatch(String[] firstStrings, String[] secondStrings, boolean parallel) {
+		return PairBatch.checkAll(firstStrings, secondStrings, this::isRotation, parallel);
+	}
+	
+	/***
+	 * Determine if the second string is a rotation of the first.
+	 * This approach builds every candidate rotation with substring and concat, then compares.
+	 * This approach is effective, but not efficient: O(n2) time and two new strings per offset.
+	 * @param firstString: the base string
+	 * @param secondString: the rotated string
+	 * @return true if the second string is a rotation of the first
+	 */
+	public boolean isRotationNaiveApproach(String firstString, String secondString) {
 		// check for null
 		if (firstString == null || secondString == null) {
 			return false;
@@ -43,8 +185,92 @@ public class StringRotationChecker {
 		return false;
 	}
 	
+	/***
+	 * Find the offset of the lexicographically least rotation of a string, ignoring case.
+	 * Gives the same answer as Booth's algorithm, but uses the two-pointer minimum
+	 * rotation scan so no failure table is needed: O(n) time, O(1) space.
+	 * Two strings are rotations of each other exactly when their least rotations are equal.
+	 * @param string: the string to examine
+	 * @return the start offset of the least rotation, 0 for null or empty strings
+	 */
+	public int leastRotation(String string) {
+		if (string == null || string.length() < 2) {
+			return 0;
+		}
+		
+		int length = string.length();
+		int i = 0;
+		int j = 1;
+		int k = 0;
+		while (i < length && j < length && k < length) {
+			char a = fold(string.charAt((i + k) % length));
+			char b = fold(string.charAt((j + k) % length));
+			if (a == b) {
+				k++;
+				continue;
+			}
+			
+			// the candidate with the larger char can't start the least rotation, nor can anything it matched
+			if (a > b) {
+				i += k + 1;
+			}
+			else {
+				j += k + 1;
+			}
+			if (i == j) {
+				j++;
+			}
+			k = 0;
+		}
+		return Math.min(i, j);
+	}
+	
+	/***
+	 * Build the canonical (least, case-folded) rotation of a string.
+	 * Precompute this once per string and compare the keys instead of calling isRotation on every pair.
+	 * Note that the keys also match for identical strings, which isRotation only accepts for repeating strings.
+	 * @param string: the string to canonicalize
+	 * @return the canonical rotation, or null for a null string
+	 */
+	public String canonicalRotation(String string) {
+		if (string == null) {
+			return null;
+		}
+		
+		int length = string.length();
+		int offset = leastRotation(string);
+		char[] canonical = new char[length];
+		for (int i = 0; i < length; i++) {
+			canonical[i] = fold(string.charAt((offset + i) % length));
+		}
+		return new String(canonical);
+	}
+	
+	/***
+	 * Fold a char the same way String.equalsIgnoreCase compares chars
+	 * @param c: the char to fold
+	 * @return the folded char
+	 */
+	static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+	
+	/***
+	 * Get this thread's failure table, growing it if it is too small
+	 * @param length: the minimum table length
+	 * @return the failure table
+	 */
+	private static int[] failureTable(int length) {
+		int[] table = failureTable.get();
+		if (table.length < length) {
+			table = new int[Math.max(length, table.length * 2)];
+			failureTable.set(table);
+		}
+		return table;
+	}
+	
 	public static void main(String[] args) {
-		Boolean isRotation = false;
+		boolean isRotation = false;
 		
 		// test 1: null and empty strings
 		StringRotationChecker checker1 = new StringRotationChecker();
@@ -86,5 +312,83 @@ public class StringRotationChecker {
 		
 		isRotation = checker4.isRotation("teacup", "upteac");
 		System.out.println("Test 4.2: strings that are rotations should return true. Result: " + (isRotation ? "test passed" : "test failed"));
+		
+		isRotation = checker4.isRotation("TeaCup", "cupTEA");
+		System.out.println("Test 4.3: rotations that differ in case should return true. Result: " + (isRotation ? "test passed" : "test failed"));
+		
+		isRotation = checker4.isRotation("abab", "abab");
+		System.out.println("Test 4.4: repeating strings are rotations of themselves and should return true. Result: " + (isRotation ? "test passed" : "test failed"));
+		
+		isRotation = checker4.isRotation("teacup", "teacup");
+		System.out.println("Test 4.5: identical non-repeating strings should return false. Result: " + (!isRotation ? "test passed" : "test failed"));
+		
+		// test 5: linear approach agrees with the naive approach
+		StringRotationChecker checker5 = new StringRotationChecker();
+		String[] candidates = { "a", "A", "aa", "ab", "ba", "aab", "aba", "baa", "abab", "BABA", "abcab", "cabab" };
+		boolean allAgree = true;
+		for (String first : candidates) {
+			for (String second : candidates) {
+				if (checker5.isRotation(first, second) != checker5.isRotationNaiveApproach(first, second)) {
+					allAgree = false;
+				}
+			}
+		}
+		System.out.println("Test 5.1: linear and naive approaches should agree. Result: " + (allAgree ? "test passed" : "test failed"));
+		
+		// test 6: canonical rotations
+		StringRotationChecker checker6 = new StringRotationChecker();
+		System.out.println("Test 6.1: least rotation of cab should start at 1. Result: " + (checker6.leastRotation("cab") == 1 ? "test passed" : "test failed"));
+		
+		System.out.println("Test 6.2: rotations should share a canonical rotation. Result: "
+				+ (checker6.canonicalRotation("TeaCup").equals(checker6.canonicalRotation("upteac")) ? "test passed" : "test failed"));
+		
+		System.out.println("Test 6.3: non-rotations should not share a canonical rotation. Result: "
+				+ (!checker6.canonicalRotation("teacup").equals(checker6.canonicalRotation("eatcup")) ? "test passed" : "test failed"));
+		
+		System.out.println("Test 6.4: canonical rotation of a repeating string. Result: "
+				+ ("abab".equals(checker6.canonicalRotation("BABA")) ? "test passed" : "test failed"));
+		
+		// test 7: batches, large enough to be split across threads
+		StringRotationChecker checker7 = new StringRotationChecker();
+		Random random = new Random(7);
+		String[] firstStrings = new String[20000];
+		String[] secondStrings = new String[firstStrings.length];
+		for (int i = 0; i < firstStrings.length; i++) {
+			char[] chars = new char[1 + random.nextInt(i % 500 == 0 ? 5000 : 12)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = (char) ('a' + random.nextInt(2));
+			}
+			firstStrings[i] = new String(chars);
+			int offset = random.nextInt(chars.length);
+			secondStrings[i] = random.nextBoolean() ? firstStrings[i].substring(offset) + firstStrings[i].substring(0, offset) : firstStrings[i].replace('a', 'b');
+		}
+		boolean[] parallelResults = checker7.isRotationBatch(firstStrings, secondStrings);
+		boolean[] sequentialResults = checker7.isRotationBatch(firstStrings, secondStrings, false);
+		boolean batchAgrees = true;
+		for (int i = 0; i < firstStrings.length; i++) {
+			boolean expected = checker7.isRotation(firstStrings[i], secondStrings[i]);
+			batchAgrees &= parallelResults[i] == expected && sequentialResults[i] == expected;
+		}
+		System.out.println("Test 7.1: batch results should agree with single checks. Result: " + (batchAgrees ? "test passed" : "test failed"));
+		
+		// test 8: char sequences and encoded bytes
+		StringRotationChecker checker8 = new StringRotationChecker();
+		isRotation = checker8.isRotation(new StringBuilder("waterbottle"), "erbottlewat");
+		System.out.println("Test 8.1: a char sequence rotation should return true. Result: " + (isRotation ? "test passed" : "test failed"));
+		
+		byte[] record = "|waterbottle|ERBOTTLEWAT|".getBytes(StandardCharsets.US_ASCII);
+		isRotation = checker8.isRotation(record, 1, 11, record, 13, 11, StandardCharsets.US_ASCII);
+		System.out.println("Test 8.2: ASCII byte ranges should be compared ignoring case. Result: " + (isRotation ? "test passed" : "test failed"));
+		
+		ByteBuffer firstBuffer = ByteBuffer.allocateDirect(32).put("\u00e9t\u00e9s".getBytes(StandardCharsets.UTF_8));
+		firstBuffer.flip();
+		ByteBuffer secondBuffer = ByteBuffer.allocateDirect(32).put("s\u00e9t\u00e9".getBytes(StandardCharsets.UTF_8));
+		secondBuffer.flip();
+		isRotation = checker8.isRotation(firstBuffer, secondBuffer, StandardCharsets.UTF_8);
+		System.out.println("Test 8.3: direct UTF-8 buffers holding a rotation should return true. Result: "
+				+ (isRotation && secondBuffer.position() == 0 ? "test passed" : "test failed"));
+		
+		isRotation = checker8.isRotation(ByteBuffer.wrap(new byte[] { 'a', 'b', (byte) 0xE9 }), ByteBuffer.wrap(new byte[] { (byte) 0xE9, 'b', 'a' }), StandardCharsets.ISO_8859_1);
+		System.out.println("Test 8.4: Latin-1 buffers that aren't rotations should return false. Result: " + (!isRotation ? "test passed" : "test failed"));
 	}
 }
@@ -1,21 +1,19 @@
 package com.machineghost.examples;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /***
  * Implement an algorithm to determine if a string has all unique chars.
+ * The checker holds no state, so one instance can be shared by any number of threads.
  *
  */
 public class UniqueCharsChecker {
 	
-	private Boolean isUnique;
-	
 	public UniqueCharsChecker() { }
 	
-	public Boolean getIsUnique() {
-		return isUnique;
-	}
-	
 	/***
 	 * Check if a string is composed of all unique characters.
 	 * This approach first sorts the chars. Then it compares each char in order to its neighbor for uniqueness.
@@ -23,8 +21,8 @@ public class UniqueCharsChecker {
 	 * @param stringToCheck: the string to check for uniqueness
 	 * @return true if all chars are unique
 	 */
-	public Boolean charsAreAllUniqueSortedApproach(String stringToCheck) {
-		isUnique = true;
+	public boolean charsAreAllUniqueSortedApproach(String stringToCheck) {
+		boolean isUnique = true;
 		if (stringToCheck == null || stringToCheck.isEmpty()) {
 			return isUnique;
 		}
@@ -49,8 +47,8 @@ public class UniqueCharsChecker {
 	 * @param stringToCheck: the string to check for uniqueness
 	 * @return true if all chars are unique
 	 */
-	public Boolean charsAreAllUniqueNaiveApproach(String stringToCheck) {
-		isUnique = true;
+	public boolean charsAreAllUniqueNaiveApproach(String stringToCheck) {
+		boolean isUnique = true;
 		if (stringToCheck == null || stringToCheck.isEmpty()) {
 			return isUnique;
 		}
@@ -65,54 +63,311 @@ public class UniqueCharsChecker {
 		return isUnique;
 	}
 	
+	/***
+	 * Check if a string is composed of all unique characters.
+	 * Latin-1 chars are tracked in a 256-bit set held in four longs, so this path doesn't allocate.
+	 * A Latin-1 string longer than 256 chars must repeat one, so that scan always ends early.
+	 * The first char above Latin-1 switches to an open-addressed set of code points,
+	 * so surrogate pairs count as one character rather than two halves.
+	 * This approach is effective and efficient: O(n)
+	 * @param stringToCheck: the string to check for uniqueness
+	 * @return true if all chars are unique
+	 */
+	public boolean charsAreAllUniqueBitsetApproach(String stringToCheck) {
+		return charsAreAllUniqueBitsetApproach((CharSequence) stringToCheck);
+	}
+	
+	/***
+	 * Check if a char sequence is composed of all unique characters, reading it in place
+	 * @param stringToCheck: the sequence to check for uniqueness
+	 * @return true if all chars are unique
+	 */
+	public boolean charsAreAllUniqueBitsetApproach(CharSequence stringToCheck) {
+		if (!CheckerMetrics.ENABLED) {
+			return allUniqueByBitset(stringToCheck);
+		}
+		long start = CheckerMetrics.CHARS_ARE_ALL_UNIQUE.start();
+		boolean result = allUniqueByBitset(stringToCheck);
+		CheckerMetrics.CHARS_ARE_ALL_UNIQUE.record(start, CheckerMetrics.length(stringToCheck), result);
+		return result;
+	}
+	
+	/***
+	 * Check if the text in a buffer is composed of all unique characters, without building a string.
+	 * Latin-1 bytes, and ASCII or UTF-8 bytes below 0x80, go straight into the 256-bit set, other text is decoded first.
+	 * The buffer is read from its position to its limit, and the position is left alone.
+	 * @param bytes: the encoded text to check for uniqueness
+	 * @param charset: how the text is encoded
+	 * @return true if all chars are unique
+	 */
+	public boolean charsAreAllUniqueBitsetApproach(ByteBuffer bytes, Charset charset) {
+		return charsAreAllUniqueBitsetApproach(EncodedChars.decode(bytes, charset));
+	}
+	
+	/***
+	 * Check if the text in a byte range is composed of all unique characters, without building a string
+	 * @param bytes: the encoded text to check for uniqueness
+	 * @param offset: where the text starts
+	 * @param length: the number of bytes in the text
+	 * @param charset: how the text is encoded
+	 * @return true if all chars are unique
+	 */
+	public boolean charsAreAllUniqueBitsetApproach(byte[] bytes, int offset, int length, Charset charset) {
+		return charsAreAllUniqueBitsetApproach(EncodedChars.decode(bytes, offset, length, charset));
+	}
+	
+	private boolean allUniqueByBitset(CharSequence stringToCheck) {
+		boolean isUnique = true;
+		if (stringToCheck == null || stringToCheck.length() == 0) {
+			return isUnique;
+		}
+		
+		// more chars than could hold distinct code points, even if all are surrogate pairs
+		int length = stringToCheck.length();
+		if (length > 2 * (Character.MAX_CODE_POINT + 1)) {
+			return false;
+		}
+		
+		long bits0 = 0;
+		long bits1 = 0;
+		long bits2 = 0;
+		long bits3 = 0;
+		for (int i = 0; i < length; i++) {
+			char c = stringToCheck.charAt(i);
+			if (c > 0xFF) {
+				// not Latin-1, so fall back to the code point set
+				return codePointsAreAllUnique(stringToCheck);
+			}
+			
+			// the shift only uses the low 6 bits, the high 2 bits pick the word
+			long bit = 1L << c;
+			boolean seen;
+			switch (c >>> 6) {
+				case 0:
+					seen = (bits0 & bit) != 0;
+					bits0 |= bit;
+					break;
+				case 1:
+					seen = (bits1 & bit) != 0;
+					bits1 |= bit;
+					break;
+				case 2:
+					seen = (bits2 & bit) != 0;
+					bits2 |= bit;
+					break;
+				default:
+					seen = (bits3 & bit) != 0;
+					bits3 |= bit;
+					break;
+			}
+			if (seen) {
+				isUnique = false;
+				break;
+			}
+		}
+		return isUnique;
+	}
+	
+	/***
+	 * Check if a string is composed of all unique code points, using an open-addressed set
+	 * @param stringToCheck: the non-empty string to check for uniqueness
+	 * @return true if all code points are unique
+	 */
+	private static boolean codePointsAreAllUnique(CharSequence stringToCheck) {
+		CodePointSet seen = new CodePointSet();
+		for (int i = 0; i < stringToCheck.length(); ) {
+			int codePoint = Character.codePointAt(stringToCheck, i);
+			if (!seen.add(codePoint)) {
+				return false;
+			}
+			i += Character.charCount(codePoint);
+		}
+		return true;
+	}
+	
+	/***
+	 * A set of code points with linear probing, so no code point is ever boxed.
+	 * It starts small and doubles as code points are added, so an early duplicate costs a small table
+	 * rather than one sized for the whole string.
+	 *
+	 */
+	private static final class CodePointSet {
+		
+		private static final int EMPTY = -1;
+		private static final int INITIAL_CAPACITY = 16;
+		
+		private int[] slots;
+		private int mask;
+		private int size;
+		
+		CodePointSet() {
+			slots = new int[INITIAL_CAPACITY];
+			Arrays.fill(slots, EMPTY);
+			mask = INITIAL_CAPACITY - 1;
+		}
+		
+		/***
+		 * Add a code point to the set
+		 * @param codePoint: the code point to add
+		 * @return true if the code point was not already in the set
+		 */
+		boolean add(int codePoint) {
+			int slot = slotFor(slots, mask, codePoint);
+			if (slots[slot] == codePoint) {
+				return false;
+			}
+			slots[slot] = codePoint;
+			
+			// keep the load factor at or below one half
+			if (++size * 2 > slots.length) {
+				grow();
+			}
+			return true;
+		}
+		
+		private void grow() {
+			int[] grown = new int[slots.length * 2];
+			Arrays.fill(grown, EMPTY);
+			int grownMask = grown.length - 1;
+			for (int codePoint : slots) {
+				if (codePoint != EMPTY) {
+					grown[slotFor(grown, grownMask, codePoint)] = codePoint;
+				}
+			}
+			slots = grown;
+			mask = grownMask;
+		}
+		
+		/***
+		 * @return the slot holding a code point, or the empty slot it would go in
+		 */
+		private static int slotFor(int[] slots, int mask, int codePoint) {
+			// Fibonacci hashing, the top bits of the product are the best mixed, so take as many as the table needs
+			int slot = (codePoint * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+			while (slots[slot] != EMPTY && slots[slot] != codePoint) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+	}
+	
 	public static void main(String[] args) {
+		boolean isUnique = false;
 		
 		// test 1: null string
 		UniqueCharsChecker checker1 = new UniqueCharsChecker();
-		checker1.charsAreAllUniqueNaiveApproach(null);
-		System.out.println("Test 1.1: null string should return true. Result: " + (checker1.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker1.charsAreAllUniqueNaiveApproach(null);
+		System.out.println("Test 1.1: null string should return true. Result: " + (isUnique ? "test passed" : "test failed"));
 		
-		checker1.charsAreAllUniqueSortedApproach(null);
-		System.out.println("Test 1.2: null string should return true. Result: " + (checker1.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker1.charsAreAllUniqueSortedApproach(null);
+		System.out.println("Test 1.2: null string should return true. Result: " + (isUnique ? "test passed" : "test failed"));
 		
 		// test 2: empty string
 		UniqueCharsChecker checker2 = new UniqueCharsChecker();
-		checker2.charsAreAllUniqueNaiveApproach("");
-		System.out.println("Test 2.1: empty string should return true. Result: " + (checker2.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker2.charsAreAllUniqueNaiveApproach("");
+		System.out.println("Test 2.1: empty string should return true. Result: " + (isUnique ? "test passed" : "test failed"));
 		
-		checker2.charsAreAllUniqueSortedApproach("");
-		System.out.println("Test 2.2: empty string should return true. Result: " + (checker2.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker2.charsAreAllUniqueSortedApproach("");
+		System.out.println("Test 2.2: empty string should return true. Result: " + (isUnique ? "test passed" : "test failed"));
 		
 		// test 3: all unique chars
 		UniqueCharsChecker checker3 = new UniqueCharsChecker();
-		checker3.charsAreAllUniqueNaiveApproach("abc123def456.!p");
-		System.out.println("Test 3.1: all-unique chars should return true. Result: " + (checker3.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker3.charsAreAllUniqueNaiveApproach("abc123def456.!p");
+		System.out.println("Test 3.1: all-unique chars should return true. Result: " + (isUnique ? "test passed" : "test failed"));
 		
-		checker3.charsAreAllUniqueSortedApproach("abc123def456.!p");
-		System.out.println("Test 3.2: all-unique chars should return true. Result: " + (checker3.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker3.charsAreAllUniqueSortedApproach("abc123def456.!p");
+		System.out.println("Test 3.2: all-unique chars should return true. Result: " + (isUnique ? "test passed" : "test failed"));
 		
 		// test 4: non-unique chars
 		UniqueCharsChecker checker4 = new UniqueCharsChecker();
-		checker4.charsAreAllUniqueNaiveApproach("abc123abc");
-		System.out.println("Test 4.1: non-unqiue chars should return false. Result: " + (!checker4.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker4.charsAreAllUniqueNaiveApproach("abc123abc");
+		System.out.println("Test 4.1: non-unqiue chars should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
 		
-		checker4.charsAreAllUniqueSortedApproach("abc123abc");
-		System.out.println("Test 4.2: non-unqiue chars should return false. Result: " + (!checker4.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker4.charsAreAllUniqueSortedApproach("abc123abc");
+		System.out.println("Test 4.2: non-unqiue chars should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
 		
 		// test 4: non-unique chars at end of string
 		UniqueCharsChecker checker5 = new UniqueCharsChecker();
-		checker5.charsAreAllUniqueNaiveApproach("abc123dd");
-		System.out.println("Test 5.1: non-unqiue chars at end of string should return false. Result: " + (!checker5.getIsUnique() ? "test passed" : "test failed"));
-				
-		checker4.charsAreAllUniqueSortedApproach("abc123dd");
-		System.out.println("Test 5.2: non-unqiue chars at end of string should return false. Result: " + (!checker5.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker5.charsAreAllUniqueNaiveApproach("abc123dd");
+		System.out.println("Test 5.1: non-unqiue chars at end of string should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker4.charsAreAllUniqueSortedApproach("abc123dd");
+		System.out.println("Test 5.2: non-unqiue chars at end of string should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
 		
 		// test 5: string with only 1 char
 		UniqueCharsChecker checker6 = new UniqueCharsChecker();
-		checker6.charsAreAllUniqueNaiveApproach("a");
-		System.out.println("Test 6.1: single char string should return true. Result: " + (checker6.getIsUnique() ? "test passed" : "test failed"));
+		isUnique = checker6.charsAreAllUniqueNaiveApproach("a");
+		System.out.println("Test 6.1: single char string should return true. Result: " + (isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker6.charsAreAllUniqueSortedApproach("a");
+		System.out.println("Test 6.2: single char string should return true. Result: " + (isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker6.charsAreAllUniqueBitsetApproach("a");
+		System.out.println("Test 6.3: single char string should return true. Result: " + (isUnique ? "test passed" : "test failed"));
+		
+		// test 7: bitset approach
+		UniqueCharsChecker checker7 = new UniqueCharsChecker();
+		isUnique = checker7.charsAreAllUniqueBitsetApproach(null);
+		System.out.println("Test 7.1: null string should return true. Result: " + (isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker7.charsAreAllUniqueBitsetApproach("abc123def456.!p\u00e9\u00ff");
+		System.out.println("Test 7.2: all-unique Latin-1 chars should return true. Result: " + (isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker7.charsAreAllUniqueBitsetApproach("abc123dd");
+		System.out.println("Test 7.3: non-unique chars at end of string should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker7.charsAreAllUniqueBitsetApproach("x\u00ffy\u00ff");
+		System.out.println("Test 7.4: non-unique Latin-1 chars should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker7.charsAreAllUniqueBitsetApproach("abc\u4e2d\u6587\u00e9");
+		System.out.println("Test 7.5: all-unique non-Latin-1 chars should return true. Result: " + (isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker7.charsAreAllUniqueBitsetApproach("a\u4e2db\u4e2d");
+		System.out.println("Test 7.6: non-unique non-Latin-1 chars should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
+		
+		// two different emoji share the same high surrogate
+		isUnique = checker7.charsAreAllUniqueBitsetApproach("\ud83d\ude00\ud83d\ude01");
+		System.out.println("Test 7.7: surrogate pairs for distinct code points should return true. Result: " + (isUnique ? "test passed" : "test failed"));
+		
+		isUnique = checker7.charsAreAllUniqueBitsetApproach("\ud83d\ude00a\ud83d\ude00");
+		System.out.println("Test 7.8: repeated surrogate pairs should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
+		
+		// enough distinct code points to grow the set several times, then one repeat at the very end
+		StringBuilder manyCodePoints = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			manyCodePoints.append((char) (0x4E00 + i));
+		}
+		boolean grownUnique = checker7.charsAreAllUniqueBitsetApproach(manyCodePoints.toString());
+		isUnique = checker7.charsAreAllUniqueBitsetApproach(manyCodePoints.append('\u4e00').toString());
+		System.out.println("Test 7.9: a growing set should keep every code point it has seen. Result: " + (grownUnique && !isUnique ? "test passed" : "test failed"));
+		
+		// a few hundred thousand distinct astral code points, a table past 2^16 slots must still spread them out
+		StringBuilder astral = new StringBuilder();
+		for (int i = 0; i < 400000; i++) {
+			astral.appendCodePoint(0x10000 + i);
+		}
+		long astralStart = System.nanoTime();
+		isUnique = checker7.charsAreAllUniqueBitsetApproach(astral.toString());
+		long astralMillis = (System.nanoTime() - astralStart) / 1000000;
+		System.out.println("Test 7.10: hundreds of thousands of distinct code points should return true quickly. Result: "
+				+ (isUnique && astralMillis < 5000 ? "test passed" : "test failed"));
+		
+		// test 8: char sequences and encoded bytes
+		UniqueCharsChecker checker8 = new UniqueCharsChecker();
+		isUnique = checker8.charsAreAllUniqueBitsetApproach(new StringBuilder("abcdea"));
+		System.out.println("Test 8.1: a char sequence with a repeat should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
+		
+		byte[] record = "aabcdefgh12345678zz".getBytes(StandardCharsets.UTF_8);
+		isUnique = checker8.charsAreAllUniqueBitsetApproach(record, 1, 16, StandardCharsets.UTF_8);
+		System.out.println("Test 8.2: a unique ASCII byte range should return true. Result: " + (isUnique ? "test passed" : "test failed"));
+		
+		ByteBuffer buffer = ByteBuffer.allocateDirect(16).put(new byte[] { 'a', (byte) 0xE9, (byte) 0xFF, 'b', (byte) 0xE9 });
+		buffer.flip();
+		isUnique = checker8.charsAreAllUniqueBitsetApproach(buffer, StandardCharsets.ISO_8859_1);
+		System.out.println("Test 8.3: a direct Latin-1 buffer with a repeat should return false. Result: " + (!isUnique ? "test passed" : "test failed"));
 		
-		checker6.charsAreAllUniqueSortedApproach("a");
-		System.out.println("Test 6.2: single char string should return true. Result: " + (checker6.getIsUnique() ? "test passed" : "test failed"));
+		// 0xC3 0xA9 is one char in UTF-8, but two in Latin-1
+		isUnique = checker8.charsAreAllUniqueBitsetApproach(ByteBuffer.wrap("\u00e9\u00e8\u00ea".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+		System.out.println("Test 8.4: a unique UTF-8 buffer should be decoded and return true. Result: " + (isUnique ? "test passed" : "test failed"));
 	}
 }
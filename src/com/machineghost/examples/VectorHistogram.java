@@ -0,0 +1,91 @@
+package com.machineghost.examples;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/***
+ * The vector kernel behind CharHistogram, on the jdk.incubator.vector API. Each lane of an int vector counts
+ * into its own 256-slot sub-histogram, so the gather, add and scatter of one step never has two lanes on the
+ * same counter, and a run of one char doesn't wait on its own last store.
+ * This class is only loaded once CharHistogram has found the incubator module, which the JVM only resolves
+ * with --add-modules jdk.incubator.vector.
+ *
+ */
+final class VectorHistogram {
+	
+	// the chars or bytes of one step are widened to one int lane each
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Short> SHORTS = VectorSpecies.of(short.class, VectorShape.forBitSize(INTS.vectorBitSize() / 2));
+	private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.vectorBitSize() / 4));
+	
+	// the number of sub-histograms the counts are spread over
+	static final int LANES = INTS.length();
+	
+	// lane i counts from slot i * 256
+	private static final IntVector LANE_OFFSETS = IntVector.zero(INTS).addIndex(256);
+	
+	// the gather and scatter take their slots from an array
+	private static final ThreadLocal<int[]> slots = ThreadLocal.withInitial(() -> new int[LANES]);
+	
+	private VectorHistogram() { }
+	
+	/***
+	 * @return true on 512-bit vectors, where gather and scatter of sixteen ints are single instructions; narrower
+	 * hardware has no scatter (AVX2) or emulates both, so it keeps the scalar sub-histograms
+	 */
+	static boolean worthwhile() {
+		return LANES >= 16;
+	}
+	
+	/***
+	 * Add chars to the sub-histograms by their low byte
+	 * @param chars: the chars to count
+	 * @param length: the number of chars to count, from the start of the array
+	 * @param counts: LANES sub-histograms of 256 counts
+	 * @param delta: 1 to add the chars, -1 to take them away
+	 * @return false if a char is above 0xFF, the counts are then incomplete
+	 */
+	static boolean countChars(char[] chars, int length, int[] counts, int delta) {
+		int[] slotIndexes = slots.get();
+		ShortVector highBits = ShortVector.zero(SHORTS);
+		int i = 0;
+		for (; i + LANES <= length; i += LANES) {
+			ShortVector step = ShortVector.fromCharArray(SHORTS, chars, i);
+			highBits = highBits.or(step);
+			IntVector slot = ((IntVector) step.convertShape(VectorOperators.S2I, INTS, 0)).and(0xFF).add(LANE_OFFSETS);
+			slot.intoArray(slotIndexes, 0);
+			IntVector.fromArray(INTS, counts, 0, slotIndexes, 0).add(delta).intoArray(counts, 0, slotIndexes, 0);
+		}
+		int bits = highBits.reduceLanes(VectorOperators.OR) & 0xFFFF;
+		for (; i < length; i++) {
+			bits |= chars[i];
+			counts[chars[i] & 0xFF] += delta;
+		}
+		return bits <= 0xFF;
+	}
+	
+	/***
+	 * Add bytes to the sub-histograms
+	 * @param bytes: the bytes to count
+	 * @param length: the number of bytes to count, from the start of the array
+	 * @param counts: LANES sub-histograms of 256 counts
+	 * @param delta: 1 to add the bytes, -1 to take them away
+	 */
+	static void countBytes(byte[] bytes, int length, int[] counts, int delta) {
+		int[] slotIndexes = slots.get();
+		int i = 0;
+		for (; i + LANES <= length; i += LANES) {
+			ByteVector step = ByteVector.fromArray(BYTES, bytes, i);
+			IntVector slot = ((IntVector) step.convertShape(VectorOperators.B2I, INTS, 0)).and(0xFF).add(LANE_OFFSETS);
+			slot.intoArray(slotIndexes, 0);
+			IntVector.fromArray(INTS, counts, 0, slotIndexes, 0).add(delta).intoArray(counts, 0, slotIndexes, 0);
+		}
+		for (; i < length; i++) {
+			counts[bytes[i] & 0xFF] += delta;
+		}
+	}
+}
@@ -1,7 +1,14 @@
 package com.machineghost.examples;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /***
  * Write an algorithm such that if an element is in an MxN matrix is 0,
@@ -9,48 +16,335 @@ import java.util.List;
  *
  */
 public class ZeroMatrixChecker {
+	
+	// matrices with fewer elements than this are transformed on one thread by transformMatrixParallel
+	static final int PARALLEL_MIN_ELEMENTS = 1 << 22;
+	
+	// a fork-join block of rows holds about this many elements
+	private static final int BLOCK_ELEMENTS = 1 << 16;
 
 	/***
 	 * Transform containing row and column elements to zero in the given matrix where zeros are found.
+	 * Rows and columns holding a zero are marked in two bitsets, so each one is cleared once
+	 * however many zeros it holds: O(MxN) time and (M + N) / 8 bytes of extra memory.
 	 * @param matrix: the matrix to perform
 	 */
 	public void transformMatrix(int[][] matrix) {
+		if (!CheckerMetrics.ENABLED) {
+			zeroRowsAndColumns(matrix);
+			return;
+		}
+		long start = CheckerMetrics.TRANSFORM_MATRIX.start();
+		boolean anyZero = zeroRowsAndColumns(matrix);
+		long elements = matrix.length == 0 ? 0 : (long) matrix.length * matrix[0].length;
+		CheckerMetrics.TRANSFORM_MATRIX.record(start, elements, anyZero);
+	}
+	
+	/***
+	 * @return true if the matrix held a zero
+	 */
+	private boolean zeroRowsAndColumns(int[][] matrix) {
+		if (matrix.length == 0 || matrix[0].length == 0) {
+			return false;
+		}
+		
+		int columnCount = matrix[0].length;
+		long[] zeroRows = new long[(matrix.length + 63) >>> 6];
+		long[] zeroColumns = new long[(columnCount + 63) >>> 6];
+		findZeros(matrix, columnCount, zeroRows, zeroColumns, 0, matrix.length);
+		clearRows(matrix, columnCount, zeroRows, zeroColumns, 0, matrix.length);
+		for (long bits : zeroRows) {
+			if (bits != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/***
+	 * Transform containing row and column elements to zero in the given matrix where zeros are found.
+	 * Like transformMatrix, but both passes are split into blocks of rows across the fork-join common pool:
+	 * each block marks its zero columns in its own bitset, and the bitsets are OR-ed together as the tasks join.
+	 * Matrices under PARALLEL_MIN_ELEMENTS are left to transformMatrix, they finish before the threads are busy.
+	 * @param matrix: the matrix to perform
+	 */
+	public void transformMatrixParallel(int[][] matrix) {
 		if (matrix.length == 0 || matrix[0].length == 0) {
 			return;
 		}
 		
-		List<Integer> rows = new ArrayList<Integer>(matrix.length);
-		List<Integer> columns = new ArrayList<Integer>(matrix[0].length);
+		if ((long) matrix.length * matrix[0].length < PARALLEL_MIN_ELEMENTS || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			transformMatrix(matrix);
+			return;
+		}
+		transformMatrixParallel(matrix, ForkJoinPool.commonPool());
+	}
+	
+	/***
+	 * Transform the matrix on the given pool, however small the matrix or the pool
+	 * @param matrix: the matrix to perform, with at least one element
+	 * @param pool: the pool to run the blocks on
+	 */
+	void transformMatrixParallel(int[][] matrix, ForkJoinPool pool) {
+		int columnCount = matrix[0].length;
+		long[] zeroRows = new long[(matrix.length + 63) >>> 6];
 		
-		// track where we find any zeroes
+		// blocks start on a multiple of 64 rows, so each block owns whole words of the row bitset
+		int blockRows = Math.max(64, (BLOCK_ELEMENTS / columnCount) & ~63);
+		long[] zeroColumns = pool.invoke(new FindZerosTask(matrix, columnCount, zeroRows, blockRows, 0, matrix.length));
+		pool.invoke(new ClearRowsTask(matrix, columnCount, zeroRows, zeroColumns, blockRows, 0, matrix.length));
+	}
+	
+	/***
+	 * Mark the rows and columns that hold a zero, for a range of rows
+	 * @param matrix: the matrix to scan
+	 * @param columnCount: the number of columns in each row
+	 * @param zeroRows: the bitset of rows to mark
+	 * @param zeroColumns: the bitset of columns to mark
+	 * @param from: the first row to scan
+	 * @param to: the row after the last to scan
+	 */
+	private static void findZeros(int[][] matrix, int columnCount, long[] zeroRows, long[] zeroColumns, int from, int to) {
 		// for every row, loop through every column element
+		for (int i = from; i < to; i++) {
+			int[] row = matrix[i];
+			for (int j = 0; j < columnCount; j++) {
+				if (row[j] == 0) {
+					zeroRows[i >>> 6] |= 1L << i;
+					zeroColumns[j >>> 6] |= 1L << j;
+				}
+			}
+		}
+	}
+	
+	/***
+	 * Replace the elements with zeros where appropriate, for a range of rows
+	 * @param matrix: the matrix to transform
+	 * @param columnCount: the number of columns in each row
+	 * @param zeroRows: the bitset of rows to clear whole
+	 * @param zeroColumns: the bitset of columns to clear
+	 * @param from: the first row to clear
+	 * @param to: the row after the last to clear
+	 */
+	private void clearRows(int[][] matrix, int columnCount, long[] zeroRows, long[] zeroColumns, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if ((zeroRows[i >>> 6] & (1L << i)) != 0) {
+				zeroOutRow(matrix, i);
+				continue;
+			}
+			
+			// only the marked columns of a row that isn't cleared whole
+			int[] row = matrix[i];
+			for (int word = 0; word < zeroColumns.length; word++) {
+				long bits = zeroColumns[word];
+				while (bits != 0) {
+					row[(word << 6) + Long.numberOfTrailingZeros(bits)] = 0;
+					bits &= bits - 1;
+				}
+			}
+		}
+	}
+	
+	/***
+	 * Splits a range of rows in half, on a multiple of 64 rows, until it is one block
+	 * @param from: the first row of the range, a multiple of 64
+	 * @param to: the row after the last of the range
+	 * @param blockRows: the most rows in one block
+	 * @return the row to split at, or -1 if the range is one block
+	 */
+	private static int splitRow(int from, int to, int blockRows) {
+		if (to - from <= blockRows) {
+			return -1;
+		}
+		return from + Math.max(64, ((to - from) >>> 1) & ~63);
+	}
+	
+	/***
+	 * Marks the zero rows of a range in the shared row bitset, and returns its zero columns as a bitset of its own
+	 *
+	 */
+	private static final class FindZerosTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		
+		private final int[][] matrix;
+		private final int columnCount;
+		private final long[] zeroRows;
+		private final int blockRows;
+		private final int from;
+		private final int to;
+		
+		FindZerosTask(int[][] matrix, int columnCount, long[] zeroRows, int blockRows, int from, int to) {
+			this.matrix = matrix;
+			this.columnCount = columnCount;
+			this.zeroRows = zeroRows;
+			this.blockRows = blockRows;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected long[] compute() {
+			int middle = splitRow(from, to, blockRows);
+			if (middle < 0) {
+				long[] zeroColumns = new long[(columnCount + 63) >>> 6];
+				findZeros(matrix, columnCount, zeroRows, zeroColumns, from, to);
+				return zeroColumns;
+			}
+			
+			FindZerosTask second = new FindZerosTask(matrix, columnCount, zeroRows, blockRows, middle, to);
+			second.fork();
+			long[] zeroColumns = new FindZerosTask(matrix, columnCount, zeroRows, blockRows, from, middle).compute();
+			long[] secondColumns = second.join();
+			for (int word = 0; word < zeroColumns.length; word++) {
+				zeroColumns[word] |= secondColumns[word];
+			}
+			return zeroColumns;
+		}
+	}
+	
+	/***
+	 * Clears a range of rows once every zero has been marked
+	 *
+	 */
+	private final class ClearRowsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final int[][] matrix;
+		private final int columnCount;
+		private final long[] zeroRows;
+		private final long[] zeroColumns;
+		private final int blockRows;
+		private final int from;
+		private final int to;
+		
+		ClearRowsTask(int[][] matrix, int columnCount, long[] zeroRows, long[] zeroColumns, int blockRows, int from, int to) {
+			this.matrix = matrix;
+			this.columnCount = columnCount;
+			this.zeroRows = zeroRows;
+			this.zeroColumns = zeroColumns;
+			this.blockRows = blockRows;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			int middle = splitRow(from, to, blockRows);
+			if (middle < 0) {
+				clearRows(matrix, columnCount, zeroRows, zeroColumns, from, to);
+				return;
+			}
+			invokeAll(new ClearRowsTask(matrix, columnCount, zeroRows, zeroColumns, blockRows, from, middle),
+					new ClearRowsTask(matrix, columnCount, zeroRows, zeroColumns, blockRows, middle, to));
+		}
+	}
+	
+	/***
+	 * Transform containing row and column elements to zero in the given matrix where zeros are found.
+	 * This approach uses the first row and column of the matrix itself as the markers, so it needs no extra memory.
+	 * Two flags remember if the first row and column had zeros of their own, then they're cleared last.
+	 * @param matrix: the matrix to perform
+	 */
+	public void transformMatrixInPlace(int[][] matrix) {
+		if (matrix.length == 0 || matrix[0].length == 0) {
+			return;
+		}
+		
+		int columnCount = matrix[0].length;
+		boolean firstRowHasZero = false;
+		boolean firstColumnHasZero = false;
+		for (int j = 0; j < columnCount; j++) {
+			if (matrix[0][j] == 0) {
+				firstRowHasZero = true;
+				break;
+			}
+		}
 		for (int i = 0; i < matrix.length; i++) {
-			for (int j = 0; j < matrix[0].length; j++) {
-				if (matrix[i][j] == 0) {
-					rows.add(i);
-					columns.add(j);
+			if (matrix[i][0] == 0) {
+				firstColumnHasZero = true;
+				break;
+			}
+		}
+		
+		// mark each zero's row in the first column and its column in the first row
+		for (int i = 1; i < matrix.length; i++) {
+			int[] row = matrix[i];
+			for (int j = 1; j < columnCount; j++) {
+				if (row[j] == 0) {
+					row[0] = 0;
+					matrix[0][j] = 0;
 				}
 			}
 		}
 		
-		// replace the elements with zeros where appropriate
-		for (int row : rows) {
-			zeroOutRow(matrix, row);
+		// clear the marked rows and columns a row at a time, which walks memory in order, leaving the markers for last
+		int[] markers = matrix[0];
+		for (int i = 1; i < matrix.length; i++) {
+			int[] row = matrix[i];
+			if (row[0] == 0) {
+				zeroOutRow(matrix, i);
+				continue;
+			}
+			for (int j = 1; j < columnCount; j++) {
+				if (markers[j] == 0) {
+					row[j] = 0;
+				}
+			}
 		}
-		for (int col : columns) {
-			zeroOutColumn(matrix, col);
+		if (firstRowHasZero) {
+			zeroOutRow(matrix, 0);
+		}
+		if (firstColumnHasZero) {
+			zeroOutColumn(matrix, 0);
 		}
 	}
 	
+	/***
+	 * Transform containing row and column elements to zero in the given flat matrix where zeros are found.
+	 * The same bitset approach as transformMatrix, run directly on the matrix's off-heap or mapped memory.
+	 * @param matrix: the matrix to perform, of any element type
+	 */
+	public void transformMatrix(FlatMatrix matrix) {
+		if (matrix.rows() == 0 || matrix.columns() == 0) {
+			return;
+		}
+		
+		long[] zeroRows = new long[(matrix.rows() + 63) >>> 6];
+		long[] zeroColumns = new long[(matrix.columns() + 63) >>> 6];
+		for (int i = 0; i < matrix.rows(); i++) {
+			if (matrix.markZeroColumns(i, zeroColumns)) {
+				zeroRows[i >>> 6] |= 1L << i;
+			}
+		}
+		
+		for (int i = 0; i < matrix.rows(); i++) {
+			if ((zeroRows[i >>> 6] & (1L << i)) != 0) {
+				matrix.clearRow(i);
+			}
+			else {
+				matrix.clearColumns(i, zeroColumns);
+			}
+		}
+	}
+	
+	/***
+	 * Transform containing row and column elements to zero in the given sparse matrix where zeros are found.
+	 * Nothing is written: the result is a view whose zeroed rows and columns are masks over the same stored elements,
+	 * so this is O(non-zeros + rows + columns). Call compact or toArray on the view to materialize it.
+	 * @param matrix: the matrix to perform, left as it is
+	 * @return the transformed view
+	 */
+	public SparseMatrix transformMatrix(SparseMatrix matrix) {
+		return matrix.maskZeroRowsAndColumns();
+	}
+	
 	/***
 	 * Transform all elements in a matrix for a given row
 	 * @param matrix: the matrix to transform
 	 * @param col: the row to target for transforms to zero
 	 */
 	public void zeroOutRow(int[][] matrix, int row) {
-		for (int i = 0; i < matrix[0].length; i++) {
-			matrix[row][i] = 0;
-		}
+		Arrays.fill(matrix[row], 0, matrix[0].length, 0);
 	}
 	
 	/***
@@ -65,45 +359,310 @@ public class ZeroMatrixChecker {
 	}
 	
 	/***
-	 * Determine if two matrices have the same values
+	 * Determine if two matrices have the same values.
+	 * Rows are compared whole with Arrays.mismatch, which the JIT vectorizes, and may have different lengths:
+	 * a row only equals one of the same length. A null row is treated as an empty one.
 	 * @param firstMatrix: the first matrix
 	 * @param secondMatrix: the matrix to compare to
 	 * @return true if the matrices have the same values
 	 */
-	public Boolean matricesAreEqual(int[][] firstMatrix, int[][] secondMatrix) {
+	public boolean matricesAreEqual(int[][] firstMatrix, int[][] secondMatrix) {
 		// if both matrices are null, return true
-		if (firstMatrix == null && secondMatrix == null) {
-			return true;
-		} 
-		else if (secondMatrix == null) {
+		if (firstMatrix == null || secondMatrix == null) {
+			return firstMatrix == secondMatrix;
+		}
+		
+		// if the matrices have a different number of rows, they can't be the same
+		if (firstMatrix.length != secondMatrix.length) {
 			return false;
 		}
 		
-		// they are both empty, return true
-		if (firstMatrix.length == 0 && secondMatrix.length == 0) {
-			return true;
+		// compare each row in the two matrices
+		for (int row = 0; row < firstMatrix.length; row++) {
+			if (rowMismatch(firstMatrix[row], secondMatrix[row]) >= 0) {
+				// they don't match
+				return false;
+			}
 		}
 		
-		// if the matrices are different row or column lengths, they can't be the same
-		if (firstMatrix.length != secondMatrix.length
-				|| firstMatrix[0].length != secondMatrix[0].length) {
-			return false;
+		return true;
+	}
+	
+	/***
+	 * Find the first element where two matrices differ, in row-major order.
+	 * Rows may have different lengths; where one row is longer, its extra elements all differ,
+	 * and where one matrix has more rows, the extra rows are compared against empty ones.
+	 * @param firstMatrix: the first matrix, not null
+	 * @param secondMatrix: the matrix to compare to, not null
+	 * @param parallel: true to compare blocks of rows across the fork-join common pool
+	 * @return the { row, column } of the first mismatch, or null if the matrices are equal
+	 */
+	public int[] firstMismatch(int[][] firstMatrix, int[][] secondMatrix, boolean parallel) {
+		int rows = Math.max(firstMatrix.length, secondMatrix.length);
+		int mismatchRow;
+		if (parallel && ForkJoinPool.getCommonPoolParallelism() > 1) {
+			AtomicInteger firstRow = new AtomicInteger(Integer.MAX_VALUE);
+			ForkJoinPool.commonPool().invoke(new FirstMismatchTask(firstMatrix, secondMatrix, firstRow, blockRows(firstMatrix, secondMatrix), 0, rows));
+			mismatchRow = firstRow.get() == Integer.MAX_VALUE ? -1 : firstRow.get();
+		}
+		else {
+			mismatchRow = firstMismatchRow(firstMatrix, secondMatrix, null, 0, rows);
 		}
 		
-		// compare each element in the two matrices
-		for (int row = 0; row < firstMatrix.length; row++) {
-			for (int col = 0; col < firstMatrix[0].length; col++) {
-				if (firstMatrix[row][col] != secondMatrix[row][col]) {
-					// they don't match
-					return false;
+		if (mismatchRow < 0) {
+			return null;
+		}
+		return new int[] { mismatchRow, rowMismatch(row(firstMatrix, mismatchRow), row(secondMatrix, mismatchRow)) };
+	}
+	
+	/***
+	 * Find the first element where two matrices differ, on the calling thread
+	 * @param firstMatrix: the first matrix, not null
+	 * @param secondMatrix: the matrix to compare to, not null
+	 * @return the { row, column } of the first mismatch, or null if the matrices are equal
+	 */
+	public int[] firstMismatch(int[][] firstMatrix, int[][] secondMatrix) {
+		return firstMismatch(firstMatrix, secondMatrix, false);
+	}
+	
+	/***
+	 * Find every element where two matrices differ, in row-major order, compared the same way as firstMismatch.
+	 * Each mismatch is packed into one long, read it back with mismatchRow and mismatchColumn.
+	 * @param firstMatrix: the first matrix, not null
+	 * @param secondMatrix: the matrix to compare to, not null
+	 * @param parallel: true to compare blocks of rows across the fork-join common pool
+	 * @return the packed mismatches, empty if the matrices are equal
+	 */
+	public long[] allMismatches(int[][] firstMatrix, int[][] secondMatrix, boolean parallel) {
+		int rows = Math.max(firstMatrix.length, secondMatrix.length);
+		if (parallel && ForkJoinPool.getCommonPoolParallelism() > 1) {
+			return ForkJoinPool.commonPool().invoke(new AllMismatchesTask(firstMatrix, secondMatrix, blockRows(firstMatrix, secondMatrix), 0, rows));
+		}
+		return collectMismatches(firstMatrix, secondMatrix, 0, rows);
+	}
+	
+	/***
+	 * Find every element where two matrices differ, on the calling thread
+	 * @param firstMatrix: the first matrix, not null
+	 * @param secondMatrix: the matrix to compare to, not null
+	 * @return the packed mismatches, empty if the matrices are equal
+	 */
+	public long[] allMismatches(int[][] firstMatrix, int[][] secondMatrix) {
+		return allMismatches(firstMatrix, secondMatrix, false);
+	}
+	
+	/***
+	 * @param mismatch: a mismatch from allMismatches
+	 * @return the row of the mismatch
+	 */
+	public static int mismatchRow(long mismatch) {
+		return (int) (mismatch >>> 32);
+	}
+	
+	/***
+	 * @param mismatch: a mismatch from allMismatches
+	 * @return the column of the mismatch
+	 */
+	public static int mismatchColumn(long mismatch) {
+		return (int) mismatch;
+	}
+	
+	private static final int[] EMPTY_ROW = new int[0];
+	
+	/***
+	 * @return the row, or an empty row if it is null or past the end of the matrix
+	 */
+	private static int[] row(int[][] matrix, int row) {
+		return row < matrix.length && matrix[row] != null ? matrix[row] : EMPTY_ROW;
+	}
+	
+	/***
+	 * @return the first column where two rows differ, or -1 if they are equal
+	 */
+	private static int rowMismatch(int[] firstRow, int[] secondRow) {
+		return Arrays.mismatch(firstRow == null ? EMPTY_ROW : firstRow, secondRow == null ? EMPTY_ROW : secondRow);
+	}
+	
+	/***
+	 * Find the first row in a range that differs, giving up past a row another task already found
+	 * @param firstRow: the lowest mismatching row found by any task, or null when running alone
+	 * @return the row, or -1 if none in the range (before firstRow) differs
+	 */
+	private static int firstMismatchRow(int[][] firstMatrix, int[][] secondMatrix, AtomicInteger firstRow, int from, int to) {
+		for (int row = from; row < to; row++) {
+			if (firstRow != null && row > firstRow.get()) {
+				return -1;
+			}
+			if (rowMismatch(row(firstMatrix, row), row(secondMatrix, row)) >= 0) {
+				if (firstRow != null) {
+					firstRow.accumulateAndGet(row, Math::min);
+				}
+				return row;
+			}
+		}
+		return -1;
+	}
+	
+	private static long[] collectMismatches(int[][] firstMatrix, int[][] secondMatrix, int from, int to) {
+		long[] mismatches = new long[16];
+		int count = 0;
+		for (int row = from; row < to; row++) {
+			int[] firstRow = row(firstMatrix, row);
+			int[] secondRow = row(secondMatrix, row);
+			int common = Math.min(firstRow.length, secondRow.length);
+			int longest = Math.max(firstRow.length, secondRow.length);
+			
+			// jump from one mismatch to the next, then every element past the end of the shorter row
+			int column = 0;
+			while (column < longest) {
+				if (column < common) {
+					int offset = Arrays.mismatch(firstRow, column, common, secondRow, column, common);
+					if (offset < 0) {
+						column = common;
+						continue;
+					}
+					column += offset;
+				}
+				if (count == mismatches.length) {
+					mismatches = Arrays.copyOf(mismatches, count * 2);
 				}
+				mismatches[count++] = ((long) row << 32) | column;
+				column++;
 			}
 		}
+		return Arrays.copyOf(mismatches, count);
+	}
+	
+	/***
+	 * @return the rows in a block of comparison work, a multiple of 64 rows of about BLOCK_ELEMENTS elements
+	 */
+	private static int blockRows(int[][] firstMatrix, int[][] secondMatrix) {
+		int columns = Math.max(1, Math.max(row(firstMatrix, 0).length, row(secondMatrix, 0).length));
+		return Math.max(64, (BLOCK_ELEMENTS / columns) & ~63);
+	}
+	
+	/***
+	 * Searches a range of rows for the first mismatch, sharing the lowest row found so ranges past it stop early
+	 *
+	 */
+	private static final class FirstMismatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 		
-		return true;
+		private final int[][] firstMatrix;
+		private final int[][] secondMatrix;
+		private final AtomicInteger firstRow;
+		private final int blockRows;
+		private final int from;
+		private final int to;
+		
+		FirstMismatchTask(int[][] firstMatrix, int[][] secondMatrix, AtomicInteger firstRow, int blockRows, int from, int to) {
+			this.firstMatrix = firstMatrix;
+			this.secondMatrix = secondMatrix;
+			this.firstRow = firstRow;
+			this.blockRows = blockRows;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (from > firstRow.get()) {
+				return;
+			}
+			int middle = splitRow(from, to, blockRows);
+			if (middle < 0) {
+				firstMismatchRow(firstMatrix, secondMatrix, firstRow, from, to);
+				return;
+			}
+			invokeAll(new FirstMismatchTask(firstMatrix, secondMatrix, firstRow, blockRows, from, middle),
+					new FirstMismatchTask(firstMatrix, secondMatrix, firstRow, blockRows, middle, to));
+		}
+	}
+	
+	/***
+	 * Collects the mismatches of a range of rows, joining the halves in order
+	 *
+	 */
+	private static final class AllMismatchesTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		
+		private final int[][] firstMatrix;
+		private final int[][] secondMatrix;
+		private final int blockRows;
+		private final int from;
+		private final int to;
+		
+		AllMismatchesTask(int[][] firstMatrix, int[][] secondMatrix, int blockRows, int from, int to) {
+			this.firstMatrix = firstMatrix;
+			this.secondMatrix = secondMatrix;
+			this.blockRows = blockRows;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected long[] compute() {
+			int middle = splitRow(from, to, blockRows);
+			if (middle < 0) {
+				return collectMismatches(firstMatrix, secondMatrix, from, to);
+			}
+			AllMismatchesTask second = new AllMismatchesTask(firstMatrix, secondMatrix, blockRows, middle, to);
+			second.fork();
+			long[] firstMismatches = new AllMismatchesTask(firstMatrix, secondMatrix, blockRows, from, middle).compute();
+			long[] secondMismatches = second.join();
+			long[] mismatches = Arrays.copyOf(firstMismatches, firstMismatches.length + secondMismatches.length);
+			System.arraycopy(secondMismatches, 0, mismatches, firstMismatches.length, secondMismatches.length);
+			return mismatches;
+		}
 	}
 	
-	public static void main(String[] args) {
+	/***
+	 * Determine if two flat matrices have the same element type, shape and values.
+	 * Doubles are compared by their bits, like Arrays.equals: NaN equals NaN, but 0.0 doesn't equal -0.0.
+	 * @param firstMatrix: the first matrix
+	 * @param secondMatrix: the matrix to compare to
+	 * @return true if the matrices have the same values
+	 */
+	public boolean matricesAreEqual(FlatMatrix firstMatrix, FlatMatrix secondMatrix) {
+		// if both matrices are null, return true
+		if (firstMatrix == null || secondMatrix == null) {
+			return firstMatrix == secondMatrix;
+		}
+		
+		return firstMatrix.sameContents(secondMatrix);
+	}
+	
+	/***
+	 * Determine if two sparse matrices have the same values: O(non-zeros + rows)
+	 * @param firstMatrix: the first matrix
+	 * @param secondMatrix: the matrix to compare to
+	 * @return true if the matrices have the same values
+	 */
+	public boolean matricesAreEqual(SparseMatrix firstMatrix, SparseMatrix secondMatrix) {
+		// if both matrices are null, return true
+		if (firstMatrix == null || secondMatrix == null) {
+			return firstMatrix == secondMatrix;
+		}
+		
+		return firstMatrix.sameValues(secondMatrix);
+	}
+	
+	/***
+	 * Determine if a sparse matrix and a dense matrix have the same values
+	 * @param firstMatrix: the sparse matrix
+	 * @param secondMatrix: the dense matrix to compare to
+	 * @return true if the matrices have the same values
+	 */
+	public boolean matricesAreEqual(SparseMatrix firstMatrix, int[][] secondMatrix) {
+		// if both matrices are null, return true
+		if (firstMatrix == null || secondMatrix == null) {
+			return firstMatrix == null && secondMatrix == null;
+		}
+		
+		return firstMatrix.sameValues(secondMatrix);
+	}
+	
+	public static void main(String[] args) throws IOException {
 		// test 1: null and empty matrix
 		int[][] inputMatrix1 = new int[][]{};
 		int[][] testMatrix1 = new int[][]{};
@@ -154,6 +713,201 @@ public class ZeroMatrixChecker {
 		ZeroMatrixChecker checker4 = new ZeroMatrixChecker();
 		checker4.transformMatrix(inputMatrix4);
 		System.out.println("Test 4: matrix should not match transformed. Result: " + (!checker4.matricesAreEqual(inputMatrix4, testMatrix4) ? "test passed" : "test failed"));
-	
+		
+		// test 5: in-place transform, with zeros in the first row and column
+		int[][] inputMatrix5 = new int[][]{
+			  { 1, 0, 3, 4 },
+			  { 5, 6, 7, 8 },
+			  { 0, 9, 1, 2 }
+		};
+		int[][] testMatrix5 = new int[][]{
+			  { 0, 0, 0, 0 },
+			  { 0, 0, 7, 8 },
+			  { 0, 0, 0, 0 }
+		};
+		ZeroMatrixChecker checker5 = new ZeroMatrixChecker();
+		checker5.transformMatrixInPlace(inputMatrix5);
+		System.out.println("Test 5: in-place matrix should match transformed. Result: " + (checker5.matricesAreEqual(inputMatrix5, testMatrix5) ? "test passed" : "test failed"));
+		
+		// test 6: both approaches agree with a direct check on random matrices wider than one bitset word
+		ZeroMatrixChecker checker6 = new ZeroMatrixChecker();
+		Random random = new Random(6);
+		boolean agree = true;
+		for (int trial = 0; trial < 200; trial++) {
+			int rows = 1 + random.nextInt(150);
+			int columns = 1 + random.nextInt(150);
+			int[][] matrix = new int[rows][columns];
+			for (int i = 0; i < rows; i++) {
+				for (int j = 0; j < columns; j++) {
+					matrix[i][j] = random.nextInt(400) == 0 ? 0 : 1 + random.nextInt(9);
+				}
+			}
+			int[][] expected = new int[rows][columns];
+			for (int i = 0; i < rows; i++) {
+				for (int j = 0; j < columns; j++) {
+					boolean zeroInLine = false;
+					for (int k = 0; k < columns && !zeroInLine; k++) {
+						zeroInLine = matrix[i][k] == 0;
+					}
+					for (int k = 0; k < rows && !zeroInLine; k++) {
+						zeroInLine = matrix[k][j] == 0;
+					}
+					expected[i][j] = zeroInLine ? 0 : matrix[i][j];
+				}
+			}
+			int[][] bitsetMatrix = new int[rows][];
+			int[][] inPlaceMatrix = new int[rows][];
+			for (int i = 0; i < rows; i++) {
+				bitsetMatrix[i] = matrix[i].clone();
+				inPlaceMatrix[i] = matrix[i].clone();
+			}
+			checker6.transformMatrix(bitsetMatrix);
+			checker6.transformMatrixInPlace(inPlaceMatrix);
+			agree &= checker6.matricesAreEqual(bitsetMatrix, expected) && checker6.matricesAreEqual(inPlaceMatrix, expected);
+		}
+		System.out.println("Test 6: bitset and in-place approaches should match a direct check. Result: " + (agree ? "test passed" : "test failed"));
+		
+		// test 7: the parallel transform matches the sequential one, on a pool of two and on small blocks of rows
+		ZeroMatrixChecker checker7 = new ZeroMatrixChecker();
+		ForkJoinPool pool = new ForkJoinPool(2);
+		boolean parallelAgrees = true;
+		for (int trial = 0; trial < 20; trial++) {
+			int rows = 1 + random.nextInt(3000);
+			int columns = 1 + random.nextInt(300);
+			int[][] sequentialMatrix = new int[rows][columns];
+			int[][] parallelMatrix = new int[rows][];
+			for (int i = 0; i < rows; i++) {
+				for (int j = 0; j < columns; j++) {
+					sequentialMatrix[i][j] = random.nextInt(5000) == 0 ? 0 : 1 + random.nextInt(9);
+				}
+				parallelMatrix[i] = sequentialMatrix[i].clone();
+			}
+			checker7.transformMatrix(sequentialMatrix);
+			checker7.transformMatrixParallel(parallelMatrix, pool);
+			parallelAgrees &= checker7.matricesAreEqual(sequentialMatrix, parallelMatrix);
+		}
+		pool.shutdown();
+		System.out.println("Test 7: parallel transform should match the sequential transform. Result: " + (parallelAgrees ? "test passed" : "test failed"));
+		
+		// test 8: flat matrices, off-heap and mapped
+		ZeroMatrixChecker checker8 = new ZeroMatrixChecker();
+		FlatMatrix flatMatrix = FlatMatrix.of(new int[][]{
+			  { 1, 2, 0 },
+			  { 3, 0, 4 },
+			  { 5, 6, 7 }
+		});
+		checker8.transformMatrix(flatMatrix);
+		System.out.println("Test 8.1: flat int matrix should match transformed. Result: "
+				+ (checker8.matricesAreEqual(flatMatrix, FlatMatrix.of(testMatrix3)) && checker8.matricesAreEqual(flatMatrix.toIntArray(), testMatrix3) ? "test passed" : "test failed"));
+		
+		FlatMatrix doubleMatrix = FlatMatrix.of(new double[][]{ { 1.5, -0.0 }, { 2.5, 3.5 } });
+		checker8.transformMatrix(doubleMatrix);
+		System.out.println("Test 8.2: flat double matrix with -0.0 should be transformed. Result: "
+				+ (Arrays.deepEquals(doubleMatrix.toDoubleArray(), new double[][]{ { 0, 0 }, { 2.5, 0 } }) ? "test passed" : "test failed"));
+		
+		FlatMatrix longMatrix = FlatMatrix.of(new long[][]{ { 1L << 40, 2 }, { 3, 4 } });
+		System.out.println("Test 8.3: flat matrices of different element types should not be equal. Result: "
+				+ (!checker8.matricesAreEqual(longMatrix, FlatMatrix.of(new int[][]{ { 0, 2 }, { 3, 4 } })) ? "test passed" : "test failed"));
+		
+		Path path = Files.createTempFile("matrix", ".bin");
+		try {
+			FlatMatrix mappedMatrix = FlatMatrix.map(path, FlatMatrix.ElementType.INT, 100, 130);
+			int[][] heapMatrix = new int[100][130];
+			for (int i = 0; i < 100; i++) {
+				for (int j = 0; j < 130; j++) {
+					heapMatrix[i][j] = random.nextInt(3000) == 0 ? 0 : 1 + random.nextInt(9);
+					mappedMatrix.setInt(i, j, heapMatrix[i][j]);
+				}
+			}
+			checker8.transformMatrix(mappedMatrix);
+			checker8.transformMatrix(heapMatrix);
+			mappedMatrix.force();
+			boolean mappedAgrees = checker8.matricesAreEqual(mappedMatrix.toIntArray(), heapMatrix)
+					&& checker8.matricesAreEqual(FlatMatrix.map(path, FlatMatrix.ElementType.INT, 100, 130), FlatMatrix.of(heapMatrix));
+			System.out.println("Test 8.4: mapped matrix should match the heap transform. Result: " + (mappedAgrees ? "test passed" : "test failed"));
+		}
+		finally {
+			Files.deleteIfExists(path);
+		}
+		
+		// test 9: sparse matrices
+		ZeroMatrixChecker checker9 = new ZeroMatrixChecker();
+		SparseMatrix sparseMatrix = SparseMatrix.fromCoo(3, 3,
+				new int[]{ 2, 0, 1, 0, 1, 2, 2 },
+				new int[]{ 0, 0, 0, 1, 2, 1, 2 },
+				new int[]{ 5, 1, 3, 2, 4, 6, 7 });
+		SparseMatrix sparseResult = checker9.transformMatrix(sparseMatrix);
+		System.out.println("Test 9.1: sparse matrix should match transformed. Result: "
+				+ (checker9.matricesAreEqual(sparseResult, testMatrix3) && Arrays.deepEquals(sparseResult.toArray(), testMatrix3) ? "test passed" : "test failed"));
+		
+		System.out.println("Test 9.2: transform should leave the sparse input as it is. Result: "
+				+ (checker9.matricesAreEqual(sparseMatrix, SparseMatrix.of(new int[][]{ { 1, 2, 0 }, { 3, 0, 4 }, { 5, 6, 7 } })) ? "test passed" : "test failed"));
+		
+		SparseMatrix csrMatrix = SparseMatrix.fromCsr(2, 3, new int[]{ 0, 3, 6 }, new int[]{ 0, 1, 2, 0, 1, 2 }, new int[]{ 1, 2, 3, 4, 0, 6 });
+		SparseMatrix csrResult = checker9.transformMatrix(csrMatrix);
+		System.out.println("Test 9.3: stored zeros should be transformed. Result: "
+				+ (checker9.matricesAreEqual(csrResult, SparseMatrix.fromCsr(2, 3, new int[]{ 0, 2, 2 }, new int[]{ 0, 2 }, new int[]{ 1, 3 }))
+						&& csrResult.compact().nonZeroCount() == 2 && csrResult.get(0, 0) == 1 && csrResult.get(0, 1) == 0 ? "test passed" : "test failed"));
+		
+		boolean sparseAgrees = true;
+		for (int trial = 0; trial < 200; trial++) {
+			int rows = 1 + random.nextInt(90);
+			int columns = 1 + random.nextInt(90);
+			int[][] denseMatrix = new int[rows][columns];
+			for (int i = 0; i < rows; i++) {
+				for (int j = 0; j < columns; j++) {
+					// mostly full, so some rows and columns survive
+					denseMatrix[i][j] = random.nextInt(rows * columns / 2 + 1) == 0 ? 0 : 1 + random.nextInt(9);
+				}
+			}
+			SparseMatrix transformed = checker9.transformMatrix(SparseMatrix.of(denseMatrix));
+			checker9.transformMatrix(denseMatrix);
+			sparseAgrees &= checker9.matricesAreEqual(transformed, denseMatrix) && checker9.matricesAreEqual(transformed.compact(), SparseMatrix.of(denseMatrix));
+		}
+		System.out.println("Test 9.4: sparse transform should match the dense transform. Result: " + (sparseAgrees ? "test passed" : "test failed"));
+		
+		boolean rejected = false;
+		try {
+			SparseMatrix.fromCoo(2, 2, new int[]{ 0, 0 }, new int[]{ 1, 1 }, new int[]{ 1, 2 });
+		}
+		catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		System.out.println("Test 9.5: duplicate sparse elements should be rejected. Result: " + (rejected ? "test passed" : "test failed"));
+		
+		// test 10: ragged matrices and mismatch locations
+		ZeroMatrixChecker checker10 = new ZeroMatrixChecker();
+		int[][] raggedMatrix = new int[][]{ { 1, 2, 3 }, { 4 }, { 5, 6 } };
+		int[][] otherRaggedMatrix = new int[][]{ { 1, 2, 3 }, { 4 }, { 5, 6 } };
+		System.out.println("Test 10.1: equal ragged matrices should be equal. Result: "
+				+ (checker10.matricesAreEqual(raggedMatrix, otherRaggedMatrix) && checker10.firstMismatch(raggedMatrix, otherRaggedMatrix) == null ? "test passed" : "test failed"));
+		
+		otherRaggedMatrix[2] = new int[]{ 5, 6, 7 };
+		otherRaggedMatrix[0][1] = 9;
+		System.out.println("Test 10.2: ragged matrices with different rows should not be equal. Result: "
+				+ (!checker10.matricesAreEqual(raggedMatrix, otherRaggedMatrix) && !checker10.matricesAreEqual(new int[][]{ { 1 } }, null) ? "test passed" : "test failed"));
+		
+		System.out.println("Test 10.3: first mismatch should be located. Result: "
+				+ (Arrays.equals(checker10.firstMismatch(raggedMatrix, otherRaggedMatrix), new int[]{ 0, 1 }) ? "test passed" : "test failed"));
+		
+		long[] mismatches = checker10.allMismatches(raggedMatrix, new int[][]{ { 1, 0, 3 }, { 4 }, { 5, 6, 7 }, { 8 } });
+		boolean located = mismatches.length == 3
+				&& mismatchRow(mismatches[0]) == 0 && mismatchColumn(mismatches[0]) == 1
+				&& mismatchRow(mismatches[1]) == 2 && mismatchColumn(mismatches[1]) == 2
+				&& mismatchRow(mismatches[2]) == 3 && mismatchColumn(mismatches[2]) == 0;
+		System.out.println("Test 10.4: every mismatch should be located, including extra columns and rows. Result: " + (located ? "test passed" : "test failed"));
+		
+		int[][] largeMatrix = new int[2000][700];
+		int[][] changedMatrix = new int[2000][];
+		for (int i = 0; i < largeMatrix.length; i++) {
+			changedMatrix[i] = largeMatrix[i].clone();
+		}
+		changedMatrix[1500][600] = 1;
+		changedMatrix[1700][3] = 1;
+		changedMatrix[1999][699] = 1;
+		long[] parallelMismatches = checker10.allMismatches(largeMatrix, changedMatrix, true);
+		boolean parallelLocated = Arrays.equals(checker10.firstMismatch(largeMatrix, changedMatrix, true), new int[]{ 1500, 600 })
+				&& Arrays.equals(parallelMismatches, checker10.allMismatches(largeMatrix, changedMatrix)) && parallelMismatches.length == 3;
+		System.out.println("Test 10.5: parallel comparison should match the sequential one. Result: " + (parallelLocated ? "test passed" : "test failed"));
 	}
 }
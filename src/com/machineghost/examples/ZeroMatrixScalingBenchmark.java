@@ -0,0 +1,96 @@
+package com.machineghost.examples;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/***
+ * Measure how the parallel zero matrix transform scales from one core to all of them.
+ * Each thread count gets its own fork-join pool, and the matrix is restored from a copy before every
+ * transform (outside the timing), so every run clears the same rows and columns.
+ * Usage: ZeroMatrixScalingBenchmark [side] [seconds per thread count]
+ *
+ */
+public class ZeroMatrixScalingBenchmark {
+	
+	/***
+	 * Build a square matrix with a few zeros scattered through it
+	 * @param side: the number of rows and columns
+	 * @return the matrix
+	 */
+	private static int[][] sparseZeroMatrix(int side) {
+		Random random = new Random(17);
+		int[][] matrix = new int[side][side];
+		for (int[] row : matrix) {
+			for (int j = 0; j < side; j++) {
+				row[j] = 1 + random.nextInt(1000);
+			}
+		}
+		for (int zero = 0; zero < side / 64; zero++) {
+			matrix[random.nextInt(side)][random.nextInt(side)] = 0;
+		}
+		return matrix;
+	}
+	
+	/***
+	 * Transform the matrix repeatedly on a pool of the given size
+	 * @param source: the matrix to restore from before each transform
+	 * @param matrix: the matrix to transform
+	 * @param threadCount: the pool size, or 0 for the sequential transformMatrix
+	 * @param durationMillis: how long to keep transforming
+	 * @return the median time per transform in nanoseconds
+	 */
+	static long run(int[][] source, int[][] matrix, int threadCount, long durationMillis) {
+		ZeroMatrixChecker checker = new ZeroMatrixChecker();
+		ForkJoinPool pool = threadCount > 0 ? new ForkJoinPool(threadCount) : null;
+		long[] samples = new long[1024];
+		int sampleCount = 0;
+		long end = System.nanoTime() + durationMillis * 1000000;
+		try {
+			while (sampleCount < samples.length && (sampleCount < 3 || System.nanoTime() < end)) {
+				for (int i = 0; i < source.length; i++) {
+					System.arraycopy(source[i], 0, matrix[i], 0, source[i].length);
+				}
+				long start = System.nanoTime();
+				if (pool == null) {
+					checker.transformMatrix(matrix);
+				}
+				else {
+					checker.transformMatrixParallel(matrix, pool);
+				}
+				samples[sampleCount++] = System.nanoTime() - start;
+			}
+		}
+		finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+		Arrays.sort(samples, 0, sampleCount);
+		return samples[sampleCount / 2];
+	}
+	
+	public static void main(String[] args) {
+		int side = args.length > 0 ? Integer.parseInt(args[0]) : 8192;
+		long durationMillis = (args.length > 1 ? Long.parseLong(args[1]) : 3) * 1000;
+		int cores = Runtime.getRuntime().availableProcessors();
+		
+		int[][] source = sparseZeroMatrix(side);
+		int[][] matrix = new int[side][side];
+		
+		// warm up so the first thread count isn't measured in the interpreter
+		run(source, matrix, 1, durationMillis);
+		
+		long sequential = run(source, matrix, 0, durationMillis);
+		System.out.println(String.format("%dx%d matrix, transformMatrix: %.2f ms", side, side, sequential / 1e6));
+		System.out.println("threads\tms\tscaling");
+		double baseline = 0;
+		for (int threadCount = 1; threadCount <= cores; threadCount = CheckerContentionBenchmark.nextThreadCount(threadCount, cores)) {
+			long median = run(source, matrix, threadCount, durationMillis);
+			if (threadCount == 1) {
+				baseline = median;
+			}
+			System.out.println(String.format("%d\t%.2f\t%.2fx", threadCount, median / 1e6, baseline / median));
+		}
+	}
+}